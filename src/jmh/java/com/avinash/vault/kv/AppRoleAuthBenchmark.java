@@ -0,0 +1,62 @@
+package com.avinash.vault.kv;
+
+import com.avinash.vault.kv.auth.AppRoleAuth;
+import com.avinash.vault.kv.fake.FakeVault;
+import com.avinash.vault.kv.http.RetryableHttp;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Many threads asking one {@link AppRoleAuth} for its token at once, as the tasks of a worker do on every read. The
+ * token is valid, so this measures the contention of the hand out, not the login.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AppRoleAuthBenchmark {
+
+    private FakeVault fake;
+    private AppRoleAuth auth;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        fake = new FakeVault().appRole("role", "secret").tokenTtl(Duration.ofDays(1), true);
+        auth = new AppRoleAuth(fake.uri(), "benchmark", "role", "secret", RetryableHttp.httpClient());
+        auth.getToken();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        auth.close();
+        fake.close();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String getTokenSingleThread() {
+        return auth.getToken();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public String getTokenContended() {
+        return auth.getToken();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public String getTokenAsyncContended() {
+        return auth.getTokenAsync().join();
+    }
+}
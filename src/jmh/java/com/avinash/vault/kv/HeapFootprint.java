@@ -0,0 +1,138 @@
+package com.avinash.vault.kv;
+
+import com.avinash.vault.kv.memory.SecretSlabs;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Measures the heap retained by a full {@link CachingSecretProvider}, with its values on heap and off heap, and the
+ * garbage left by reading one key of every path. Arguments are {@code name=value} pairs, see {@link #DEFAULTS}.
+ */
+public final class HeapFootprint {
+
+    static final Map<String, String> DEFAULTS = new LinkedHashMap<>();
+
+    static {
+        DEFAULTS.put("paths", "20000");
+        DEFAULTS.put("keys", "10");
+        DEFAULTS.put("value.length", "64");
+    }
+
+    private HeapFootprint() {
+    }
+
+    public static void main(String[] args) {
+        Map<String, String> settings = new LinkedHashMap<>(DEFAULTS);
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            if (equals < 0) {
+                throw new IllegalArgumentException("Expected name=value, got " + arg + ", settings are " + DEFAULTS.keySet());
+            }
+            settings.put(arg.substring(0, equals), arg.substring(equals + 1));
+        }
+        System.out.println("settings " + settings);
+        int paths = Integer.parseInt(settings.get("paths"));
+        int keys = Integer.parseInt(settings.get("keys"));
+        int valueLength = Integer.parseInt(settings.get("value.length"));
+
+        measure("on heap", paths, keys, valueLength, null);
+        measure("off heap", paths, keys, valueLength, new SecretSlabs(SecretSlabs.DEFAULT_SLAB_BYTES, 1L << 30));
+    }
+
+    private static void measure(String mode, int paths, int keys, int valueLength, SecretSlabs slabs) {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long before = usedHeap(memory);
+        CachingSecretProvider cache = new CachingSecretProvider(new GeneratedSecrets(keys, valueLength), "ns",
+            3_600_000, paths, 0, slabs);
+        for (int p = 0; p < paths; p++) {
+            cache.getSecret("/v1/kv/data/heap/" + p);
+        }
+        long retained = usedHeap(memory) - before;
+
+        Set<String> requested = Set.of("key_0");
+        long allocatedBefore = allocatedBytes();
+        for (int p = 0; p < paths; p++) {
+            cache.readSecret("/v1/kv/data/heap/" + p, requested);
+        }
+        long allocated = allocatedBytes() - allocatedBefore;
+
+        System.out.printf("%-8s : %d secrets, retained heap %.1f MB (%d bytes per secret), off heap %.1f MB, " +
+                "reading one key of every secret allocates %d bytes per read%n", mode, cache.size(), retained / 1e6,
+            retained / paths, cache.getOffHeapBytes() / 1e6, allocatedBefore < 0 ? -1 : allocated / paths);
+        cache.close();
+    }
+
+    private static long usedHeap(MemoryMXBean memory) {
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    /**
+     * @return the bytes allocated by this thread so far, -1 if the JVM does not tell
+     */
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    private static final class GeneratedSecrets implements SecretProvider {
+        private final int keys;
+        private final int valueLength;
+
+        private GeneratedSecrets(int keys, int valueLength) {
+            this.keys = keys;
+            this.valueLength = valueLength;
+        }
+
+        @Override
+        public Map<String, String> getSecret(String path) {
+            Map<String, String> data = new HashMap<>();
+            for (int k = 0; k < keys; k++) {
+                StringBuilder value = new StringBuilder(valueLength);
+                while (value.length() < valueLength) {
+                    value.append(path.hashCode() * 31 + k);
+                }
+                data.put("key_" + k, value.substring(0, valueLength));
+            }
+            return data;
+        }
+
+        @Override
+        public Map<String, String> getSecret(String path, String key) {
+            return Map.of(key, getSecret(path).get(key));
+        }
+
+        @Override
+        public VaultResponse readSecret(String path) {
+            return VaultResponse.of(getSecret(path), 1);
+        }
+
+        @Override
+        public void addSecret(String secretEngine, String secretName) {
+        }
+
+        @Override
+        public void addSecret(String secretEngine, String secretName, Map<String, String> data, Map<String, String> options) {
+        }
+
+        @Override
+        public void patchSecret(String secretEngine, String secretName, Map<String, String> data, Map<String, String> options) {
+        }
+
+        @Override
+        public void destroySecret(String secretEngine, String secretName, Optional<String> secretVersion) {
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.avinash.vault.kv;
+
+import com.avinash.vault.kv.http.JsonBodyHandler;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares decoding a KV read through the original handler (String body, new ObjectMapper per response) with the
+ * cached reader decoding straight from bytes and with the tree-free decoder used for secret reads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class JsonBodyHandlerBenchmark {
+
+    @Param({"small", "large"})
+    public String payload;
+
+    private byte[] body;
+
+    @Setup
+    public void setup() {
+        body = VaultPayloads.kvRead("small".equals(payload) ? 2 : 200).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public VaultResponse stringAndNewObjectMapper() {
+        return decode(legacyAsJSON(VaultResponse.class));
+    }
+
+    @Benchmark
+    public VaultResponse cachedReaderFromBytes() {
+        return decode(JsonBodyHandler.asJSON(VaultResponse.class));
+    }
+
+    @Benchmark
+    public VaultResponse treeFreeDecoder() {
+        return decode(JsonBodyHandler.asJSON(VaultResponseDecoder::decode));
+    }
+
+    private VaultResponse decode(HttpResponse.BodySubscriber<VaultResponse> subscriber) {
+        subscriber.onSubscribe(NoopSubscription.INSTANCE);
+        subscriber.onNext(List.of(ByteBuffer.wrap(body)));
+        subscriber.onComplete();
+        return subscriber.getBody().toCompletableFuture().join();
+    }
+
+    /**
+     * The handler as it was before it decoded from bytes with a shared reader.
+     */
+    private static <T> HttpResponse.BodySubscriber<T> legacyAsJSON(Class<T> targetType) {
+        HttpResponse.BodySubscriber<String> upstream = HttpResponse.BodySubscribers.ofString(StandardCharsets.UTF_8);
+        return HttpResponse.BodySubscribers.mapping(
+            upstream,
+            (String body) -> {
+                try {
+                    ObjectMapper objectMapper = new ObjectMapper();
+                    return objectMapper.readValue(body, targetType);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+    }
+
+    private enum NoopSubscription implements Flow.Subscription {
+        INSTANCE;
+
+        @Override
+        public void request(long n) {
+        }
+
+        @Override
+        public void cancel() {
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package com.avinash.vault.kv;
+
+import com.avinash.vault.kv.auth.AppRoleAuth;
+import com.avinash.vault.kv.fake.FakeVault;
+import com.avinash.vault.kv.http.RetryableHttp;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A closed loop load generator against the in-process {@link FakeVault}: a number of threads each read random paths as
+ * fast as they are answered, through a bare {@link Vault} or a configured {@link VaultSecretProvider}, and the
+ * throughput and exact latency percentiles of the measured period are reported. Arguments are {@code name=value}
+ * pairs, see {@link #DEFAULTS}.
+ */
+public final class LoadGenerator {
+
+    static final Map<String, String> DEFAULTS = new LinkedHashMap<>();
+
+    static {
+        // vault or provider
+        DEFAULTS.put("target", "provider");
+        DEFAULTS.put("threads", "16");
+        DEFAULTS.put("warmup.seconds", "3");
+        DEFAULTS.put("seconds", "10");
+        DEFAULTS.put("paths", "100");
+        DEFAULTS.put("keys", "10");
+        // share of the operations writing a secret instead of reading it, between 0 and 1
+        DEFAULTS.put("write.ratio", "0");
+        DEFAULTS.put("latency.ms", "0");
+        DEFAULTS.put("latency.max.ms", "0");
+        DEFAULTS.put("error.rate", "0");
+        DEFAULTS.put("error.status", "503");
+        DEFAULTS.put("reset.rate", "0");
+        // any other setting is passed to the provider, e.g. cache.ttl.ms=60000
+    }
+
+    private LoadGenerator() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> settings = new LinkedHashMap<>(DEFAULTS);
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            if (equals < 0) {
+                throw new IllegalArgumentException("Expected name=value, got " + arg + ", settings are " + DEFAULTS.keySet());
+            }
+            settings.put(arg.substring(0, equals), arg.substring(equals + 1));
+        }
+        System.out.println("settings " + settings);
+        try (FakeVault fake = new FakeVault(Math.max(FakeVault.DEFAULT_THREADS, Integer.parseInt(settings.get("threads"))))) {
+            run(fake, settings);
+        }
+    }
+
+    private static void run(FakeVault fake, Map<String, String> settings) throws InterruptedException {
+        int paths = Integer.parseInt(settings.get("paths"));
+        int keys = Integer.parseInt(settings.get("keys"));
+        for (int p = 0; p < paths; p++) {
+            Map<String, String> data = new HashMap<>();
+            for (int k = 0; k < keys; k++) {
+                data.put("key_" + k, "value-" + k + "-0123456789abcdef0123456789abcdef");
+            }
+            fake.put("kv", "load/" + p, data);
+        }
+
+        Operation operation;
+        AutoCloseable target;
+        if ("vault".equals(settings.get("target"))) {
+            RetryableHttp http = RetryableHttp.httpClient();
+            Vault vault = new Vault(fake.uri(), new AppRoleAuth(fake.uri(), "load", "role", "secret", http), "load",
+                http, null);
+            operation = (path, write) -> {
+                if (write) {
+                    vault.patchSecret("kv", path.substring("/v1/kv/data/".length()), Map.of("key_0", "patched"), Map.of());
+                } else {
+                    vault.getSecret(path);
+                }
+            };
+            target = vault;
+        } else {
+            Map<String, String> configs = new HashMap<>(settings);
+            DEFAULTS.keySet().forEach(configs::remove);
+            configs.put("url", fake.uri().toString());
+            configs.putIfAbsent("namespace", "load");
+            configs.put("auth.mechanism", "APP_ROLE_AUTH");
+            configs.put("role.id", "role");
+            configs.put("secret.id", "secret");
+            configs.putIfAbsent("metrics.jmx.enabled", "false");
+            VaultSecretProvider provider = new VaultSecretProvider();
+            provider.configure(configs);
+            Set<String> requested = Set.of("key_0", "key_1");
+            operation = (path, write) -> {
+                if (write) {
+                    // the provider is read only, writes are rotations by someone else
+                    fake.put("kv", path.substring("/v1/kv/data/".length()), Map.of("key_0", "rotated", "key_1", "rotated"));
+                } else {
+                    provider.get(path, requested);
+                }
+            };
+            target = provider::close;
+        }
+
+        // the faults only start with the load, the setup above must not be disturbed by them
+        fake.latency(Duration.ofMillis(Long.parseLong(settings.get("latency.ms"))),
+                Duration.ofMillis(Long.parseLong(settings.get("latency.max.ms"))))
+            .failRate(Double.parseDouble(settings.get("error.rate")), Integer.parseInt(settings.get("error.status")))
+            .resetRate(Double.parseDouble(settings.get("reset.rate")));
+
+        int threads = Integer.parseInt(settings.get("threads"));
+        double writeRatio = Double.parseDouble(settings.get("write.ratio"));
+        long warmupNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(settings.get("warmup.seconds")));
+        long measureNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(settings.get("seconds")));
+        List<Worker> workers = new ArrayList<>();
+        CountDownLatch done = new CountDownLatch(threads);
+        long start = System.nanoTime();
+        long measureFrom = start + warmupNanos;
+        long measureUntil = measureFrom + measureNanos;
+        for (int t = 0; t < threads; t++) {
+            Worker worker = new Worker(operation, paths, writeRatio, measureFrom, measureUntil, done);
+            workers.add(worker);
+            Thread thread = new Thread(worker, "load-" + t);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        TimeUnit.NANOSECONDS.sleep(Math.max(0, measureFrom - System.nanoTime()));
+        fake.resetCounters();
+        done.await();
+        try {
+            target.close();
+        } catch (Exception e) {
+            System.out.println("failed to close the target : " + e);
+        }
+
+        report(workers, measureNanos, fake);
+    }
+
+    private static void report(List<Worker> workers, long measureNanos, FakeVault fake) {
+        int total = 0;
+        long errors = 0;
+        for (Worker worker : workers) {
+            total += worker.count;
+            errors += worker.errors;
+        }
+        long[] latencies = new long[total];
+        int offset = 0;
+        for (Worker worker : workers) {
+            System.arraycopy(worker.latencies, 0, latencies, offset, worker.count);
+            offset += worker.count;
+        }
+        Arrays.sort(latencies);
+        double seconds = measureNanos / 1e9;
+        System.out.printf("operations %d, errors %d, throughput %.1f ops/s%n", total, errors, total / seconds);
+        if (total > 0) {
+            System.out.printf("latency us p50 %.1f, p90 %.1f, p99 %.1f, p99.9 %.1f, max %.1f%n",
+                percentile(latencies, 0.5), percentile(latencies, 0.9), percentile(latencies, 0.99),
+                percentile(latencies, 0.999), latencies[total - 1] / 1e3);
+        }
+        System.out.printf("vault requests %d, %.2f per operation, by route %s%n", fake.requests(),
+            total == 0 ? 0.0 : (double) fake.requests() / total, fake.requestCounts());
+    }
+
+    private static double percentile(long[] sorted, double quantile) {
+        int index = (int) Math.min(sorted.length - 1, Math.ceil(quantile * sorted.length) - 1);
+        return sorted[Math.max(0, index)] / 1e3;
+    }
+
+    @FunctionalInterface
+    private interface Operation {
+        void run(String path, boolean write);
+    }
+
+    private static final class Worker implements Runnable {
+        private final Operation operation;
+        private final int paths;
+        private final double writeRatio;
+        private final long measureFrom;
+        private final long measureUntil;
+        private final CountDownLatch done;
+        private long[] latencies = new long[1 << 16];
+        private int count;
+        private long errors;
+
+        private Worker(Operation operation, int paths, double writeRatio, long measureFrom, long measureUntil,
+                       CountDownLatch done) {
+            this.operation = operation;
+            this.paths = paths;
+            this.writeRatio = writeRatio;
+            this.measureFrom = measureFrom;
+            this.measureUntil = measureUntil;
+            this.done = done;
+        }
+
+        @Override
+        public void run() {
+            try {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long now = System.nanoTime();
+                while (now < measureUntil) {
+                    String path = "/v1/kv/data/load/" + random.nextInt(paths);
+                    boolean write = writeRatio > 0 && random.nextDouble() < writeRatio;
+                    boolean failed = false;
+                    try {
+                        operation.run(path, write);
+                    } catch (RuntimeException e) {
+                        failed = true;
+                    }
+                    long end = System.nanoTime();
+                    if (now >= measureFrom && end <= measureUntil) {
+                        record(end - now, failed);
+                    }
+                    now = end;
+                }
+            } finally {
+                done.countDown();
+            }
+        }
+
+        private void record(long nanos, boolean failed) {
+            if (failed) {
+                errors++;
+                return;
+            }
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = nanos;
+        }
+    }
+}
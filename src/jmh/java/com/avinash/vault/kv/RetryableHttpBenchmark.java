@@ -0,0 +1,77 @@
+package com.avinash.vault.kv;
+
+import com.avinash.vault.kv.fake.FakeVault;
+import com.avinash.vault.kv.http.HttpExecutorMode;
+import com.avinash.vault.kv.http.RetryableHttp;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The overhead of {@link RetryableHttp} (retry policy, metrics, body counting) over a bare {@link HttpClient} on the
+ * same executor, for a request which succeeds on the first attempt.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RetryableHttpBenchmark {
+
+    private FakeVault fake;
+    private ExecutorService executor;
+    private HttpClient bare;
+    private RetryableHttp retryable;
+    private HttpRequest request;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        fake = new FakeVault();
+        fake.put("kv", "benchmark/db", VaultPayloads.kvData(2));
+        executor = HttpExecutorMode.POOL.newExecutor(4);
+        bare = HttpClient.newBuilder().executor(executor).build();
+        retryable = RetryableHttp.create(HttpExecutorMode.POOL, 4);
+        request = HttpRequest.newBuilder(fake.uri().resolve("/v1/kv/data/benchmark/db"))
+            .header("X-Vault-Token", FakeVault.ROOT_TOKEN)
+            .GET()
+            .build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        retryable.close();
+        executor.shutdownNow();
+        fake.close();
+    }
+
+    @Benchmark
+    public HttpResponse<byte[]> bareHttpClient() throws IOException, InterruptedException {
+        return bare.send(request, HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    @Benchmark
+    public HttpResponse<byte[]> bareHttpClientAsync() {
+        return bare.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray()).join();
+    }
+
+    @Benchmark
+    public HttpResponse<byte[]> retryableHttp() throws IOException, InterruptedException {
+        return retryable.send(request, HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    @Benchmark
+    public HttpResponse<byte[]> retryableHttpAsync() {
+        return retryable.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray()).join();
+    }
+}
@@ -0,0 +1,43 @@
+package com.avinash.vault.kv;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Realistic vault response bodies for the benchmarks.
+ */
+final class VaultPayloads {
+
+    private VaultPayloads() {
+    }
+
+    /**
+     * @param keys the number of key value pairs in the secret
+     * @return the key value pairs of the secret read by {@link #kvRead(int)}, e.g. to put into a fake vault
+     */
+    static Map<String, String> kvData(int keys) {
+        Map<String, String> data = new HashMap<>();
+        for (int i = 0; i < keys; i++) {
+            data.put("key_" + i, "value-" + i + "-0123456789abcdef0123456789abcdef");
+        }
+        return data;
+    }
+
+    /**
+     * @param keys the number of key value pairs in the secret
+     * @return the body of a KV v2 read of a secret with the given number of keys
+     */
+    static String kvRead(int keys) {
+        StringBuilder data = new StringBuilder();
+        for (int i = 0; i < keys; i++) {
+            if (i > 0) {
+                data.append(',');
+            }
+            data.append("\"key_").append(i).append("\":\"value-").append(i).append("-0123456789abcdef0123456789abcdef\"");
+        }
+        return "{\"request_id\":\"b39595c5-9107-4066-aef1-303bcc391027\",\"lease_id\":\"\",\"renewable\":false,"
+            + "\"lease_duration\":0,\"data\":{\"data\":{" + data + "},\"metadata\":{\"created_time\":"
+            + "\"2022-03-28T10:22:52.997559047Z\",\"custom_metadata\":null,\"deletion_time\":\"\",\"destroyed\":false,"
+            + "\"version\":1}},\"wrap_info\":null,\"warnings\":null,\"auth\":null}";
+    }
+}
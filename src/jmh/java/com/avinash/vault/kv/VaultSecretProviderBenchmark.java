@@ -0,0 +1,69 @@
+package com.avinash.vault.kv;
+
+import com.avinash.vault.kv.fake.FakeVault;
+import org.apache.kafka.common.config.ConfigData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link VaultSecretProvider#get(String, Set)} end to end, configured as in a worker, against the in-process
+ * {@link FakeVault} on the loopback interface. Run with {@code -t} to measure concurrent resolutions.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class VaultSecretProviderBenchmark {
+
+    @Param({"small", "large"})
+    public String payload;
+
+    @Param({"false", "true"})
+    public boolean cached;
+
+    private FakeVault fake;
+    private VaultSecretProvider provider;
+    private final Set<String> keys = Set.of("key_0", "key_1");
+
+    @Setup(Level.Trial)
+    public void setup() {
+        fake = new FakeVault().appRole("role", "secret").tokenTtl(Duration.ofDays(1), true);
+        fake.put("kv", "benchmark/db", VaultPayloads.kvData("small".equals(payload) ? 2 : 200));
+        Map<String, String> configs = new HashMap<>();
+        configs.put("url", fake.uri().toString());
+        configs.put("namespace", "benchmark");
+        configs.put("auth.mechanism", "APP_ROLE_AUTH");
+        configs.put("role.id", "role");
+        configs.put("secret.id", "secret");
+        configs.put("metrics.jmx.enabled", "false");
+        if (cached) {
+            configs.put("cache.ttl.ms", "600000");
+        }
+        provider = new VaultSecretProvider();
+        provider.configure(configs);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        provider.close();
+        fake.close();
+    }
+
+    @Benchmark
+    public ConfigData getKeys() {
+        return provider.get("/v1/kv/data/benchmark/db", keys);
+    }
+}
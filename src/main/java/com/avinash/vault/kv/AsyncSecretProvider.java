@@ -0,0 +1,110 @@
+package com.avinash.vault.kv;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non blocking twin of {@link SecretProvider}. Every method returns immediately and the returned future completes
+ * with the outcome of the call, or exceptionally with the same exception the blocking variant would have thrown.
+ */
+public interface AsyncSecretProvider {
+
+    /**
+     * @param path the path of the secret in the vault excluding th key
+     * @return all the key value pairs in form of a map at the specified path
+     * @see SecretProvider#getSecret(String)
+     */
+    CompletableFuture<Map<String, String>> getSecretAsync(String path);
+
+    /**
+     * @param path the path of the secret in the vault excluding th key
+     * @param key  the specific key to be looked for in the vault on the specified path.
+     * @return the key value pair for this key and its secret value in form of a map
+     * @see SecretProvider#getSecret(String, String)
+     */
+    CompletableFuture<Map<String, String>> getSecretAsync(String path, String key);
+
+    /**
+     * @param path the path of the secret in the vault excluding th key
+     * @return the full response for the specified path, including the lease and version metadata of the secret
+     * @see SecretProvider#readSecret(String)
+     */
+    CompletableFuture<VaultResponse> readSecretAsync(String path);
+
+    /**
+     * @param path the path of the secret in the vault excluding the keys
+     * @return an immutable snapshot of all the key value pairs at the path, with the version and lease of the secret
+     * @see SecretProvider#getSecretSnapshot(String)
+     */
+    default CompletableFuture<SecretSnapshot> getSecretSnapshotAsync(String path) {
+        return readSecretAsync(path).thenApply(response -> SecretSnapshot.of(path, response));
+    }
+
+    /**
+     * Reads the metadata of a KV v2 secret, which is much cheaper than reading the secret when only its current
+     * version is of interest.
+     *
+     * @param path the path of the secret in the vault excluding th key, i.e. {@code /v1/<engine>/data/<name>}
+     * @return the metadata of the secret, including its current version
+     */
+    CompletableFuture<VaultMetadataResponse> readMetadataAsync(String path);
+
+    /**
+     * @param paths the paths of the secrets in the vault excluding the keys
+     * @return the result of every distinct path, in the order of the given paths
+     * @see SecretProvider#getSecrets(Collection)
+     */
+    CompletableFuture<Map<String, SecretResult>> getSecretsAsync(Collection<String> paths);
+
+    /**
+     * Creates an empty secret under the Secret Engine
+     *
+     * @param secretEngine The secret Engine under which the new path (secret) should be created
+     * @param secretName Name of the secret
+     */
+    CompletableFuture<Void> addSecretAsync(String secretEngine, String secretName);
+
+    /**
+     * Creates a secret under the Secret Engine with provided values
+     *
+     * @param secretEngine The secret Engine under which the new path (secret) should be created
+     * @param secretName Name of the secret
+     * @param data Data to add as key value pairs
+     * @param options Optional argument key value pairs to influence behaviour
+     */
+    CompletableFuture<Void> addSecretAsync(String secretEngine, String secretName, Map<String, String> data, Map<String, String> options);
+
+    /**
+     * @param secretEngine The secret Engine under which the new path (secret) should be created
+     * @param secretName Name of the secret
+     * @param data Data to add as key value pairs
+     * @param options Optional argument key value pairs to influence behaviour
+     * @see SecretProvider#patchSecret(String, String, Map, Map)
+     */
+    CompletableFuture<Void> patchSecretAsync(String secretEngine, String secretName, Map<String, String> data, Map<String, String> options);
+
+    /**
+     * @return the version written, 0 if vault did not tell
+     * @see SecretProvider#writeSecret(String, String, Map, Long)
+     */
+    default CompletableFuture<Long> writeSecretAsync(String secretEngine, String secretName, Map<String, String> data, Long cas) {
+        return addSecretAsync(secretEngine, secretName, data, VaultRequestTemplates.casOptions(cas)).thenApply(ignored -> 0L);
+    }
+
+    /**
+     * @return the version written, 0 if vault did not tell
+     * @see SecretProvider#writePatch(String, String, Map, Long)
+     */
+    default CompletableFuture<Long> writePatchAsync(String secretEngine, String secretName, Map<String, String> data, Long cas) {
+        return patchSecretAsync(secretEngine, secretName, data, VaultRequestTemplates.casOptions(cas)).thenApply(ignored -> 0L);
+    }
+
+    /**
+     * @param secretEngine Name of the secret engine
+     * @param secretName Name of the secret
+     * @param secretVersion Version of the secret to destroy
+     */
+    CompletableFuture<Void> destroySecretAsync(String secretEngine, String secretName, Optional<String> secretVersion);
+}
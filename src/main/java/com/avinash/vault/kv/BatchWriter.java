@@ -0,0 +1,231 @@
+package com.avinash.vault.kv;
+
+import com.avinash.vault.kv.exceptions.VaultException;
+import com.avinash.vault.kv.http.AsyncLimiter;
+import com.avinash.vault.kv.http.Futures;
+import lombok.Builder;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Writes many secrets at once, e.g. for a rotation, instead of one blocking request after the other.
+ * <p>
+ * The writes of a batch to different secrets run in parallel, at most a bounded number at a time, while the writes to
+ * the same secret run in the order they were given. Consecutive patches of the same secret are merged into a single
+ * merge patch, as is a patch following the add of the secret, unless any of them has options, e.g. {@code cas}, whose
+ * outcome depends on every single write.
+ * <p>
+ * Writes can also be submitted one at a time, write behind: they are buffered and written as a batch once the buffer
+ * is full, every flush interval, or on {@link #flush()} and {@link #close()}.
+ * <p>
+ * Writes go straight to vault, the caches in front of it are not updated.
+ */
+@Slf4j
+public class BatchWriter implements AutoCloseable {
+
+    public static final int DEFAULT_FLUSH_SIZE = 100;
+
+    private final AsyncSecretProvider vault;
+    private final AsyncLimiter limiter;
+    private final int flushSize;
+    // the last write started for every path, the next write of the path waits for it
+    private final ConcurrentMap<String, CompletableFuture<WriteResult>> tails = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler;
+    private List<Pending> buffer = new ArrayList<>();
+    private boolean closed;
+
+    /**
+     * @param vault           the vault to write to, not closed with this writer
+     * @param maxInFlight     the maximum number of writes in flight, {@link AsyncLimiter#DEFAULT_MAX_IN_FLIGHT} if null
+     * @param flushSize       how many submitted writes are buffered until they are written, {@link #DEFAULT_FLUSH_SIZE}
+     *                        if null
+     * @param flushIntervalMs how often the submitted writes are written, only when the buffer is full or flushed if null
+     */
+    @Builder
+    public BatchWriter(AsyncSecretProvider vault, Integer maxInFlight, Integer flushSize, Long flushIntervalMs) {
+        this.vault = Objects.requireNonNull(vault);
+        this.limiter = new AsyncLimiter(maxInFlight == null ? AsyncLimiter.DEFAULT_MAX_IN_FLIGHT : maxInFlight);
+        this.flushSize = flushSize == null ? DEFAULT_FLUSH_SIZE : flushSize;
+        if (this.flushSize <= 0 || (flushIntervalMs != null && flushIntervalMs <= 0)) {
+            throw new IllegalArgumentException("Flush size and interval must be positive");
+        }
+        if (flushIntervalMs != null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "vault-batch-writer");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleWithFixedDelay(this::flush, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+        } else {
+            scheduler = null;
+        }
+    }
+
+    /**
+     * @return the result of every write, in the order of the given writes
+     */
+    public List<WriteResult> writeAll(List<SecretWrite> writes) {
+        return Futures.join(writeAllAsync(writes));
+    }
+
+    /**
+     * @return the result of every write, in the order of the given writes, once all are written
+     */
+    public CompletableFuture<List<WriteResult>> writeAllAsync(List<SecretWrite> writes) {
+        List<CompletableFuture<WriteResult>> results = write(writes);
+        return CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0]))
+            .thenApply(ignored -> results.stream().map(CompletableFuture::join).collect(Collectors.toList()));
+    }
+
+    /**
+     * Buffers the write, which is written with the next batch.
+     *
+     * @return the result of the write, once written
+     */
+    public CompletableFuture<WriteResult> submit(SecretWrite write) {
+        Pending pending = new Pending(write);
+        synchronized (this) {
+            if (closed) {
+                return CompletableFuture.failedFuture(new VaultException("Batch writer is closed"));
+            }
+            buffer.add(pending);
+            if (buffer.size() >= flushSize) {
+                send(drain());
+            }
+        }
+        return pending.result;
+    }
+
+    /**
+     * Writes the buffered writes now.
+     *
+     * @return completes once they are written, whatever their results
+     */
+    public synchronized CompletableFuture<Void> flush() {
+        return send(drain());
+    }
+
+    /**
+     * Writes the buffered writes and waits for every write started by this writer. Submitting fails afterwards.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+        }
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        flush().join();
+        CompletableFuture.allOf(tails.values().toArray(new CompletableFuture<?>[0])).join();
+    }
+
+    private List<Pending> drain() {
+        List<Pending> drained = buffer;
+        buffer = new ArrayList<>();
+        return drained;
+    }
+
+    /**
+     * Starts the drained writes, while holding the lock they were drained under, so that batches drained one after
+     * the other are queued behind the previous writes of their paths in that order. Starting a write only chains it
+     * to the previous one of its path, it never waits for vault.
+     */
+    private CompletableFuture<Void> send(List<Pending> pending) {
+        if (pending.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        List<CompletableFuture<WriteResult>> results = write(pending.stream().map(p -> p.write).collect(Collectors.toList()));
+        for (int i = 0; i < results.size(); i++) {
+            results.get(i).thenAccept(pending.get(i).result::complete);
+        }
+        return CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0]));
+    }
+
+    private List<CompletableFuture<WriteResult>> write(List<SecretWrite> writes) {
+        Map<String, List<Merged>> byPath = new LinkedHashMap<>();
+        List<CompletableFuture<WriteResult>> results = new ArrayList<>(writes.size());
+        for (SecretWrite write : writes) {
+            List<Merged> queue = byPath.computeIfAbsent(write.path(), path -> new ArrayList<>());
+            Merged last = queue.isEmpty() ? null : queue.get(queue.size() - 1);
+            if (last == null || !last.absorb(write)) {
+                last = new Merged(write);
+                queue.add(last);
+            }
+            results.add(last.result);
+        }
+        log.debug("Writing {} secrets as {} requests", writes.size(), byPath.values().stream().mapToInt(List::size).sum());
+        byPath.forEach((path, queue) -> queue.forEach(merged -> start(path, merged)));
+        return results;
+    }
+
+    /**
+     * Starts the write once the previous write of the path completed, whatever its result.
+     */
+    private void start(String path, Merged merged) {
+        CompletableFuture<WriteResult> previous = tails.put(path, merged.result);
+        Runnable send = () -> limiter.submit(merged::send)
+            .whenComplete((ignored, e) -> merged.result.complete(e == null ? WriteResult.success() : WriteResult.failure(Futures.unwrap(e))));
+        if (previous == null) {
+            send.run();
+        } else {
+            previous.whenComplete((ignored, e) -> send.run());
+        }
+        merged.result.whenComplete((ignored, e) -> tails.remove(path, merged.result));
+    }
+
+    private final class Merged {
+        private final SecretWrite first;
+        private final Map<String, String> data;
+        private final CompletableFuture<WriteResult> result = new CompletableFuture<>();
+
+        private Merged(SecretWrite first) {
+            this.first = first;
+            this.data = new HashMap<>(first.getData());
+        }
+
+        /**
+         * @return whether the write was merged into this one
+         */
+        private boolean absorb(SecretWrite write) {
+            if (write.getKind() != SecretWrite.Kind.PATCH || write.hasOptions() || first.hasOptions()) {
+                return false;
+            }
+            data.putAll(write.getData());
+            if (first.getKind() == SecretWrite.Kind.ADD) {
+                // the secret is replaced as a whole, the keys removed by the patch are simply left out
+                data.values().removeIf(Objects::isNull);
+            }
+            return true;
+        }
+
+        private CompletableFuture<Void> send() {
+            Map<String, String> options = first.getOptions() == null ? Map.of() : first.getOptions();
+            return first.getKind() == SecretWrite.Kind.ADD
+                ? vault.addSecretAsync(first.getSecretEngine(), first.getSecretName(), data, options)
+                : vault.patchSecretAsync(first.getSecretEngine(), first.getSecretName(), data, options);
+        }
+    }
+
+    private static final class Pending {
+        private final SecretWrite write;
+        private final CompletableFuture<WriteResult> result = new CompletableFuture<>();
+
+        private Pending(SecretWrite write) {
+            this.write = write;
+        }
+    }
+}
@@ -0,0 +1,603 @@
+package com.avinash.vault.kv;
+
+import com.avinash.vault.kv.exceptions.SecretNotFoundException;
+import com.avinash.vault.kv.memory.SecretSlabs;
+import com.avinash.vault.kv.memory.SecretValues;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * A {@link SecretProvider} decorator which keeps the secrets read from the delegate in a bounded, in-memory LRU cache
+ * keyed by (namespace, path), so that repeated resolutions of the same path cost a map lookup instead of a round
+ * trip to vault.
+ * <p>
+ * An entry lives for the lease duration returned by vault, capped by the configured ttl. KV v2 secrets are not
+ * leased, so for them the configured ttl applies. The KV version of an entry is remembered so that a slower, older
+ * read can never replace a newer version that is already cached. Writes going through this provider evict the
+ * written path, except the versioned writes, {@link #writeSecret} and {@link #writePatch}, which update the cached
+ * entry in place with the version written, so that the writer reads its own write without going to vault.
+ * <p>
+ * With a stale-if-error bound, an expired entry is kept for that long after its expiry and served when reading the
+ * path from the delegate fails, e.g. while vault is down or its circuit breaker is open. A missing secret is not an
+ * error in that sense and is always passed on.
+ * <p>
+ * With {@link SecretSlabs}, the values of the entries are kept off heap, zeroed as soon as their entry is dropped, and
+ * only materialized as strings when read. {@link #readSecret(String, Set)} materializes just the requested keys, and
+ * {@link #getSecretChars} and {@link #readSecretValue} none at all.
+ */
+@Slf4j
+public class CachingSecretProvider implements SecretProvider {
+
+    public static final long DEFAULT_TTL_MS = TimeUnit.MINUTES.toMillis(5);
+    public static final int DEFAULT_MAX_ENTRIES = 1000;
+
+    private final SecretProvider delegate;
+    private final String namespace;
+    private final long ttlNanos;
+    private final long staleIfErrorNanos;
+    private final Map<CacheKey, CacheEntry> entries;
+    // keeps the values of the entries off heap, null to keep them on heap
+    private final SecretSlabs slabs;
+    // only views share the cache of another provider, closing them is a no-op
+    private final boolean view;
+
+    private final LongAdder hits;
+    private final LongAdder misses;
+    private final LongAdder evictions;
+    private final LongAdder staleHits;
+
+    public CachingSecretProvider(SecretProvider delegate, String namespace) {
+        this(delegate, namespace, DEFAULT_TTL_MS, DEFAULT_MAX_ENTRIES);
+    }
+
+    public CachingSecretProvider(SecretProvider delegate, String namespace, long ttlMillis, int maxEntries) {
+        this(delegate, namespace, ttlMillis, maxEntries, 0);
+    }
+
+    /**
+     * @param staleIfErrorMillis how long after its expiry an entry may still be served when the delegate fails, 0 for
+     *                           never
+     */
+    public CachingSecretProvider(SecretProvider delegate, String namespace, long ttlMillis, int maxEntries,
+                                 long staleIfErrorMillis) {
+        this(delegate, namespace, ttlMillis, maxEntries, staleIfErrorMillis, null);
+    }
+
+    /**
+     * @param slabs keeps the values of the entries off heap, closed with this provider, null to keep them on heap
+     */
+    public CachingSecretProvider(SecretProvider delegate, String namespace, long ttlMillis, int maxEntries,
+                                 long staleIfErrorMillis, SecretSlabs slabs) {
+        if (ttlMillis <= 0 || maxEntries <= 0 || staleIfErrorMillis < 0) {
+            throw new IllegalArgumentException("Cache ttl and max entries must be positive, stale if error not negative");
+        }
+        this.delegate = delegate;
+        this.namespace = namespace;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.staleIfErrorNanos = TimeUnit.MILLISECONDS.toNanos(staleIfErrorMillis);
+        this.slabs = slabs;
+        this.view = false;
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+        this.evictions = new LongAdder();
+        this.staleHits = new LongAdder();
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<CacheKey, CacheEntry> eldest) {
+                if (size() > maxEntries) {
+                    evictions.increment();
+                    eldest.getValue().release();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    private CachingSecretProvider(CachingSecretProvider cache, SecretProvider delegate) {
+        this.delegate = delegate;
+        this.namespace = cache.namespace;
+        this.ttlNanos = cache.ttlNanos;
+        this.staleIfErrorNanos = cache.staleIfErrorNanos;
+        this.entries = cache.entries;
+        this.slabs = cache.slabs;
+        this.view = true;
+        this.hits = cache.hits;
+        this.misses = cache.misses;
+        this.evictions = cache.evictions;
+        this.staleHits = cache.staleHits;
+    }
+
+    /**
+     * The view shares the cache of this provider and reads from the view of the delegate with the deadline.
+     */
+    @Override
+    public SecretProvider withDeadline(Duration deadline) {
+        return new CachingSecretProvider(this, delegate.withDeadline(deadline));
+    }
+
+    @Override
+    public Map<String, String> getSecret(String path) {
+        return load(path, CacheEntry::data);
+    }
+
+    /**
+     * A cached secret kept on heap is a snapshot already, which is handed out as is.
+     */
+    @Override
+    public SecretSnapshot getSecretSnapshot(String path) {
+        return load(path, entry -> entry.snapshot(path));
+    }
+
+    @Override
+    public SecretSnapshot getSecretSnapshot(String path, Set<String> keys) {
+        return load(path, entry -> entry.snapshot(path, keys));
+    }
+
+    @Override
+    public Map<String, String> getSecret(String path, String key) {
+        return load(path, entry -> entry.response(path, Set.of(key)).getData().getData());
+    }
+
+    @Override
+    public VaultResponse readSecret(String path) {
+        return load(path, CacheEntry::response);
+    }
+
+    @Override
+    public VaultResponse readSecret(String path, Set<String> keys) {
+        return load(path, entry -> entry.response(path, keys));
+    }
+
+    /**
+     * Reads the value without materializing it as a string.
+     *
+     * @return a copy of the chars of the value, which the caller should zero once done with it
+     * @throws SecretNotFoundException if the key is not present at the path
+     */
+    public char[] getSecretChars(String path, String key) {
+        return readSecretValue(path, key, value -> {
+            char[] chars = new char[value.length()];
+            for (int i = 0; i < chars.length; i++) {
+                chars[i] = value.charAt(i);
+            }
+            return chars;
+        });
+    }
+
+    /**
+     * Reads the value without copying it, straight from its slab when kept off heap.
+     *
+     * @param reader reads the value, which is only valid during the call and must not be kept
+     * @throws SecretNotFoundException if the key is not present at the path
+     */
+    public <T> T readSecretValue(String path, String key, Function<CharSequence, T> reader) {
+        return load(path, entry -> reader.apply(entry.value(path, key)));
+    }
+
+    /**
+     * Cached paths are answered from the cache, only the others are read from the delegate, in one bulk read.
+     */
+    @Override
+    public Map<String, SecretResult> getSecrets(Collection<String> paths) {
+        Map<String, SecretResult> results = new LinkedHashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (String path : paths) {
+            if (results.containsKey(path)) {
+                continue;
+            }
+            VaultResponse cached = cached(path, CacheEntry::response);
+            results.put(path, cached == null ? null : SecretResult.success(cached));
+            if (cached == null) {
+                missing.add(path);
+            }
+        }
+        if (!missing.isEmpty()) {
+            long loadedAt = System.nanoTime();
+            delegate.getSecrets(missing).forEach((path, result) -> {
+                if (result.isSuccess()) {
+                    store(path, result.getResponse(), loadedAt);
+                    results.put(path, result);
+                    return;
+                }
+                VaultResponse stale = stale(path, result.getError(), CacheEntry::response);
+                results.put(path, stale == null ? result : SecretResult.success(stale));
+            });
+        }
+        return results;
+    }
+
+    @Override
+    public void addSecret(String secretEngine, String secretName) {
+        delegate.addSecret(secretEngine, secretName);
+        invalidate(VaultRequestTemplates.dataPath(secretEngine, secretName));
+    }
+
+    @Override
+    public void addSecret(String secretEngine, String secretName, Map<String, String> data, Map<String, String> options) {
+        delegate.addSecret(secretEngine, secretName, data, options);
+        invalidate(VaultRequestTemplates.dataPath(secretEngine, secretName));
+    }
+
+    @Override
+    public void patchSecret(String secretEngine, String secretName, Map<String, String> data, Map<String, String> options) {
+        delegate.patchSecret(secretEngine, secretName, data, options);
+        invalidate(VaultRequestTemplates.dataPath(secretEngine, secretName));
+    }
+
+    @Override
+    public long writeSecret(String secretEngine, String secretName, Map<String, String> data, Long cas) {
+        String path = VaultRequestTemplates.dataPath(secretEngine, secretName);
+        long version;
+        try {
+            version = delegate.writeSecret(secretEngine, secretName, data, cas);
+        } catch (RuntimeException e) {
+            // a conflict tells the cached version is outdated, any other failure may still have written it
+            invalidate(path);
+            throw e;
+        }
+        Map<String, String> written = new HashMap<>(data);
+        written.values().removeIf(Objects::isNull);
+        update(path, version, current -> written);
+        return version;
+    }
+
+    @Override
+    public long writePatch(String secretEngine, String secretName, Map<String, String> data, Long cas) {
+        String path = VaultRequestTemplates.dataPath(secretEngine, secretName);
+        long version;
+        try {
+            version = delegate.writePatch(secretEngine, secretName, data, cas);
+        } catch (RuntimeException e) {
+            invalidate(path);
+            throw e;
+        }
+        update(path, version, current -> {
+            // the patch only applies on top of the version right before it, anything else misses a write of someone else
+            if (current == null || current.getVersion() != version - 1) {
+                return null;
+            }
+            Map<String, String> patched = new HashMap<>(current.data());
+            data.forEach((key, value) -> {
+                if (value == null) {
+                    patched.remove(key);
+                } else {
+                    patched.put(key, value);
+                }
+            });
+            return patched;
+        });
+        return version;
+    }
+
+    @Override
+    public void destroySecret(String secretEngine, String secretName, Optional<String> secretVersion) {
+        delegate.destroySecret(secretEngine, secretName, secretVersion);
+        invalidate(VaultRequestTemplates.dataPath(secretEngine, secretName));
+    }
+
+    @Override
+    public void close() {
+        if (view) {
+            return;
+        }
+        invalidateAll();
+        if (slabs != null) {
+            slabs.close();
+        }
+        delegate.close();
+    }
+
+    @Override
+    public void evict(String path) {
+        invalidate(path);
+        delegate.evict(path);
+    }
+
+    /**
+     * Drops the cached entry of the path, the next read goes to the delegate.
+     *
+     * @param path the path of the secret in the vault excluding the key
+     */
+    public void invalidate(String path) {
+        synchronized (entries) {
+            CacheEntry removed = entries.remove(new CacheKey(namespace, path));
+            if (removed != null) {
+                removed.release();
+            }
+        }
+    }
+
+    public void invalidateAll() {
+        synchronized (entries) {
+            entries.values().forEach(CacheEntry::release);
+            entries.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return the reads answered with an expired entry because the delegate failed
+     */
+    public long getStaleHits() {
+        return staleHits.sum();
+    }
+
+    /**
+     * @return the off heap memory taken by the cached values, 0 when they are kept on heap
+     */
+    public long getOffHeapBytes() {
+        return slabs == null ? 0 : slabs.usedBytes();
+    }
+
+    /**
+     * Reads the path from the cache, or else from the delegate, with the reader.
+     */
+    private <T> T load(String path, Function<CacheEntry, T> reader) {
+        T cached = cached(path, reader);
+        if (cached != null) {
+            return cached;
+        }
+        // the delegate call happens outside the lock, so a slow path never blocks readers of other paths
+        VaultResponse response;
+        long loadedAt = System.nanoTime();
+        try {
+            response = delegate.readSecret(path);
+        } catch (RuntimeException e) {
+            T stale = stale(path, e, reader);
+            if (stale == null) {
+                throw e;
+            }
+            return stale;
+        }
+        T stored = read(store(path, response, loadedAt), reader);
+        // the entry was dropped right away, the response read is as good
+        return stored != null ? stored : reader.apply(onHeap(path, response, loadedAt + lifetimeOf(response)));
+    }
+
+    /**
+     * @return the expired entry of the path, read with the reader, if it may be served instead of the error, null
+     * otherwise
+     */
+    private <T> T stale(String path, RuntimeException error, Function<CacheEntry, T> reader) {
+        if (staleIfErrorNanos == 0 || error instanceof SecretNotFoundException) {
+            return null;
+        }
+        CacheEntry entry;
+        synchronized (entries) {
+            entry = entries.get(new CacheKey(namespace, path));
+        }
+        long now = System.nanoTime();
+        if (entry == null || now - entry.getExpiresAt() > staleIfErrorNanos) {
+            return null;
+        }
+        T stale = read(entry, reader);
+        if (stale == null) {
+            return null;
+        }
+        staleHits.increment();
+        log.warn("Serving secret {} which expired {} ms ago, as reading it failed : {}", path,
+            TimeUnit.NANOSECONDS.toMillis(Math.max(0, now - entry.getExpiresAt())), error.getMessage());
+        return stale;
+    }
+
+    /**
+     * @return the entry of the path read with the reader, null if there is none or it expired
+     */
+    private <T> T cached(String path, Function<CacheEntry, T> reader) {
+        CacheEntry entry;
+        synchronized (entries) {
+            entry = entries.get(new CacheKey(namespace, path));
+        }
+        T cached = entry == null || entry.isExpired(System.nanoTime()) ? null : read(entry, reader);
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Reads the entry while its values are retained, so that they can not be zeroed by a concurrent eviction.
+     *
+     * @return what the reader read, null if the values of the entry were released already
+     */
+    private static <T> T read(CacheEntry entry, Function<CacheEntry, T> reader) {
+        if (!entry.retain()) {
+            return null;
+        }
+        try {
+            return reader.apply(entry);
+        } finally {
+            entry.release();
+        }
+    }
+
+    private CacheEntry store(String path, VaultResponse response, long loadedAt) {
+        CacheKey key = new CacheKey(namespace, path);
+        long version = versionOf(response);
+        synchronized (entries) {
+            CacheEntry current = entries.get(key);
+            if (current != null && current.getVersion() > version) {
+                log.debug("Ignoring version {} of {}, version {} is already cached", version, path, current.getVersion());
+                return current;
+            }
+            CacheEntry loaded = entry(path, response, version, loadedAt + lifetimeOf(response));
+            put(key, loaded);
+            return loaded;
+        }
+    }
+
+    /**
+     * Replaces the entry of the path with the version written, if the new data of the path is known and no newer
+     * version is cached yet, drops it otherwise.
+     *
+     * @param written the data of the path once written, from its cached entry if any, null if unknown
+     */
+    private void update(String path, long version, Function<CacheEntry, Map<String, String>> written) {
+        CacheKey key = new CacheKey(namespace, path);
+        synchronized (entries) {
+            CacheEntry current = entries.get(key);
+            if (current != null && current.getVersion() > version) {
+                return;
+            }
+            // the values of a cached entry are only released once it is dropped, under the lock
+            Map<String, String> data = version > 0 ? written.apply(current) : null;
+            if (data == null) {
+                CacheEntry removed = entries.remove(key);
+                if (removed != null) {
+                    removed.release();
+                }
+                return;
+            }
+            // KV v2 secrets are not leased, the entry lives for the configured ttl
+            put(key, entry(path, VaultResponse.of(data, version), version, System.nanoTime() + ttlNanos));
+        }
+    }
+
+    private void put(CacheKey key, CacheEntry entry) {
+        CacheEntry replaced = entries.put(key, entry);
+        if (replaced != null && replaced != entry) {
+            replaced.release();
+        }
+    }
+
+    /**
+     * @return an entry of the response, off heap if this cache keeps its values off heap and there is room left
+     */
+    private CacheEntry entry(String path, VaultResponse response, long version, long expiresAt) {
+        if (slabs != null) {
+            SecretValues values = SecretValues.copyOf(response.getData().getData(), slabs);
+            if (values != null) {
+                // the response only keeps the lease and metadata, the data is read from the values
+                return new CacheEntry(response.withData(Map.of()), null, values, version, expiresAt);
+            }
+            log.warn("No off heap memory left for the cached secrets, keeping the values on heap");
+        }
+        return onHeap(path, response, expiresAt);
+    }
+
+    private static CacheEntry onHeap(String path, VaultResponse response, long expiresAt) {
+        return new CacheEntry(response, SecretSnapshot.of(path, response), null, versionOf(response), expiresAt);
+    }
+
+    private long lifetimeOf(VaultResponse response) {
+        long leaseNanos = TimeUnit.SECONDS.toNanos((long) response.getLease_duration());
+        return leaseNanos > 0 ? Math.min(leaseNanos, ttlNanos) : ttlNanos;
+    }
+
+    private static long versionOf(VaultResponse response) {
+        Metadata metadata = response.getData().getMetadata();
+        return metadata == null ? 0 : (long) metadata.getVersion();
+    }
+
+    @Value
+    private static class CacheKey {
+        String namespace;
+        String path;
+    }
+
+    /**
+     * A cached secret, whose values are kept either on heap, in its snapshot, or off heap. Off heap values are only valid
+     * while retained, see {@link #read}.
+     */
+    @Value
+    private static class CacheEntry {
+        VaultResponse response;
+        SecretSnapshot snapshot;
+        SecretValues values;
+        long version;
+        long expiresAt;
+
+        boolean isExpired(long now) {
+            return now - expiresAt >= 0;
+        }
+
+        boolean retain() {
+            return values == null || values.retain();
+        }
+
+        void release() {
+            if (values != null) {
+                values.release();
+            }
+        }
+
+        Map<String, String> data() {
+            return values == null ? snapshot.asMap() : Collections.unmodifiableMap(values.toMap());
+        }
+
+        VaultResponse response() {
+            return values == null ? response : response.withData(values.toMap());
+        }
+
+        /**
+         * @return the response with only the given keys, the only values materialized as strings
+         */
+        VaultResponse response(String path, Set<String> keys) {
+            if (values == null) {
+                return response.withData(snapshot.select(keys).asMap());
+            }
+            Map<String, String> selected = new HashMap<>();
+            for (String key : keys) {
+                CharSequence value = value(path, key);
+                selected.put(key, value == null ? null : value.toString());
+            }
+            return response.withData(selected);
+        }
+
+        SecretSnapshot snapshot(String path) {
+            return values == null ? snapshot : SecretSnapshot.of(path, response());
+        }
+
+        /**
+         * @return the snapshot with only the given keys, the only values materialized as strings when off heap
+         */
+        SecretSnapshot snapshot(String path, Set<String> keys) {
+            return values == null ? snapshot.select(keys) : SecretSnapshot.of(path, response(path, keys));
+        }
+
+        CharSequence value(String path, String key) {
+            if (values == null) {
+                return snapshot.getRequired(key);
+            }
+            if (!values.containsKey(key)) {
+                throw new SecretNotFoundException("Secret value for key " + key + " is not present at path " + path);
+            }
+            return values.get(key);
+        }
+    }
+}
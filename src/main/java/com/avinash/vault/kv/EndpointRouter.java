@@ -0,0 +1,252 @@
+package com.avinash.vault.kv;
+
+import com.avinash.vault.kv.http.CircuitBreaker;
+import com.avinash.vault.kv.http.RetryBudget;
+import com.avinash.vault.kv.http.RetryableHttp;
+import com.avinash.vault.kv.metrics.VaultMetrics;
+import lombok.extern.slf4j.Slf4j;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Picks the nodes of a vault cluster requests are sent to, in the order they are tried.
+ * <p>
+ * Reads go to the available node with the lowest latency, as an exponentially weighted moving average of its recent
+ * requests. A failed request counts as a slow one, so a failing node loses the reads right away, well before its
+ * circuit breaker opens. Writes go to the active node first. Every node is probed on {@code sys/health}
+ * periodically, which tells whether it is up and whether it is the active node, and keeps the latency of idle nodes
+ * current so that a recovered node wins its reads back.
+ */
+@Slf4j
+final class EndpointRouter implements AutoCloseable {
+
+    static final long DEFAULT_HEALTH_CHECK_MS = TimeUnit.SECONDS.toMillis(10);
+
+    // the weight of the newest latency sample
+    private static final double ALPHA = 0.2;
+    private static final long FAILURE_PENALTY_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private static final Comparator<Node> BY_LATENCY = Comparator.comparingDouble(node -> node.latencyNanos);
+
+    private final List<Node> nodes;
+    private final List<Node> single;
+    private final RetryableHttp probes;
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * @param endpoints         the nodes, at least one
+     * @param http              the client the nodes are probed with, without retries and metrics of the calls
+     * @param healthCheckMillis how often every node is probed, only with more than one node
+     */
+    EndpointRouter(List<VaultEndpoint> endpoints, String namespace, RetryableHttp http, long healthCheckMillis) {
+        if (endpoints.isEmpty()) {
+            throw new IllegalArgumentException("At least one vault endpoint is needed");
+        }
+        List<Node> all = new ArrayList<>();
+        // the active nodes first, so that they win the ties
+        endpoints.stream().filter(e -> e.getRole() == VaultEndpoint.Role.ACTIVE).forEach(e -> all.add(new Node(e, namespace, http)));
+        endpoints.stream().filter(e -> e.getRole() != VaultEndpoint.Role.ACTIVE).forEach(e -> all.add(new Node(e, namespace, http)));
+        this.nodes = List.copyOf(all);
+        this.single = nodes.size() == 1 ? nodes : null;
+        // probes are not retried, do not feed the retry budget and are kept out of the metrics of the calls
+        this.probes = http.withPolicy(http.getPolicy().toBuilder().maxRetries(0).budget(RetryBudget.unlimited()).build())
+            .withMetrics(new VaultMetrics());
+        if (single == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "vault-health-check");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleWithFixedDelay(this::probeAll, 0, healthCheckMillis, TimeUnit.MILLISECONDS);
+            log.info("Routing vault requests over {} nodes, probing their health every {} ms", nodes.size(), healthCheckMillis);
+        } else {
+            scheduler = null;
+        }
+    }
+
+    /**
+     * @return the node requests go to when there is no choice, i.e. the first active one
+     */
+    Node primary() {
+        return nodes.get(0);
+    }
+
+    List<Node> nodes() {
+        return nodes;
+    }
+
+    /**
+     * @return the available nodes from the fastest to the slowest, then the others as a last resort
+     */
+    List<Node> forRead() {
+        if (single != null) {
+            return single;
+        }
+        List<Node> available = new ArrayList<>(nodes.size());
+        List<Node> others = new ArrayList<>();
+        for (Node node : nodes) {
+            (node.isAvailable() ? available : others).add(node);
+        }
+        available.sort(BY_LATENCY);
+        others.sort(BY_LATENCY);
+        available.addAll(others);
+        return available;
+    }
+
+    /**
+     * @return the available active nodes, then the other available nodes, which forward writes to the active node,
+     * then the rest as a last resort
+     */
+    List<Node> forWrite() {
+        if (single != null) {
+            return single;
+        }
+        List<Node> ordered = forRead();
+        List<Node> writes = new ArrayList<>(ordered.size());
+        for (Node node : ordered) {
+            if (node.isAvailable() && node.role == VaultEndpoint.Role.ACTIVE) {
+                writes.add(node);
+            }
+        }
+        for (Node node : ordered) {
+            if (!writes.contains(node)) {
+                writes.add(node);
+            }
+        }
+        return writes;
+    }
+
+    /**
+     * Records the outcome of a request to the node, in its latency and circuit breaker.
+     */
+    void record(Node node, long nanos, boolean failed) {
+        node.observe(failed ? Math.max(nanos, FAILURE_PENALTY_NANOS) : nanos);
+        CircuitBreaker breaker = node.endpoint.getCircuitBreaker();
+        if (breaker != null) {
+            if (failed) {
+                breaker.onFailure();
+            } else {
+                breaker.onSuccess();
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    private void probeAll() {
+        for (Node node : nodes) {
+            probe(node);
+        }
+    }
+
+    private void probe(Node node) {
+        if (node.healthUri == null) {
+            node.probed(false, node.role, 0);
+            return;
+        }
+        HttpRequest request = HttpRequest.newBuilder(node.healthUri)
+            .timeout(probes.getRequestTimeout())
+            .GET()
+            .build();
+        long start = System.nanoTime();
+        probes.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+            .whenComplete((response, e) -> {
+                int status = e == null ? response.statusCode() : -1;
+                // 200 for the active node, 429 for a standby and 473 for a performance standby, anything else is down
+                boolean healthy = status == 200 || status == 429 || status == 473;
+                VaultEndpoint.Role role = status == 200 ? VaultEndpoint.Role.ACTIVE
+                    : healthy ? VaultEndpoint.Role.STANDBY : node.role;
+                node.probed(healthy, role, System.nanoTime() - start);
+            });
+    }
+
+    static final class Node {
+        private final VaultEndpoint endpoint;
+        private final VaultRequestTemplates templates;
+        // null when the uri can not be formed, the node is then never healthy
+        private final URI healthUri;
+        private volatile boolean healthy = true;
+        private volatile VaultEndpoint.Role role;
+        // written under the lock of the node, 0 until the first sample so that new nodes get tried
+        private volatile double latencyNanos;
+
+        private Node(VaultEndpoint endpoint, String namespace, RetryableHttp http) {
+            this.endpoint = endpoint;
+            this.templates = new VaultRequestTemplates(endpoint.getUri(), namespace, http.getRequestTimeout());
+            this.role = endpoint.getRole();
+            URI health;
+            try {
+                health = new URI(endpoint.getUri() + "/v1/sys/health");
+            } catch (URISyntaxException e) {
+                health = null;
+            }
+            this.healthUri = health;
+        }
+
+        VaultEndpoint getEndpoint() {
+            return endpoint;
+        }
+
+        VaultRequestTemplates templates() {
+            return templates;
+        }
+
+        boolean isAvailable() {
+            CircuitBreaker breaker = endpoint.getCircuitBreaker();
+            return healthy && (breaker == null || breaker.getState() != CircuitBreaker.State.OPEN);
+        }
+
+        boolean isHealthy() {
+            return healthy;
+        }
+
+        VaultEndpoint.Role getRole() {
+            return role;
+        }
+
+        double getLatencyMillis() {
+            return latencyNanos / 1e6;
+        }
+
+        private synchronized void observe(long nanos) {
+            latencyNanos = latencyNanos == 0 ? nanos : ALPHA * nanos + (1 - ALPHA) * latencyNanos;
+        }
+
+        private void probed(boolean nowHealthy, VaultEndpoint.Role nowRole, long nanos) {
+            if (nowHealthy != healthy) {
+                if (nowHealthy) {
+                    log.info("Vault node {} is healthy again", endpoint.getUri());
+                } else {
+                    log.warn("Vault node {} failed its health check, no more reads are routed to it", endpoint.getUri());
+                }
+                healthy = nowHealthy;
+            }
+            if (nowRole != role) {
+                log.info("Vault node {} is now {}", endpoint.getUri(), nowRole);
+                role = nowRole;
+            }
+            if (nowHealthy) {
+                observe(nanos);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return endpoint.getUri() + "{" + role + (healthy ? "" : ", unhealthy") + ", " + String.format("%.2f", getLatencyMillis()) + " ms}";
+        }
+    }
+}
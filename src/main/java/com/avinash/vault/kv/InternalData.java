@@ -0,0 +1,13 @@
+package com.avinash.vault.kv;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import lombok.Data;
+
+import java.util.Map;
+
+@Data
+@JsonIgnoreProperties(ignoreUnknown = true)
+class InternalData {
+    private Map<String, String> data;
+    private Metadata metadata;
+}
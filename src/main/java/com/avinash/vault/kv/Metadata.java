@@ -0,0 +1,13 @@
+package com.avinash.vault.kv;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import lombok.Data;
+
+@Data
+@JsonIgnoreProperties(ignoreUnknown = true)
+class Metadata {
+    private String created_time;
+    private String deletion_time;
+    private boolean destroyed;
+    private float version;
+}
@@ -1,9 +1,16 @@
 package com.avinash.vault.kv;
 
+import com.avinash.vault.kv.exceptions.SecretNotFoundException;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
-public interface SecretProvider {
+public interface SecretProvider extends AutoCloseable {
 
     /**
      * @param path the path of the secret in the vault excluding th key
@@ -18,6 +25,99 @@ public interface SecretProvider {
      */
     Map<String, String> getSecret(String path, String key);
 
+    /**
+     * @param path the path of the secret in the vault excluding th key
+     * @return the full response for the specified path, including the lease and version metadata of the secret
+     */
+    default VaultResponse readSecret(String path) {
+        return VaultResponse.of(getSecret(path));
+    }
+
+    /**
+     * Reads only some keys of the path. Providers keeping the secrets off heap only materialize these as strings.
+     *
+     * @param path the path of the secret in the vault excluding the keys
+     * @param keys the keys to read
+     * @return the response for the specified path with only the given keys in its data
+     * @throws com.avinash.vault.kv.exceptions.SecretNotFoundException if any of the keys is not present at the path
+     */
+    default VaultResponse readSecret(String path, Set<String> keys) {
+        VaultResponse response = readSecret(path);
+        Map<String, String> data = response.getData().getData();
+        Map<String, String> selected = new HashMap<>();
+        for (String key : keys) {
+            if (!data.containsKey(key)) {
+                throw new SecretNotFoundException("Secret value for key " + key + " is not present at path " + path);
+            }
+            selected.put(key, data.get(key));
+        }
+        return response.withData(selected);
+    }
+
+    /**
+     * @param path the path of the secret in the vault excluding the keys
+     * @return an immutable snapshot of all the key value pairs at the path, with the version and lease of the secret,
+     * which can be shared across threads
+     */
+    default SecretSnapshot getSecretSnapshot(String path) {
+        return SecretSnapshot.of(path, readSecret(path));
+    }
+
+    /**
+     * @param path the path of the secret in the vault excluding the keys
+     * @param keys the keys to read
+     * @return an immutable snapshot of only the given keys at the path, see {@link SecretSnapshot#select(Collection)}
+     * @throws com.avinash.vault.kv.exceptions.SecretNotFoundException if any of the keys is not present at the path
+     */
+    default SecretSnapshot getSecretSnapshot(String path, Set<String> keys) {
+        return getSecretSnapshot(path).select(keys);
+    }
+
+    /**
+     * Forgets whatever is kept locally about the path, so that the next read of it goes to vault.
+     * Providers which keep nothing locally do nothing.
+     *
+     * @param path the path of the secret in the vault excluding th key
+     */
+    default void evict(String path) {
+    }
+
+    /**
+     * A view of this provider whose calls take at most the deadline each, retries included, and fail with a
+     * {@link com.avinash.vault.kv.exceptions.DeadlineExceededException} past it. The view shares everything with this
+     * provider, closing it is a no-op. Providers which do not call vault themselves return themselves.
+     * <p>
+     * A request already sent can not be called back: a write failing at the deadline may still be applied by vault
+     * afterwards, at least once. Writes are not retried when the retry could outlive the deadline, so it is only ever
+     * the attempt in flight at the deadline which may land.
+     *
+     * @param deadline how long every call of the view may take
+     */
+    default SecretProvider withDeadline(Duration deadline) {
+        return this;
+    }
+
+    /**
+     * Reads several paths at once. A path which can not be read does not fail the others, its failure is reported in
+     * its own result instead.
+     *
+     * @param paths the paths of the secrets in the vault excluding the keys
+     * @return the result of every distinct path, in the order of the given paths
+     */
+    default Map<String, SecretResult> getSecrets(Collection<String> paths) {
+        Map<String, SecretResult> results = new LinkedHashMap<>();
+        for (String path : paths) {
+            if (!results.containsKey(path)) {
+                try {
+                    results.put(path, SecretResult.success(readSecret(path)));
+                } catch (RuntimeException e) {
+                    results.put(path, SecretResult.failure(e));
+                }
+            }
+        }
+        return results;
+    }
+
     /**
      * Creates an empty secret under the Secret Engine
      *
@@ -49,6 +149,36 @@ public interface SecretProvider {
      */
     void patchSecret(String secretEngine,String secretName,Map<String,String> data,Map<String,String> options);
 
+    /**
+     * Writes the secret, replacing all its key value pairs, if it is at the expected version. Providers keeping
+     * secrets locally update them with the written version, so that reading the secret right after sees the write.
+     *
+     * @param secretEngine Name of the secret engine
+     * @param secretName Name of the secret
+     * @param data Data to write as key value pairs
+     * @param cas the version the secret must be at, 0 if it must not exist yet, null to write whatever its version
+     * @return the version written, 0 if vault did not tell, e.g. for KV v1
+     * @throws com.avinash.vault.kv.exceptions.CasConflictException if the secret is not at the expected version
+     */
+    default long writeSecret(String secretEngine, String secretName, Map<String, String> data, Long cas) {
+        addSecret(secretEngine, secretName, data, VaultRequestTemplates.casOptions(cas));
+        return 0;
+    }
+
+    /**
+     * Patches the secret if it is at the expected version, see {@link #patchSecret(String, String, Map, Map)} and
+     * {@link #writeSecret(String, String, Map, Long)}.
+     *
+     * @param data Data to patch as key value pairs, a null value removes the key
+     * @param cas the version the secret must be at, null to patch whatever its version
+     * @return the version written, 0 if vault did not tell
+     * @throws com.avinash.vault.kv.exceptions.CasConflictException if the secret is not at the expected version
+     */
+    default long writePatch(String secretEngine, String secretName, Map<String, String> data, Long cas) {
+        patchSecret(secretEngine, secretName, data, VaultRequestTemplates.casOptions(cas));
+        return 0;
+    }
+
     /**
      *
      * @param secretEngine Name of the secret engine
@@ -56,4 +186,11 @@ public interface SecretProvider {
      * @param secretVersion Version of the secret to destroy
      */
     void destroySecret(String secretEngine, String secretName, Optional<String> secretVersion);
+
+    /**
+     * Releases the resources held by this provider, e.g. its http client. The provider must not be used afterwards.
+     */
+    @Override
+    default void close() {
+    }
 }
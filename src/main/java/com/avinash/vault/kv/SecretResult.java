@@ -0,0 +1,66 @@
+package com.avinash.vault.kv;
+
+import com.avinash.vault.kv.exceptions.VaultException;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The outcome of reading one path of a bulk read, either the secrets at the path or the reason they could not be read.
+ */
+public final class SecretResult {
+
+    private final VaultResponse response;
+    private final Map<String, String> data;
+    private final RuntimeException error;
+
+    private SecretResult(VaultResponse response, RuntimeException error) {
+        this.response = response;
+        this.data = response == null ? null : Collections.unmodifiableMap(new HashMap<>(response.getData().getData()));
+        this.error = error;
+    }
+
+    static SecretResult success(VaultResponse response) {
+        return new SecretResult(response, null);
+    }
+
+    static SecretResult failure(Throwable error) {
+        return new SecretResult(null, error instanceof RuntimeException
+            ? (RuntimeException) error
+            : new VaultException("Failed to read secret from vault"));
+    }
+
+    public boolean isSuccess() {
+        return error == null;
+    }
+
+    /**
+     * @return all the key value pairs at the path, or null if the path could not be read
+     */
+    public Map<String, String> getData() {
+        return data;
+    }
+
+    /**
+     * @return the reason the path could not be read, or null if it was read
+     */
+    public RuntimeException getError() {
+        return error;
+    }
+
+    /**
+     * @return all the key value pairs at the path
+     * @throws RuntimeException the reason the path could not be read
+     */
+    public Map<String, String> orElseThrow() {
+        if (error != null) {
+            throw error;
+        }
+        return data;
+    }
+
+    VaultResponse getResponse() {
+        return response;
+    }
+}
@@ -0,0 +1,291 @@
+package com.avinash.vault.kv;
+
+import com.avinash.vault.kv.exceptions.SecretNotFoundException;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * An immutable snapshot of the key value pairs of a secret, with its version and lease, which can be shared across
+ * threads as is.
+ * <p>
+ * The keys and values are kept in two parallel arrays with an open addressing hash index of their positions, built
+ * once, instead of a map of entries. Selecting some keys with {@link #select(Collection)} shares these arrays and
+ * only adds a bit mask of the selected positions, and {@link #asMap()} is a read only view, so neither copies a value.
+ * <p>
+ * Values are never part of {@link #toString()}.
+ */
+public final class SecretSnapshot {
+
+    private final String path;
+    private final String[] keys;
+    private final String[] values;
+    // the position + 1 of every key, 0 for an empty slot, sized to a power of two at least twice the number of keys
+    private final int[] index;
+    // the positions visible in this snapshot, null for all of them
+    private final long[] selected;
+    private final int size;
+    private final long version;
+    private final String createdTime;
+    private final String leaseId;
+    private final long leaseDurationMillis;
+    private final boolean renewable;
+    private final Map<String, String> view = new View();
+
+    private SecretSnapshot(String path, Map<String, String> data, long version, String createdTime, String leaseId,
+                           long leaseDurationMillis, boolean renewable) {
+        this.path = path;
+        this.size = data.size();
+        this.keys = new String[size];
+        this.values = new String[size];
+        this.index = new int[Math.max(2, Integer.highestOneBit(Math.max(1, size)) << 2)];
+        int position = 0;
+        for (Map.Entry<String, String> entry : data.entrySet()) {
+            keys[position] = entry.getKey();
+            values[position] = entry.getValue();
+            int slot = hash(entry.getKey()) & (index.length - 1);
+            while (index[slot] != 0) {
+                slot = (slot + 1) & (index.length - 1);
+            }
+            index[slot] = ++position;
+        }
+        this.selected = null;
+        this.version = version;
+        this.createdTime = createdTime;
+        this.leaseId = leaseId;
+        this.leaseDurationMillis = leaseDurationMillis;
+        this.renewable = renewable;
+    }
+
+    private SecretSnapshot(SecretSnapshot snapshot, long[] selected, int size) {
+        this.path = snapshot.path;
+        this.keys = snapshot.keys;
+        this.values = snapshot.values;
+        this.index = snapshot.index;
+        this.selected = selected;
+        this.size = size;
+        this.version = snapshot.version;
+        this.createdTime = snapshot.createdTime;
+        this.leaseId = snapshot.leaseId;
+        this.leaseDurationMillis = snapshot.leaseDurationMillis;
+        this.renewable = snapshot.renewable;
+    }
+
+    /**
+     * @return a snapshot of the data, lease and version of the response, whose data is copied once
+     */
+    static SecretSnapshot of(String path, VaultResponse response) {
+        Metadata metadata = response.getData().getMetadata();
+        Map<String, String> data = response.getData().getData();
+        return new SecretSnapshot(path, data == null ? Map.of() : data,
+            metadata == null ? 0 : (long) metadata.getVersion(),
+            metadata == null ? null : metadata.getCreated_time(),
+            response.getLease_id(),
+            (long) (response.getLease_duration() * 1000),
+            response.isRenewable());
+    }
+
+    /**
+     * @return the path of the secret in the vault excluding the keys
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * @return the KV v2 version of the secret, 0 if unknown, e.g. for KV v1
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return when the version was created, as returned by vault, null if unknown
+     */
+    public String getCreatedTime() {
+        return createdTime;
+    }
+
+    /**
+     * @return the lease of the secret, null or empty if it is not leased, as KV secrets
+     */
+    public String getLeaseId() {
+        return leaseId;
+    }
+
+    /**
+     * @return how long the lease of the secret lasts from the time it was read, 0 if it is not leased
+     */
+    public long getLeaseDurationMillis() {
+        return leaseDurationMillis;
+    }
+
+    public boolean isRenewable() {
+        return renewable;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean containsKey(String key) {
+        return position(key) >= 0;
+    }
+
+    /**
+     * @return the value of the key, null if it is not present
+     */
+    public String get(String key) {
+        int position = position(key);
+        return position < 0 ? null : values[position];
+    }
+
+    /**
+     * @throws SecretNotFoundException if the key is not present
+     */
+    public String getRequired(String key) {
+        int position = position(key);
+        if (position < 0) {
+            throw new SecretNotFoundException("Secret value for key " + key + " is not present at path " + path);
+        }
+        return values[position];
+    }
+
+    public void forEach(BiConsumer<String, String> action) {
+        for (int position = nextSelected(0); position < keys.length; position = nextSelected(position + 1)) {
+            action.accept(keys[position], values[position]);
+        }
+    }
+
+    /**
+     * Selects some keys, without copying anything but a bit mask of their positions.
+     *
+     * @return a snapshot with only the given keys, the same version and lease
+     * @throws SecretNotFoundException if any of the keys is not present
+     */
+    public SecretSnapshot select(Collection<String> selectedKeys) {
+        long[] mask = new long[(keys.length + 63) >>> 6];
+        int count = 0;
+        for (String key : selectedKeys) {
+            int position = position(key);
+            if (position < 0) {
+                throw new SecretNotFoundException("Secret value for key " + key + " is not present at path " + path);
+            }
+            if ((mask[position >>> 6] & (1L << position)) == 0) {
+                mask[position >>> 6] |= 1L << position;
+                count++;
+            }
+        }
+        return count == size ? this : new SecretSnapshot(this, mask, count);
+    }
+
+    /**
+     * @return a read only view of the key value pairs, backed by this snapshot
+     */
+    public Map<String, String> asMap() {
+        return view;
+    }
+
+    @Override
+    public String toString() {
+        return "SecretSnapshot{path=" + path + ", version=" + version + ", keys=" + view.keySet() + "}";
+    }
+
+    /**
+     * @return the position of the key, -1 if it is not present or not selected
+     */
+    private int position(String key) {
+        if (key == null) {
+            return -1;
+        }
+        int slot = hash(key) & (index.length - 1);
+        for (int entry = index[slot]; entry != 0; entry = index[slot]) {
+            int position = entry - 1;
+            if (key.equals(keys[position])) {
+                return isSelected(position) ? position : -1;
+            }
+            slot = (slot + 1) & (index.length - 1);
+        }
+        return -1;
+    }
+
+    private boolean isSelected(int position) {
+        return selected == null || (selected[position >>> 6] & (1L << position)) != 0;
+    }
+
+    /**
+     * @return the first selected position from the given one, the number of keys if there is none
+     */
+    private int nextSelected(int from) {
+        int position = from;
+        while (position < keys.length && !isSelected(position)) {
+            position++;
+        }
+        return position;
+    }
+
+    private static int hash(String key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private final class View extends AbstractMap<String, String> {
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return key instanceof String && position((String) key) >= 0;
+        }
+
+        @Override
+        public String get(Object key) {
+            return key instanceof String ? SecretSnapshot.this.get((String) key) : null;
+        }
+
+        @Override
+        public Set<Map.Entry<String, String>> entrySet() {
+            return new AbstractSet<>() {
+                @Override
+                public int size() {
+                    return size;
+                }
+
+                @Override
+                public Iterator<Map.Entry<String, String>> iterator() {
+                    return new Iterator<>() {
+                        private int position = nextSelected(0);
+
+                        @Override
+                        public boolean hasNext() {
+                            return position < keys.length;
+                        }
+
+                        @Override
+                        public Map.Entry<String, String> next() {
+                            if (!hasNext()) {
+                                throw new NoSuchElementException();
+                            }
+                            Map.Entry<String, String> entry = new SimpleImmutableEntry<>(keys[position], values[position]);
+                            position = nextSelected(position + 1);
+                            return entry;
+                        }
+                    };
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.avinash.vault.kv;
+
+import com.avinash.vault.kv.exceptions.VaultInitializationException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Decides the ttl returned to kafka with the {@link org.apache.kafka.common.config.ConfigData} of a path, after which
+ * connect reloads the secrets and restarts the connectors using them. The lease returned by vault wins, secrets
+ * without a lease (KV v2) get the ttl of the first matching path pattern, then the default ttl, if any.
+ */
+final class SecretTtlPolicy {
+
+    static final SecretTtlPolicy NONE = new SecretTtlPolicy(null, List.of());
+
+    private final Long defaultTtlMs;
+    private final List<PathTtl> pathTtls;
+
+    private SecretTtlPolicy(Long defaultTtlMs, List<PathTtl> pathTtls) {
+        this.defaultTtlMs = defaultTtlMs;
+        this.pathTtls = pathTtls;
+    }
+
+    /**
+     * @param defaultTtlMs the ttl of paths matching none of the patterns, null for no ttl
+     * @param patterns     comma separated {@code glob=ttlMs} pairs, where {@code *} matches within one segment of the
+     *                     path and {@code **} across segments, e.g. {@code /v1/kv/data/avinash/**=600000}
+     */
+    static SecretTtlPolicy of(Long defaultTtlMs, String patterns) {
+        List<PathTtl> pathTtls = new ArrayList<>();
+        if (patterns != null) {
+            for (String entry : patterns.split(",")) {
+                if (entry.isBlank()) {
+                    continue;
+                }
+                int separator = entry.lastIndexOf('=');
+                if (separator <= 0) {
+                    throw new VaultInitializationException("Invalid ttl path pattern " + entry + ", expected <glob>=<ttl ms>");
+                }
+                long ttlMs;
+                try {
+                    ttlMs = Long.parseLong(entry.substring(separator + 1).trim());
+                } catch (NumberFormatException e) {
+                    throw new VaultInitializationException("Invalid ttl in path pattern " + entry);
+                }
+                pathTtls.add(new PathTtl(glob(entry.substring(0, separator).trim()), ttlMs));
+            }
+        }
+        return new SecretTtlPolicy(defaultTtlMs, List.copyOf(pathTtls));
+    }
+
+    /**
+     * @return the ttl in milliseconds of the secrets read from the path, null if they should not expire
+     */
+    Long ttlOf(String path, VaultResponse response) {
+        return ttlOf(path, (long) (response.getLease_duration() * 1000));
+    }
+
+    /**
+     * @return the ttl in milliseconds of the secrets of the snapshot, null if they should not expire
+     */
+    Long ttlOf(SecretSnapshot snapshot) {
+        return ttlOf(snapshot.getPath(), snapshot.getLeaseDurationMillis());
+    }
+
+    private Long ttlOf(String path, long leaseMs) {
+        if (leaseMs > 0) {
+            return leaseMs;
+        }
+        for (PathTtl pathTtl : pathTtls) {
+            if (pathTtl.pattern.matcher(path).matches()) {
+                return pathTtl.ttlMs;
+            }
+        }
+        return defaultTtlMs;
+    }
+
+    private static Pattern glob(String glob) {
+        StringBuilder regex = new StringBuilder();
+        int start = 0;
+        for (int i = 0; i < glob.length(); i++) {
+            if (glob.charAt(i) == '*') {
+                regex.append(Pattern.quote(glob.substring(start, i)));
+                if (i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+                    regex.append(".*");
+                    i++;
+                } else {
+                    regex.append("[^/]*");
+                }
+                start = i + 1;
+            }
+        }
+        regex.append(Pattern.quote(glob.substring(start)));
+        return Pattern.compile(regex.toString());
+    }
+
+    private static final class PathTtl {
+        private final Pattern pattern;
+        private final long ttlMs;
+
+        private PathTtl(Pattern pattern, long ttlMs) {
+            this.pattern = pattern;
+            this.ttlMs = ttlMs;
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package com.avinash.vault.kv;
+
+import com.avinash.vault.kv.http.AsyncLimiter;
+import com.avinash.vault.kv.http.Futures;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.common.config.ConfigChangeCallback;
+import org.apache.kafka.common.config.ConfigData;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Watches subscribed paths for changes and notifies the subscribers of the keys whose values changed.
+ * <p>
+ * Every interval the cheap KV v2 {@code /metadata/} endpoint of each path is polled, and the secret itself is only
+ * read when its current version moved past the last seen one. The polls of an interval are spread over the whole
+ * interval with a random delay, and at most a bounded number of them are in flight, so that thousands of
+ * subscriptions do not hit vault all at once.
+ * <p>
+ * The watcher keeps no values, only a salted digest of each, to tell which keys a new version changed. The values
+ * themselves stay where the cache put them, off heap.
+ */
+@Slf4j
+class SecretWatcher implements AutoCloseable {
+
+    private final AsyncSecretProvider vault;
+    private final Consumer<String> onVersionChange;
+    private final long intervalMs;
+    private final AsyncLimiter limiter;
+    private final ConcurrentMap<String, WatchedPath> paths = new ConcurrentHashMap<>();
+    // so that the digests of short values can not be looked up in a precomputed table
+    private final byte[] salt = new byte[16];
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * @param vault           the vault to poll, reads must not be served from a cache
+     * @param onVersionChange called with the path before its new version is read, e.g. to evict it from a cache
+     * @param intervalMs      how often every path is polled
+     * @param maxInFlight     the maximum number of polls in flight
+     */
+    SecretWatcher(AsyncSecretProvider vault, Consumer<String> onVersionChange, long intervalMs, int maxInFlight) {
+        this.vault = vault;
+        this.onVersionChange = onVersionChange;
+        this.intervalMs = intervalMs;
+        this.limiter = new AsyncLimiter(maxInFlight);
+        new SecureRandom().nextBytes(salt);
+    }
+
+    synchronized void subscribe(String path, Set<String> keys, ConfigChangeCallback callback) {
+        WatchedPath watched = paths.get(path);
+        if (watched == null) {
+            watched = new WatchedPath(path, salt);
+            paths.put(path, watched);
+            // record the current state right away, changes are detected against it
+            WatchedPath baseline = watched;
+            limiter.submit(() -> poll(baseline));
+        }
+        watched.subscribe(keys, callback);
+        if (scheduler == null) {
+            ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "vault-secret-watcher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.scheduleWithFixedDelay(() -> pollAll(executor), intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+            scheduler = executor;
+            log.info("Watching subscribed vault secrets for changes every {} ms", intervalMs);
+        }
+    }
+
+    synchronized void unsubscribe(String path, Set<String> keys, ConfigChangeCallback callback) {
+        WatchedPath watched = paths.get(path);
+        if (watched != null && watched.unsubscribe(keys, callback)) {
+            paths.remove(path);
+        }
+    }
+
+    synchronized void unsubscribeAll() {
+        paths.clear();
+    }
+
+    int watchedPaths() {
+        return paths.size();
+    }
+
+    @Override
+    public synchronized void close() {
+        paths.clear();
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    private void pollAll(ScheduledExecutorService executor) {
+        for (WatchedPath watched : paths.values()) {
+            long jitter = ThreadLocalRandom.current().nextLong(intervalMs);
+            executor.schedule(() -> limiter.submit(() -> poll(watched)), jitter, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Polls the path now, ignoring the interval.
+     */
+    CompletableFuture<Void> poll(String path) {
+        WatchedPath watched = paths.get(path);
+        return watched == null ? CompletableFuture.completedFuture(null) : poll(watched);
+    }
+
+    private CompletableFuture<Void> poll(WatchedPath watched) {
+        if (paths.get(watched.path) != watched || !watched.polling.compareAndSet(false, true)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return vault.readMetadataAsync(watched.path)
+            .thenCompose(metadata -> {
+                long version = metadata.getData().getCurrent_version();
+                if (version <= watched.version) {
+                    return CompletableFuture.completedFuture(null);
+                }
+                if (watched.version >= 0) {
+                    onVersionChange.accept(watched.path);
+                }
+                return vault.readSecretAsync(watched.path).thenAccept(response -> watched.update(version, response));
+            })
+            .whenComplete((ignored, e) -> {
+                watched.polling.set(false);
+                if (e != null) {
+                    log.warn("Failed to check vault secret {} for changes : {}", watched.path, Futures.unwrap(e).getMessage());
+                }
+            });
+    }
+
+    private static final class WatchedPath {
+        private final String path;
+        private final AtomicBoolean polling = new AtomicBoolean();
+        // guarded by this
+        private final Map<ConfigChangeCallback, Set<String>> subscribers = new HashMap<>();
+        private final byte[] salt;
+        // a digest of every value of the last seen version, so that keys subscribed later have something to compare
+        // against, null for a missing or null value
+        private final Map<String, byte[]> digests = new HashMap<>();
+        // -1 until the first poll, which only records the current state
+        private volatile long version = -1;
+
+        private WatchedPath(String path, byte[] salt) {
+            this.path = path;
+            this.salt = salt;
+        }
+
+        synchronized void subscribe(Set<String> keys, ConfigChangeCallback callback) {
+            subscribers.computeIfAbsent(callback, c -> new HashSet<>()).addAll(keys);
+        }
+
+        /**
+         * @return whether the path has no subscribers left
+         */
+        synchronized boolean unsubscribe(Set<String> keys, ConfigChangeCallback callback) {
+            Set<String> subscribed = subscribers.get(callback);
+            if (subscribed != null) {
+                subscribed.removeAll(keys);
+                if (subscribed.isEmpty()) {
+                    subscribers.remove(callback);
+                }
+            }
+            return subscribers.isEmpty();
+        }
+
+        void update(long newVersion, VaultResponse response) {
+            Map<String, String> secrets = response.getData().getData();
+            Map<String, byte[]> newDigests = new HashMap<>(secrets.size() * 2);
+            secrets.forEach((key, value) -> newDigests.put(key, digest(value)));
+            Map<ConfigChangeCallback, Map<String, String>> notifications = new HashMap<>();
+            synchronized (this) {
+                boolean baseline = version < 0;
+                for (Map.Entry<ConfigChangeCallback, Set<String>> subscriber : subscribers.entrySet()) {
+                    Map<String, String> changed = new HashMap<>();
+                    for (String key : subscriber.getValue()) {
+                        if (!baseline && !MessageDigest.isEqual(digests.get(key), newDigests.get(key))) {
+                            changed.put(key, secrets.get(key));
+                        }
+                    }
+                    if (!changed.isEmpty()) {
+                        notifications.put(subscriber.getKey(), changed);
+                    }
+                }
+                digests.clear();
+                digests.putAll(newDigests);
+                version = newVersion;
+            }
+            // callbacks run outside the lock, they may well subscribe or unsubscribe
+            notifications.forEach((callback, changed) -> {
+                log.info("Keys {} of vault secret {} changed in version {}", changed.keySet(), path, newVersion);
+                callback.onChange(path, new ConfigData(changed));
+            });
+        }
+
+        private byte[] digest(String value) {
+            if (value == null) {
+                return null;
+            }
+            MessageDigest digest;
+            try {
+                digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 is not available", e);
+            }
+            digest.update(salt);
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            try {
+                return digest.digest(bytes);
+            } finally {
+                Arrays.fill(bytes, (byte) 0);
+            }
+        }
+    }
+}
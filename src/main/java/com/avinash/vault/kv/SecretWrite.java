@@ -0,0 +1,52 @@
+package com.avinash.vault.kv;
+
+import lombok.Value;
+
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * One write of a batch given to a {@link BatchWriter}, either adding a secret, which replaces all its key value pairs,
+ * or patching some of them.
+ */
+@Value
+public class SecretWrite {
+
+    public enum Kind {
+        ADD, PATCH
+    }
+
+    Kind kind;
+    String secretEngine;
+    String secretName;
+    /**
+     * The key value pairs to write, a null value removes the key when patching.
+     */
+    Map<String, String> data;
+    Map<String, String> options;
+
+    /**
+     * @see SecretProvider#addSecret(String, String, Map, Map)
+     */
+    public static SecretWrite add(String secretEngine, String secretName, Map<String, String> data, Map<String, String> options) {
+        return new SecretWrite(Kind.ADD, secretEngine, secretName, Objects.requireNonNull(data), options);
+    }
+
+    /**
+     * @see SecretProvider#patchSecret(String, String, Map, Map)
+     */
+    public static SecretWrite patch(String secretEngine, String secretName, Map<String, String> data, Map<String, String> options) {
+        return new SecretWrite(Kind.PATCH, secretEngine, secretName, Objects.requireNonNull(data), options);
+    }
+
+    boolean hasOptions() {
+        return options != null && !options.isEmpty();
+    }
+
+    /**
+     * @return the path of the secret, which orders the writes to the same secret
+     */
+    String path() {
+        return VaultRequestTemplates.dataPath(secretEngine, secretName);
+    }
+}
@@ -0,0 +1,451 @@
+package com.avinash.vault.kv;
+
+import com.avinash.vault.kv.exceptions.VaultException;
+import com.avinash.vault.kv.exceptions.VaultInitializationException;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An encrypted, append-only file of the last known (path, version, data) of secrets, with the time they were recorded.
+ * <p>
+ * The file starts with a header, followed by one frame per record: its length, a random IV and the AES-GCM encryption
+ * of the record, authenticated together with the header and the sequence number of the frame in the file, so that
+ * records can neither be reordered, replayed nor dropped unnoticed. A later record of a path replaces the earlier ones,
+ * a tombstone removes the path. The file is memory mapped to be replayed when opened. A torn record at the end, left by
+ * a crash during an append, is cut off, a record which does not decrypt is skipped with a warning. A file none of whose
+ * records can be decrypted with the key, e.g. after the key was rotated or mistyped, is moved aside as
+ * {@code <name>.unreadable-<millis>}, where it is kept, and started over. Once the replaced records make up most of the
+ * file, it is compacted into a new file holding only the live records, which then atomically replaces the old one.
+ */
+@Slf4j
+final class SnapshotFile implements AutoCloseable {
+
+    private static final byte[] HEADER = "VKVSNAP2".getBytes(StandardCharsets.US_ASCII);
+    private static final int IV_LENGTH = 12;
+    private static final int TAG_BITS = 128;
+    private static final int MAX_FRAME = 64 * 1024 * 1024;
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+    // compaction is not worth it for small files
+    private static final long COMPACT_MIN_BYTES = 1024 * 1024;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final Path path;
+    private final SecretKey key;
+    // written while holding this, read without locking
+    private final Map<String, Record> records = new ConcurrentHashMap<>();
+    // guarded by this
+    private final Map<String, Integer> frameSizes = new HashMap<>();
+    private long liveBytes;
+    // the number of frames in the file, the sequence number of the next one
+    private long sequence;
+    private FileChannel channel;
+
+    private SnapshotFile(Path path, SecretKey key) {
+        this.path = path;
+        this.key = key;
+    }
+
+    /**
+     * Opens the snapshot at the path, creating it if needed, and replays its records.
+     */
+    static SnapshotFile open(Path path, SecretKey key) throws IOException {
+        SnapshotFile snapshot = new SnapshotFile(path, key);
+        snapshot.load();
+        return snapshot;
+    }
+
+    /**
+     * @return the latest record of every path
+     */
+    Map<String, Record> records() {
+        return new HashMap<>(records);
+    }
+
+    Record get(String secretPath) {
+        return records.get(secretPath);
+    }
+
+    /**
+     * Appends the record of the path, recorded now. The caller skips the records it already has, the version and data
+     * of the latest record of a path are read without locking with {@link #get}.
+     */
+    synchronized void put(String secretPath, long version, Map<String, String> data) {
+        long recordedAt = System.currentTimeMillis();
+        append(PUT, secretPath, version, recordedAt, data);
+        records.put(secretPath, new Record(version, recordedAt, Collections.unmodifiableMap(new HashMap<>(data))));
+    }
+
+    void delete(String secretPath) {
+        if (!records.containsKey(secretPath)) {
+            return;
+        }
+        synchronized (this) {
+            if (records.containsKey(secretPath)) {
+                append(DELETE, secretPath, 0, 0, Map.of());
+                records.remove(secretPath);
+            }
+        }
+    }
+
+    /**
+     * @return whether the replaced records make up most of the file
+     */
+    synchronized boolean needsCompaction() {
+        long size = fileSize();
+        return size > COMPACT_MIN_BYTES && size > 2 * liveBytes;
+    }
+
+    /**
+     * Rewrites the live records into a new file which atomically replaces this one. If replacing it fails, the records
+     * keep being appended to this one.
+     */
+    synchronized void compact() throws IOException {
+        Path compacted = path.resolveSibling(path.getFileName() + ".compact");
+        Files.deleteIfExists(compacted);
+        long before = fileSize();
+        Map<String, Integer> compactedSizes = new HashMap<>();
+        long compactedBytes = 0;
+        long compactedFrames = 0;
+        try (FileChannel out = create(compacted)) {
+            out.write(ByteBuffer.wrap(HEADER));
+            for (Map.Entry<String, Record> entry : records.entrySet()) {
+                Record record = entry.getValue();
+                ByteBuffer frame = frame(PUT, entry.getKey(), record.version, record.recordedAt, record.data,
+                    compactedFrames++);
+                compactedSizes.put(entry.getKey(), frame.remaining());
+                compactedBytes += frame.remaining();
+                while (frame.hasRemaining()) {
+                    out.write(frame);
+                }
+            }
+            out.force(true);
+        }
+        channel.close();
+        try {
+            Files.move(compacted, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            Files.deleteIfExists(compacted);
+            throw e;
+        } finally {
+            // the compacted file once moved, the old one otherwise
+            channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+        frameSizes.clear();
+        frameSizes.putAll(compactedSizes);
+        liveBytes = compactedBytes;
+        sequence = compactedFrames;
+        log.info("Compacted secret snapshot {} from {} to {} bytes", path, before, fileSize());
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            if (channel != null) {
+                channel.force(true);
+                channel.close();
+            }
+        } catch (IOException e) {
+            log.warn("Failed to close secret snapshot {} : {}", path, e.getMessage());
+        }
+    }
+
+    private void load() throws IOException {
+        if (!Files.exists(path) || Files.size(path) == 0) {
+            start();
+            return;
+        }
+        long valid;
+        try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+            valid = replay(mapped);
+        }
+        if (valid < 0) {
+            Path aside = path.resolveSibling(path.getFileName() + ".unreadable-" + System.currentTimeMillis());
+            Files.move(path, aside);
+            log.warn("Secret snapshot {} is not readable with the configured key, it is kept as {} and a new one is started",
+                path, aside);
+            records.clear();
+            frameSizes.clear();
+            liveBytes = 0;
+            start();
+            return;
+        }
+        channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        if (valid < channel.size()) {
+            log.warn("Cutting off {} bytes of an incomplete record at the end of secret snapshot {}", channel.size() - valid, path);
+            channel.truncate(valid);
+        }
+        log.info("Loaded {} secrets from snapshot {}", records.size(), path);
+    }
+
+    /**
+     * Applies every record which decrypts, skipping the others, e.g. corrupt, reordered or replayed ones, by their
+     * length.
+     *
+     * @return the length of the complete frames of the file, -1 if its header is not readable or none of its records
+     * decrypts, e.g. with another key
+     */
+    private long replay(ByteBuffer buffer) {
+        byte[] header = new byte[HEADER.length];
+        if (buffer.remaining() < HEADER.length) {
+            return -1;
+        }
+        buffer.get(header);
+        if (!Arrays.equals(header, HEADER)) {
+            return -1;
+        }
+        long valid = buffer.position();
+        long frames = 0;
+        int applied = 0;
+        int skipped = 0;
+        while (buffer.remaining() >= Integer.BYTES) {
+            int length = buffer.getInt();
+            if (length <= IV_LENGTH || length > MAX_FRAME || length > buffer.remaining()) {
+                break;
+            }
+            byte[] iv = new byte[IV_LENGTH];
+            byte[] sealed = new byte[length - IV_LENGTH];
+            buffer.get(iv);
+            buffer.get(sealed);
+            long frame = frames++;
+            valid = buffer.position();
+            byte[] plain;
+            try {
+                plain = cipher(Cipher.DECRYPT_MODE, iv, frame).doFinal(sealed);
+            } catch (GeneralSecurityException e) { //ignore e, a wrong key or a corrupt record
+                skipped++;
+                continue;
+            }
+            try {
+                apply(plain, Integer.BYTES + length);
+                applied++;
+            } catch (IOException e) {
+                skipped++;
+            } finally {
+                Arrays.fill(plain, (byte) 0);
+            }
+        }
+        if (applied == 0 && skipped > 0) {
+            return -1;
+        }
+        if (skipped > 0) {
+            log.warn("Skipped {} records of secret snapshot {} which do not decrypt, they are corrupt, reordered or replayed",
+                skipped, path);
+        }
+        sequence = frames;
+        return valid;
+    }
+
+    private void apply(byte[] plain, int frameSize) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(plain));
+        byte type = in.readByte();
+        String secretPath = readString(in);
+        if (type == DELETE) {
+            records.remove(secretPath);
+            untrack(secretPath);
+            return;
+        }
+        long version = in.readLong();
+        long recordedAt = in.readLong();
+        int size = in.readInt();
+        Map<String, String> data = new HashMap<>(size * 2);
+        for (int i = 0; i < size; i++) {
+            String dataKey = readString(in);
+            data.put(dataKey, in.readBoolean() ? readString(in) : null);
+        }
+        records.put(secretPath, new Record(version, recordedAt, Collections.unmodifiableMap(data)));
+        track(secretPath, frameSize);
+    }
+
+    private void start() throws IOException {
+        Files.deleteIfExists(path);
+        channel = create(path);
+        channel.write(ByteBuffer.wrap(HEADER));
+        channel.force(true);
+        sequence = 0;
+    }
+
+    private void append(byte type, String secretPath, long version, long recordedAt, Map<String, String> data) {
+        ByteBuffer frame = frame(type, secretPath, version, recordedAt, data, sequence);
+        int size = frame.remaining();
+        try {
+            while (frame.hasRemaining()) {
+                channel.write(frame);
+            }
+        } catch (IOException e) {
+            throw new VaultException("Failed to append to secret snapshot " + path + " : " + e.getMessage());
+        }
+        sequence++;
+        if (type == DELETE) {
+            untrack(secretPath);
+        } else {
+            track(secretPath, size);
+        }
+    }
+
+    private ByteBuffer frame(byte type, String secretPath, long version, long recordedAt, Map<String, String> data,
+                             long frameSequence) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        byte[] plain = null;
+        try {
+            out.writeByte(type);
+            writeString(out, secretPath);
+            if (type == PUT) {
+                out.writeLong(version);
+                out.writeLong(recordedAt);
+                out.writeInt(data.size());
+                for (Map.Entry<String, String> entry : data.entrySet()) {
+                    writeString(out, entry.getKey());
+                    out.writeBoolean(entry.getValue() != null);
+                    if (entry.getValue() != null) {
+                        writeString(out, entry.getValue());
+                    }
+                }
+            }
+            plain = bytes.toByteArray();
+            byte[] iv = new byte[IV_LENGTH];
+            RANDOM.nextBytes(iv);
+            byte[] sealed = cipher(Cipher.ENCRYPT_MODE, iv, frameSequence).doFinal(plain);
+            ByteBuffer frame = ByteBuffer.allocate(Integer.BYTES + IV_LENGTH + sealed.length);
+            frame.putInt(IV_LENGTH + sealed.length).put(iv).put(sealed).flip();
+            return frame;
+        } catch (IOException | GeneralSecurityException e) { //ignore e, as printing it might reveal secrets in logs
+            throw new VaultException("Failed to encrypt a record of secret snapshot " + path);
+        } finally {
+            if (plain != null) {
+                Arrays.fill(plain, (byte) 0);
+            }
+        }
+    }
+
+    private Cipher cipher(int mode, byte[] iv, long frameSequence) throws GeneralSecurityException {
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(mode, key, new GCMParameterSpec(TAG_BITS, iv));
+        cipher.updateAAD(HEADER);
+        cipher.updateAAD(ByteBuffer.allocate(Long.BYTES).putLong(0, frameSequence).array());
+        return cipher;
+    }
+
+    private void track(String secretPath, int frameSize) {
+        Integer previous = frameSizes.put(secretPath, frameSize);
+        liveBytes += frameSize - (previous == null ? 0 : previous);
+    }
+
+    private void untrack(String secretPath) {
+        Integer previous = frameSizes.remove(secretPath);
+        if (previous != null) {
+            liveBytes -= previous;
+        }
+    }
+
+    private long fileSize() {
+        try {
+            return channel.size();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static FileChannel create(Path file) throws IOException {
+        if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            return FileChannel.open(file, Set.of(StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND), PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        }
+        return FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(utf8.length);
+        out.write(utf8);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > in.available()) {
+            throw new IOException("Invalid string length " + length);
+        }
+        byte[] utf8 = new byte[length];
+        in.readFully(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param file holds a base64 encoded AES key of 16, 24 or 32 bytes
+     */
+    static SecretKey keyFromFile(Path file) {
+        byte[] raw;
+        try {
+            raw = Base64.getDecoder().decode(new String(Files.readAllBytes(file), StandardCharsets.US_ASCII).trim());
+        } catch (IOException | IllegalArgumentException e) {
+            throw new VaultInitializationException("Can not read a base64 encoded snapshot key from " + file);
+        }
+        if (raw.length != 16 && raw.length != 24 && raw.length != 32) {
+            throw new VaultInitializationException("Snapshot key in " + file + " must be 16, 24 or 32 bytes long");
+        }
+        return new SecretKeySpec(raw, "AES");
+    }
+
+    /**
+     * @param type a keystore type able to hold secret keys, e.g. PKCS12 or JCEKS
+     */
+    static SecretKey keyFromKeyStore(Path file, char[] password, String type, String alias) {
+        try (InputStream in = Files.newInputStream(file)) {
+            KeyStore keyStore = KeyStore.getInstance(type);
+            keyStore.load(in, password);
+            KeyStore.Entry entry = keyStore.getEntry(alias, new KeyStore.PasswordProtection(password));
+            if (!(entry instanceof KeyStore.SecretKeyEntry)) {
+                throw new VaultInitializationException("Keystore " + file + " has no secret key with alias " + alias);
+            }
+            SecretKey key = ((KeyStore.SecretKeyEntry) entry).getSecretKey();
+            return new SecretKeySpec(key.getEncoded(), "AES");
+        } catch (IOException | GeneralSecurityException e) { //ignore e, it might name the password
+            throw new VaultInitializationException("Can not load snapshot key " + alias + " from keystore " + file);
+        }
+    }
+
+    static final class Record {
+        final long version;
+        // epoch millis
+        final long recordedAt;
+        final Map<String, String> data;
+
+        private Record(long version, long recordedAt, Map<String, String> data) {
+            this.version = version;
+            this.recordedAt = recordedAt;
+            this.data = data;
+        }
+    }
+}
@@ -0,0 +1,331 @@
+package com.avinash.vault.kv;
+
+import com.avinash.vault.kv.exceptions.SecretNotFoundException;
+import com.avinash.vault.kv.exceptions.VaultUnavailableException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A {@link SecretProvider} decorator which keeps the last secrets read from the delegate in an encrypted
+ * {@link SnapshotFile}, so that a restarted worker can start its connectors without waiting for vault.
+ * <p>
+ * The paths of the snapshot are served from it right away, while they are read from the delegate in the background.
+ * Once vault confirmed or replaced a path, it is read from the delegate as usual and the snapshot follows every new
+ * version. When vault is unavailable, the snapshot value of the path is served instead, a missing secret is removed.
+ * Any other failure, e.g. a revoked permission, is passed on. A secret not confirmed by vault for longer than the
+ * maximum age is not served from the snapshot any more. The versioned writes of a path of the snapshot,
+ * {@link #writeSecret} and {@link #writePatch}, update it in place.
+ */
+@Slf4j
+public class SnapshotSecretProvider implements SecretProvider {
+
+    private static final long REVALIDATE_RETRY_MS = TimeUnit.SECONDS.toMillis(30);
+    public static final long DEFAULT_MAX_AGE_MS = TimeUnit.DAYS.toMillis(7);
+
+    private final SecretProvider delegate;
+    private final SnapshotFile snapshot;
+    // 0 for no maximum age
+    private final long maxAgeMs;
+    // the paths of the snapshot not yet confirmed by vault, served from the snapshot
+    private final Set<String> unconfirmed;
+    private final ScheduledExecutorService background;
+    private final LongAdder snapshotHits;
+    // only views share the snapshot of another provider, closing them is a no-op
+    private final boolean view;
+
+    /**
+     * @param maxAgeMs how long after vault last confirmed it a secret is still served from the snapshot, 0 for ever
+     */
+    SnapshotSecretProvider(SecretProvider delegate, SnapshotFile snapshot, long maxAgeMs) {
+        if (maxAgeMs < 0) {
+            throw new IllegalArgumentException("Snapshot max age can not be negative : " + maxAgeMs);
+        }
+        this.delegate = delegate;
+        this.snapshot = snapshot;
+        this.maxAgeMs = maxAgeMs;
+        this.unconfirmed = ConcurrentHashMap.newKeySet();
+        this.background = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "vault-secret-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.snapshotHits = new LongAdder();
+        this.view = false;
+        unconfirmed.addAll(snapshot.records().keySet());
+        if (!unconfirmed.isEmpty()) {
+            background.execute(this::revalidate);
+        }
+    }
+
+    private SnapshotSecretProvider(SnapshotSecretProvider provider, SecretProvider delegate) {
+        this.delegate = delegate;
+        this.snapshot = provider.snapshot;
+        this.maxAgeMs = provider.maxAgeMs;
+        this.unconfirmed = provider.unconfirmed;
+        this.background = provider.background;
+        this.snapshotHits = provider.snapshotHits;
+        this.view = true;
+    }
+
+    /**
+     * The view shares the snapshot of this provider and reads from the view of the delegate with the deadline.
+     */
+    @Override
+    public SecretProvider withDeadline(Duration deadline) {
+        return new SnapshotSecretProvider(this, delegate.withDeadline(deadline));
+    }
+
+    @Override
+    public Map<String, String> getSecret(String path) {
+        return new HashMap<>(readSecret(path).getData().getData());
+    }
+
+    @Override
+    public Map<String, String> getSecret(String path, String key) {
+        Map<String, String> map = readSecret(path).getData().getData();
+        if (map.containsKey(key)) {
+            return Collections.singletonMap(key, map.get(key));
+        }
+        throw new SecretNotFoundException("Secret value for key " + key + " is not present at path " + path);
+    }
+
+    @Override
+    public VaultResponse readSecret(String path) {
+        if (unconfirmed.contains(path)) {
+            VaultResponse response = fromSnapshot(path);
+            if (response != null) {
+                return response;
+            }
+        }
+        try {
+            VaultResponse response = delegate.readSecret(path);
+            record(path, response);
+            return response;
+        } catch (SecretNotFoundException e) {
+            snapshot.delete(path);
+            throw e;
+        } catch (VaultUnavailableException e) {
+            VaultResponse response = fromSnapshot(path);
+            if (response == null) {
+                throw e;
+            }
+            log.warn("Serving secret {} from the snapshot, as reading it failed : {}", path, e.getMessage());
+            return response;
+        }
+    }
+
+    @Override
+    public Map<String, SecretResult> getSecrets(Collection<String> paths) {
+        Map<String, SecretResult> results = new LinkedHashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (String path : paths) {
+            if (results.containsKey(path)) {
+                continue;
+            }
+            VaultResponse response = unconfirmed.contains(path) ? fromSnapshot(path) : null;
+            results.put(path, response == null ? null : SecretResult.success(response));
+            if (response == null) {
+                missing.add(path);
+            }
+        }
+        if (!missing.isEmpty()) {
+            delegate.getSecrets(missing).forEach((path, result) -> results.put(path, recorded(path, result)));
+        }
+        return results;
+    }
+
+    @Override
+    public void addSecret(String secretEngine, String secretName) {
+        delegate.addSecret(secretEngine, secretName);
+        unconfirmed.remove(VaultRequestTemplates.dataPath(secretEngine, secretName));
+    }
+
+    @Override
+    public void addSecret(String secretEngine, String secretName, Map<String, String> data, Map<String, String> options) {
+        delegate.addSecret(secretEngine, secretName, data, options);
+        unconfirmed.remove(VaultRequestTemplates.dataPath(secretEngine, secretName));
+    }
+
+    @Override
+    public void patchSecret(String secretEngine, String secretName, Map<String, String> data, Map<String, String> options) {
+        delegate.patchSecret(secretEngine, secretName, data, options);
+        unconfirmed.remove(VaultRequestTemplates.dataPath(secretEngine, secretName));
+    }
+
+    @Override
+    public long writeSecret(String secretEngine, String secretName, Map<String, String> data, Long cas) {
+        String path = VaultRequestTemplates.dataPath(secretEngine, secretName);
+        long version = delegate.writeSecret(secretEngine, secretName, data, cas);
+        unconfirmed.remove(path);
+        SnapshotFile.Record current = snapshot.get(path);
+        if (version > 0 && current != null && current.version < version) {
+            Map<String, String> written = new HashMap<>(data);
+            written.values().removeIf(Objects::isNull);
+            record(path, VaultResponse.of(written, version));
+        }
+        return version;
+    }
+
+    @Override
+    public long writePatch(String secretEngine, String secretName, Map<String, String> data, Long cas) {
+        String path = VaultRequestTemplates.dataPath(secretEngine, secretName);
+        long version = delegate.writePatch(secretEngine, secretName, data, cas);
+        unconfirmed.remove(path);
+        SnapshotFile.Record current = snapshot.get(path);
+        // the patch only applies on top of the version right before it, otherwise the next read records the path
+        if (version > 0 && current != null && current.version == version - 1) {
+            Map<String, String> patched = new HashMap<>(current.data);
+            data.forEach((key, value) -> {
+                if (value == null) {
+                    patched.remove(key);
+                } else {
+                    patched.put(key, value);
+                }
+            });
+            record(path, VaultResponse.of(patched, version));
+        }
+        return version;
+    }
+
+    @Override
+    public void destroySecret(String secretEngine, String secretName, Optional<String> secretVersion) {
+        delegate.destroySecret(secretEngine, secretName, secretVersion);
+        unconfirmed.remove(VaultRequestTemplates.dataPath(secretEngine, secretName));
+    }
+
+    @Override
+    public void evict(String path) {
+        unconfirmed.remove(path);
+        delegate.evict(path);
+    }
+
+    /**
+     * @return the reads answered from the snapshot, before revalidation or because vault failed
+     */
+    public long getSnapshotHits() {
+        return snapshotHits.sum();
+    }
+
+    /**
+     * @return the number of paths still served from the snapshot until vault confirms them
+     */
+    public int getUnconfirmed() {
+        return unconfirmed.size();
+    }
+
+    @Override
+    public void close() {
+        if (view) {
+            return;
+        }
+        background.shutdownNow();
+        try {
+            if (snapshot.needsCompaction()) {
+                snapshot.compact();
+            }
+        } catch (IOException e) {
+            log.warn("Failed to compact secret snapshot : {}", e.getMessage());
+        }
+        snapshot.close();
+        delegate.close();
+    }
+
+    /**
+     * Reads every unconfirmed path from the delegate, the ones vault was unavailable for are tried again later.
+     */
+    void revalidate() {
+        List<String> paths = new ArrayList<>(unconfirmed);
+        if (paths.isEmpty()) {
+            return;
+        }
+        Map<String, SecretResult> results = delegate.getSecrets(paths);
+        int failed = 0;
+        for (Map.Entry<String, SecretResult> result : results.entrySet()) {
+            String path = result.getKey();
+            SnapshotFile.Record before = snapshot.get(path);
+            SecretResult recorded = recorded(path, result.getValue());
+            if (result.getValue().getError() instanceof VaultUnavailableException) {
+                failed++;
+                continue;
+            }
+            if (before != null && recorded.isSuccess() && !before.data.equals(recorded.getData())) {
+                log.info("Secret {} changed since the snapshot was written", path);
+            }
+            unconfirmed.remove(path);
+        }
+        log.info("Revalidated {} secrets of the snapshot against vault, {} failed", paths.size() - failed, failed);
+        if (failed > 0 && !background.isShutdown()) {
+            background.schedule(this::revalidate, REVALIDATE_RETRY_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Records a result of the delegate in the snapshot, vault being unavailable is replaced by the snapshot value if
+     * there is one.
+     */
+    private SecretResult recorded(String path, SecretResult result) {
+        if (result.isSuccess()) {
+            record(path, result.getResponse());
+            return result;
+        }
+        if (result.getError() instanceof SecretNotFoundException) {
+            snapshot.delete(path);
+            return result;
+        }
+        if (!(result.getError() instanceof VaultUnavailableException)) {
+            return result;
+        }
+        VaultResponse response = fromSnapshot(path);
+        return response == null ? result : SecretResult.success(response);
+    }
+
+    private void record(String path, VaultResponse response) {
+        Metadata metadata = response.getData().getMetadata();
+        long version = metadata == null ? 0 : (long) metadata.getVersion();
+        SnapshotFile.Record current = snapshot.get(path);
+        // a version of a path never changes, so its data is only compared for unversioned secrets. The time vault
+        // confirmed the record is refreshed once half of the max age passed
+        if (current != null && current.version == version && (version > 0 || current.data.equals(response.getData().getData()))
+            && (maxAgeMs == 0 || System.currentTimeMillis() - current.recordedAt < maxAgeMs / 2)) {
+            return;
+        }
+        snapshot.put(path, version, response.getData().getData());
+        if (snapshot.needsCompaction() && !background.isShutdown()) {
+            background.execute(() -> {
+                try {
+                    if (snapshot.needsCompaction()) {
+                        snapshot.compact();
+                    }
+                } catch (IOException e) {
+                    log.warn("Failed to compact secret snapshot : {}", e.getMessage());
+                }
+            });
+        }
+    }
+
+    private VaultResponse fromSnapshot(String path) {
+        SnapshotFile.Record record = snapshot.get(path);
+        if (record == null || maxAgeMs > 0 && System.currentTimeMillis() - record.recordedAt > maxAgeMs) {
+            return null;
+        }
+        snapshotHits.increment();
+        return VaultResponse.of(record.data, record.version);
+    }
+}
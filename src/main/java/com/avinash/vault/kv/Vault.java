@@ -1,170 +1,586 @@
 package com.avinash.vault.kv;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.avinash.vault.kv.auth.VaultAuth;
+import com.avinash.vault.kv.exceptions.CasConflictException;
+import com.avinash.vault.kv.exceptions.CircuitOpenException;
+import com.avinash.vault.kv.exceptions.DeadlineExceededException;
 import com.avinash.vault.kv.exceptions.SecretNotFoundException;
 import com.avinash.vault.kv.exceptions.VaultException;
+import com.avinash.vault.kv.exceptions.VaultUnavailableException;
+import com.avinash.vault.kv.http.AsyncLimiter;
+import com.avinash.vault.kv.http.CircuitBreaker;
+import com.avinash.vault.kv.http.Futures;
 import com.avinash.vault.kv.http.JsonBodyHandler;
-import lombok.AllArgsConstructor;
+import com.avinash.vault.kv.http.RetryAttemptExhausted;
+import com.avinash.vault.kv.http.RetryPolicy;
+import com.avinash.vault.kv.http.RetryableHttp;
+import com.avinash.vault.kv.http.SingleFlight;
+import com.avinash.vault.kv.metrics.VaultMetrics;
+import com.avinash.vault.kv.metrics.VaultOperation;
 import lombok.Builder;
+import lombok.extern.slf4j.Slf4j;
 
+import java.io.IOException;
 import java.net.URI;
-import java.net.URISyntaxException;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
 
-import static com.avinash.vault.kv.http.RetryableHttp.httpClient;
+@Slf4j
+public class Vault implements SecretProvider, AsyncSecretProvider {
 
-@Builder
-@AllArgsConstructor
-public class Vault implements SecretProvider {
+    private static final JsonBodyHandler<VaultResponse> SECRET_BODY_HANDLER = new JsonBodyHandler<>(VaultResponseDecoder::decode);
+    private static final JsonBodyHandler<VaultMetadataResponse> METADATA_BODY_HANDLER = new JsonBodyHandler<>(VaultMetadataResponse.class);
+    private static final JsonBodyHandler<VaultListResponse> LIST_BODY_HANDLER = new JsonBodyHandler<>(VaultListResponse.class);
+    // the version written, or why the write was rejected, null for the bodies of 204 or of proxies which are not json
+    private static final JsonBodyHandler<VaultWriteResponse> WRITE_BODY_HANDLER = new JsonBodyHandler<>(body -> {
+        try {
+            return JsonBodyHandler.readerFor(VaultWriteResponse.class).readValue(body);
+        } catch (IOException e) {
+            return null;
+        }
+    });
 
     private final URI uri;
     private final VaultAuth auth;
     private final String namespace;
+    // sends every request with the retry policy of this vault, does not own the client
+    private final RetryableHttp http;
+    // sends the requests to a node which is not the last one to try, failing over instead of retrying
+    private final RetryableHttp failoverHttp;
+    // the client given to this vault, released on close
+    private final RetryableHttp client;
+    // bounds the parallel requests of bulk reads
+    private final AsyncLimiter bulkLimiter;
+    // picks the nodes requests are sent to, a single one unless several endpoints are given
+    private final EndpointRouter router;
+    // the templates of the primary node, whose uris also key the concurrent reads
+    private final VaultRequestTemplates templates;
+    // reads are keyed by the full uri, which already identifies the path within this vault's namespace
+    private final SingleFlight<URI, VaultResponse> reads;
+    // how long every call may take, only set for the views returned by withDeadline, which own nothing
+    private final Duration deadline;
+
+    public Vault(URI uri, VaultAuth auth, String namespace) {
+        this(uri, auth, namespace, null, null);
+    }
+
+    public Vault(URI uri, VaultAuth auth, String namespace, RetryableHttp http, AsyncLimiter bulkLimiter) {
+        this(uri, auth, namespace, http, bulkLimiter, null, null);
+    }
+
+    public Vault(URI uri, VaultAuth auth, String namespace, RetryableHttp http, AsyncLimiter bulkLimiter,
+                 RetryPolicy retryPolicy, CircuitBreaker circuitBreaker) {
+        this(uri, auth, namespace, http, bulkLimiter, retryPolicy, circuitBreaker, null, null);
+    }
+
+    /**
+     * @param uri               the uri of vault, the uri of the first active endpoint if null
+     * @param http              the client to send the requests with, the process wide shared client if null
+     * @param bulkLimiter       bounds the parallel requests of bulk reads, {@link AsyncLimiter#DEFAULT_MAX_IN_FLIGHT} if null
+     * @param retryPolicy       how the requests of this vault are retried, the policy of the client if null
+     * @param circuitBreaker    fails the requests fast while vault is failing, none if null. Only for a single node,
+     *                          the endpoints of a cluster carry their own
+     * @param endpoints         the nodes of a vault cluster to route the requests over, the single node at the uri if
+     *                          null or empty
+     * @param healthCheckMillis how often the nodes of a cluster are probed, {@link EndpointRouter#DEFAULT_HEALTH_CHECK_MS}
+     *                          if null
+     */
+    @Builder
+    public Vault(URI uri, VaultAuth auth, String namespace, RetryableHttp http, AsyncLimiter bulkLimiter,
+                 RetryPolicy retryPolicy, CircuitBreaker circuitBreaker, List<VaultEndpoint> endpoints,
+                 Long healthCheckMillis) {
+        if (endpoints == null || endpoints.isEmpty()) {
+            endpoints = List.of(new VaultEndpoint(uri, VaultEndpoint.Role.ACTIVE, circuitBreaker));
+        }
+        this.auth = auth;
+        this.namespace = namespace;
+        this.client = http == null ? RetryableHttp.httpClient() : http;
+        this.http = retryPolicy == null ? this.client : this.client.withPolicy(retryPolicy);
+        this.failoverHttp = this.http.withPolicy(this.http.getPolicy().withMaxRetries(0));
+        this.bulkLimiter = bulkLimiter == null ? new AsyncLimiter(AsyncLimiter.DEFAULT_MAX_IN_FLIGHT) : bulkLimiter;
+        this.router = new EndpointRouter(endpoints, namespace, this.client,
+            healthCheckMillis == null ? EndpointRouter.DEFAULT_HEALTH_CHECK_MS : healthCheckMillis);
+        this.templates = router.primary().templates();
+        this.uri = uri == null ? router.primary().getEndpoint().getUri() : uri;
+        this.reads = new SingleFlight<>();
+        this.deadline = null;
+    }
+
+    private Vault(Vault vault, Duration deadline) {
+        this.uri = vault.uri;
+        this.auth = vault.auth;
+        this.namespace = vault.namespace;
+        this.client = vault.client;
+        this.http = vault.http.withPolicy(vault.http.getPolicy().withDeadline(deadline));
+        this.failoverHttp = this.http.withPolicy(this.http.getPolicy().withMaxRetries(0));
+        this.bulkLimiter = vault.bulkLimiter;
+        this.router = vault.router;
+        this.templates = vault.templates;
+        this.reads = vault.reads;
+        this.deadline = deadline;
+    }
+
+    /**
+     * The retries of a call of the view stop at the deadline, and a call still waiting for vault then, e.g. for a
+     * login or a read shared with a caller without a deadline, fails with a {@link DeadlineExceededException}. The
+     * request in flight is not called back, a write failing at the deadline may still be applied afterwards, but no
+     * retry of it is started unless its request timeout ends before the deadline.
+     */
+    @Override
+    public Vault withDeadline(Duration deadline) {
+        if (deadline.isNegative() || deadline.isZero()) {
+            throw new IllegalArgumentException("Deadline must be positive, got " + deadline);
+        }
+        return new Vault(this, deadline);
+    }
 
     @Override
     public Map<String, String> getSecret(String path) {
-        URI fullUri = fullUri(path);
-        VaultResponse response = getFromVault(fullUri);
-        return response.getData().getData();
+        return Futures.join(getSecretAsync(path));
     }
 
     @Override
     public Map<String, String> getSecret(String path, String key) {
-        URI fullUri = fullUri(path);
-        VaultResponse response = getFromVault(fullUri);
-        Map<String, String> map = response.getData().getData();
-        if (map.containsKey(key)) {
-            return new HashMap<>() {{
-                put(key, map.get(key));
-            }};
-        }
-        throw new SecretNotFoundException("Secret value for key " + key + " is not present at path " + path);
+        return Futures.join(getSecretAsync(path, key));
+    }
+
+    @Override
+    public VaultResponse readSecret(String path) {
+        return Futures.join(readSecretAsync(path));
+    }
+
+    @Override
+    public Map<String, SecretResult> getSecrets(Collection<String> paths) {
+        return Futures.join(getSecretsAsync(paths));
+    }
+
+    /**
+     * @see #listSecretPathsAsync(String)
+     */
+    public List<String> listSecretPaths(String path) {
+        return Futures.join(listSecretPathsAsync(path));
     }
 
     @Override
     public void addSecret(String secretEngine,String secretName) {
-        String relativePath = "/v1/"+secretEngine+"/data/"+secretName;
-        URI fullUri = fullUri(relativePath);
-        HttpRequest request = HttpRequest.newBuilder(fullUri)
-                .header("X-Vault-Token", auth.getToken())
-                .header("X-Vault-Namespace", namespace)
-                .PUT(HttpRequest.BodyPublishers.ofString("{\"data\":{},\"options\":{}}"))
-                .timeout(Duration.ofSeconds(10))
-                .build();
-        try {
-            var response = httpClient().send(request, HttpResponse.BodyHandlers.discarding());
-            var responseCode = response.statusCode();
-            if(200!=responseCode) {
-                throw new VaultException("Unable to add secret to vault, got response code : "+responseCode);
-            }
-        } catch (Exception e) { //ignore e, as printing it might reveal secrets in logs
-            throw new VaultException("Failed to get a response from vault at " + uri);
-        }
+        Futures.join(addSecretAsync(secretEngine, secretName));
     }
 
     @Override
     public void addSecret(String secretEngine,String secretName,Map<String,String> data,Map<String,String> options) {
-        String relativePath = "/v1/"+secretEngine+"/data/"+secretName;
-        URI fullUri = fullUri(relativePath);
-        VaultRequest vaultRequest = new VaultRequest();
-        vaultRequest.setData(data);
-        vaultRequest.setOptions(options);
-        try {
-            ObjectMapper om = new ObjectMapper();
-            String payload = om.writeValueAsString(vaultRequest);
-            HttpRequest request = HttpRequest.newBuilder(fullUri)
-                    .header("X-Vault-Token", auth.getToken())
-                    .header("X-Vault-Namespace", namespace)
-                    .PUT(HttpRequest.BodyPublishers.ofString(payload))
-                    .timeout(Duration.ofSeconds(10))
-                    .build();
-            var response = httpClient().send(request, HttpResponse.BodyHandlers.discarding());
-            var responseCode = response.statusCode();
-            if(200!=responseCode) {
-                throw new VaultException("Unable to add secret to vault, got response code : "+responseCode);
+        Futures.join(addSecretAsync(secretEngine, secretName, data, options));
+    }
+
+    @Override
+    public void patchSecret(String secretEngine, String secretName, Map<String, String> data, Map<String, String> options) {
+        Futures.join(patchSecretAsync(secretEngine, secretName, data, options));
+    }
+
+    @Override
+    public void destroySecret(String secretEngine, String secretName, Optional<String> secretVersion) {
+        Futures.join(destroySecretAsync(secretEngine, secretName, secretVersion));
+    }
+
+    @Override
+    public long writeSecret(String secretEngine, String secretName, Map<String, String> data, Long cas) {
+        return Futures.join(writeSecretAsync(secretEngine, secretName, data, cas));
+    }
+
+    @Override
+    public long writePatch(String secretEngine, String secretName, Map<String, String> data, Long cas) {
+        return Futures.join(writePatchAsync(secretEngine, secretName, data, cas));
+    }
+
+    @Override
+    public CompletableFuture<Map<String, String>> getSecretAsync(String path) {
+        // the response may be shared with concurrent readers of the same path, so hand out a copy
+        return readSecretAsync(path).thenApply(response -> new HashMap<>(response.getData().getData()));
+    }
+
+    @Override
+    public CompletableFuture<Map<String, String>> getSecretAsync(String path, String key) {
+        return readSecretAsync(path).thenApply(response -> {
+            Map<String, String> map = response.getData().getData();
+            if (map.containsKey(key)) {
+                return Collections.singletonMap(key, map.get(key));
             }
-        } catch(JsonProcessingException p){
-            throw new RuntimeException(p);
-        }catch (Exception e) { //ignore e, as printing it might reveal secrets in logs
-            throw new VaultException("Failed to get a response from vault at " + uri);
+            throw new SecretNotFoundException("Secret value for key " + key + " is not present at path " + path);
+        });
+    }
+
+    /**
+     * Concurrent reads of the same path share a single request to vault and the resulting response object,
+     * which therefore must not be modified by the caller.
+     */
+    @Override
+    public CompletableFuture<VaultResponse> readSecretAsync(String path) {
+        URI fullUri;
+        try {
+            fullUri = templates.uri(path);
+        } catch (VaultException e) {
+            return CompletableFuture.failedFuture(e);
         }
+        return bounded(reads.executeAsync(fullUri, () -> getFromVault(fullUri, path)), path);
     }
 
     @Override
-    public void patchSecret(String secretEngine, String secretName, Map<String, String> data, Map<String, String> options) {
-        String relativePath = "/v1/"+secretEngine+"/data/"+secretName;
-        URI fullUri = fullUri(relativePath);
-        VaultRequest vaultRequest = new VaultRequest();
-        vaultRequest.setData(data);
-        vaultRequest.setOptions(options);
+    public CompletableFuture<VaultMetadataResponse> readMetadataAsync(String path) {
+        String metadataPath;
         try {
-            ObjectMapper om = new ObjectMapper();
-            String payload = om.writeValueAsString(vaultRequest);
-            HttpRequest request = HttpRequest.newBuilder(fullUri)
-                    .header("Content-Type", "application/merge-patch+json")
-                    .header("X-Vault-Token", auth.getToken())
-                    .header("X-Vault-Namespace", namespace)
-                    .method("PATCH", HttpRequest.BodyPublishers.ofString(payload))
-                    .timeout(Duration.ofSeconds(10))
-                    .build();
-            var response = httpClient().send(request, HttpResponse.BodyHandlers.discarding());
-            var responseCode = response.statusCode();
-            if(200!=responseCode) {
-                throw new VaultException("Unable to add secret to vault, got response code : "+responseCode);
+            metadataPath = VaultRequestTemplates.metadataPath(path);
+        } catch (VaultException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return bounded(http.getMetrics().timed(VaultOperation.READ_METADATA, () -> auth.getTokenAsync()
+            .thenCompose(token -> send(true, node -> node.request(metadataPath, token).GET().build(), METADATA_BODY_HANDLER))
+            .handle((response, e) -> {
+                if (e != null) {
+                    throw failure(e, uri);
+                }
+                if (response.statusCode() == 404) {
+                    throw new SecretNotFoundException("No secret is present at path " + path);
+                }
+                if (response.statusCode() != 200 || response.body() == null || response.body().getData() == null) {
+                    throw statusFailure("Unable to read secret metadata from vault", response.statusCode());
+                }
+                return response.body();
+            })), path);
+    }
+
+    /**
+     * @param path the path of a KV v2 folder, i.e. {@code /v1/<engine>/data/<folder>/}
+     * @return the names of the secrets right under the folder and of its sub folders, which end with {@code /}, none
+     * if the folder does not exist
+     */
+    public CompletableFuture<List<String>> listSecretsAsync(String path) {
+        String listPath;
+        try {
+            listPath = VaultRequestTemplates.listPath(path);
+        } catch (VaultException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return bounded(http.getMetrics().timed(VaultOperation.LIST_SECRETS, () -> auth.getTokenAsync()
+            .thenCompose(token -> send(true, node -> node.request(listPath, token).GET().build(), LIST_BODY_HANDLER))
+            .handle((response, e) -> {
+                if (e != null) {
+                    throw failure(e, uri);
+                }
+                // vault answers a folder without any secret with 404
+                if (response.statusCode() == 404) {
+                    return List.<String>of();
+                }
+                if (response.statusCode() != 200 || response.body() == null || response.body().getData() == null
+                    || response.body().getData().getKeys() == null) {
+                    throw statusFailure("Unable to list secrets from vault", response.statusCode());
+                }
+                return response.body().getData().getKeys();
+            })), path);
+    }
+
+    /**
+     * Lists the folder and all its sub folders. Sub folders are listed as soon as their parent is, in parallel, at
+     * most as many at a time as the bulk limiter of this vault allows.
+     *
+     * @param path the path of a KV v2 folder, i.e. {@code /v1/<engine>/data/<folder>/}, the trailing {@code /} is optional
+     * @return the paths of all the secrets under the folder, at any depth
+     */
+    public CompletableFuture<List<String>> listSecretPathsAsync(String path) {
+        String folder = path.endsWith("/") ? path : path + "/";
+        return bulkLimiter.submit(() -> listSecretsAsync(folder)).thenCompose(keys -> {
+            List<String> paths = new ArrayList<>();
+            List<CompletableFuture<List<String>>> folders = new ArrayList<>();
+            for (String key : keys) {
+                if (key.endsWith("/")) {
+                    folders.add(listSecretPathsAsync(folder + key));
+                } else {
+                    paths.add(folder + key);
+                }
             }
-        } catch(JsonProcessingException p){
-            throw new RuntimeException(p);
-        }catch (Exception e) { //ignore e, as printing it might reveal secrets in logs
-            throw new VaultException("Failed to get a response from vault at " + uri);
+            return CompletableFuture.allOf(folders.toArray(new CompletableFuture<?>[0]))
+                .thenApply(ignored -> {
+                    folders.forEach(subFolder -> paths.addAll(subFolder.join()));
+                    return paths;
+                });
+        });
+    }
+
+    /**
+     * All paths are requested in parallel, at most as many at a time as the bulk limiter of this vault allows.
+     */
+    @Override
+    public CompletableFuture<Map<String, SecretResult>> getSecretsAsync(Collection<String> paths) {
+        Map<String, CompletableFuture<SecretResult>> pending = new LinkedHashMap<>();
+        for (String path : paths) {
+            pending.computeIfAbsent(path, p -> bulkLimiter.submit(() -> readSecretAsync(p))
+                .handle((response, e) -> e == null ? SecretResult.success(response) : SecretResult.failure(Futures.unwrap(e))));
         }
+        return CompletableFuture.allOf(pending.values().toArray(new CompletableFuture<?>[0]))
+            .thenApply(ignored -> {
+                Map<String, SecretResult> results = new LinkedHashMap<>();
+                pending.forEach((path, result) -> results.put(path, result.join()));
+                return results;
+            });
     }
 
     @Override
-    public void destroySecret(String secretEngine, String secretName, Optional<String> secretVersion) {
-        String relativePath = "/v1/"+secretEngine+"/destroy/"+secretName;
-        URI fullUri = fullUri(relativePath);
-        HttpRequest request = HttpRequest.newBuilder(fullUri)
-                .header("X-Vault-Token", auth.getToken())
-                .header("X-Vault-Namespace", namespace)
-                .PUT(HttpRequest.BodyPublishers.ofString("{ \"versions\": ["+secretVersion.orElse("1")+"] }'"))
-                .timeout(Duration.ofSeconds(10))
-                .build();
+    public CompletableFuture<Void> addSecretAsync(String secretEngine, String secretName) {
+        return write(VaultOperation.ADD_SECRET, VaultRequestTemplates.dataPath(secretEngine, secretName), "PUT",
+            VaultRequestTemplates.emptySecret(), null, "Unable to add secret to vault").thenApply(version -> null);
+    }
+
+    @Override
+    public CompletableFuture<Void> addSecretAsync(String secretEngine, String secretName, Map<String, String> data, Map<String, String> options) {
+        return add(secretEngine, secretName, data, options).thenApply(version -> null);
+    }
+
+    @Override
+    public CompletableFuture<Void> patchSecretAsync(String secretEngine, String secretName, Map<String, String> data, Map<String, String> options) {
+        return patch(secretEngine, secretName, data, options).thenApply(version -> null);
+    }
+
+    @Override
+    public CompletableFuture<Long> writeSecretAsync(String secretEngine, String secretName, Map<String, String> data, Long cas) {
+        return add(secretEngine, secretName, data, VaultRequestTemplates.casOptions(cas));
+    }
+
+    @Override
+    public CompletableFuture<Long> writePatchAsync(String secretEngine, String secretName, Map<String, String> data, Long cas) {
+        return patch(secretEngine, secretName, data, VaultRequestTemplates.casOptions(cas));
+    }
+
+    @Override
+    public CompletableFuture<Void> destroySecretAsync(String secretEngine, String secretName, Optional<String> secretVersion) {
+        String relativePath = VaultRequestTemplates.destroyPath(secretEngine, secretName);
+        HttpRequest.BodyPublisher body;
         try {
-            httpClient().send(request,  HttpResponse.BodyHandlers.discarding());
-        } catch (Exception e) { //ignore e, as printing it might reveal secrets in logs
-            throw new VaultException("Failed to get a response from vault at " + uri);
+            body = VaultRequestTemplates.destroy(Integer.parseInt(secretVersion.orElse("1").trim()));
+        } catch (NumberFormatException | JsonProcessingException e) {
+            return CompletableFuture.failedFuture(new VaultException("Invalid secret version to destroy : " + secretVersion.get()));
         }
+        return write(VaultOperation.DESTROY_SECRET, relativePath, "PUT", body, null, "Unable to destroy secret in vault")
+            .thenApply(version -> null);
     }
 
-
-    private VaultResponse getFromVault(URI uri) {
-        HttpRequest request = HttpRequest.newBuilder(uri)
-            .header("X-Vault-Token", auth.getToken())
-            .header("X-Vault-Namespace", namespace)
-            .GET()
-            .timeout(Duration.ofSeconds(10))
-            .build();
-        HttpResponse<VaultResponse> response;
+    private CompletableFuture<Long> add(String secretEngine, String secretName, Map<String, String> data, Map<String, String> options) {
+        String relativePath = VaultRequestTemplates.dataPath(secretEngine, secretName);
+        HttpRequest.BodyPublisher body;
         try {
-            response = httpClient().withRetries(3).send(request, new JsonBodyHandler<>(VaultResponse.class));
-        } catch (Exception e) { //ignore e, as printing it might reveal secrets in logs
-            throw new VaultException("Failed to get a response from vault at " + uri);
+            body = VaultRequestTemplates.secret(data, options);
+        } catch (JsonProcessingException e) { //ignore e, as printing it might reveal secrets in logs
+            return CompletableFuture.failedFuture(new VaultException("Can not serialize the secret for " + relativePath));
         }
-        return response.body();
+        // vault takes a POST as a PUT, a check-and-set write is sent as one as it is not idempotent: a 500 may come
+        // after it was applied, and a retry would then fail as a conflict with itself
+        String method = options != null && options.containsKey("cas") ? "POST" : "PUT";
+        return write(VaultOperation.ADD_SECRET, relativePath, method, body, null, "Unable to add secret to vault");
     }
 
-    private URI fullUri(String path) {
+    private CompletableFuture<Long> patch(String secretEngine, String secretName, Map<String, String> data, Map<String, String> options) {
+        String relativePath = VaultRequestTemplates.dataPath(secretEngine, secretName);
+        HttpRequest.BodyPublisher body;
         try {
-            return new URI(uri + path);
-        } catch (URISyntaxException e) {
-            throw new VaultException("Can not form a proper uri from path : {" + path + "}", e);
+            body = VaultRequestTemplates.secret(data, options);
+        } catch (JsonProcessingException e) { //ignore e, as printing it might reveal secrets in logs
+            return CompletableFuture.failedFuture(new VaultException("Can not serialize the secret for " + relativePath));
+        }
+        return write(VaultOperation.PATCH_SECRET, relativePath, "PATCH", body, VaultRequestTemplates.MERGE_PATCH,
+            "Unable to patch secret in vault");
+    }
+
+    private CompletableFuture<VaultResponse> getFromVault(URI uri, String path) {
+        return http.getMetrics().timed(VaultOperation.GET_SECRET, () -> auth.getTokenAsync()
+            .thenCompose(token -> send(true, node -> node.request(path, token).GET().build(), SECRET_BODY_HANDLER))
+            .handle((response, e) -> {
+                if (e != null) {
+                    throw failure(e, uri);
+                }
+                if (response.statusCode() == 404) {
+                    throw new SecretNotFoundException("No secret is present at path " + path);
+                }
+                if (response.statusCode() != 200 || response.body() == null || response.body().getData() == null) {
+                    throw statusFailure("Unable to read secret from vault", response.statusCode());
+                }
+                return response.body();
+            }));
+    }
+
+    /**
+     * @return the version written, 0 if vault did not tell, e.g. for a destroy or KV v1
+     */
+    private CompletableFuture<Long> write(VaultOperation operation, String relativePath, String method,
+                                          HttpRequest.BodyPublisher body, String contentType, String errorMessage) {
+        return bounded(http.getMetrics().timed(operation, () -> auth.getTokenAsync()
+            .thenCompose(token -> send(false, node -> {
+                HttpRequest.Builder request = node.request(relativePath, token)
+                    .method(method, body);
+                if (contentType != null) {
+                    request.header("Content-Type", contentType);
+                }
+                return request.build();
+            }, WRITE_BODY_HANDLER))
+            .handle((response, e) -> {
+                if (e != null) {
+                    throw failure(e, uri);
+                }
+                var responseCode = response.statusCode();
+                if (responseCode == 400 && isCasConflict(response.body())) {
+                    throw new CasConflictException("Secret at " + relativePath + " is not at the version expected by the " +
+                        "check-and-set write, it was written in between");
+                }
+                // KV v2 writes answer with 200, destroy and KV v1 writes with 204 No Content
+                if (responseCode / 100 != 2) {
+                    throw statusFailure(errorMessage, responseCode);
+                }
+                VaultWriteResponse written = response.body();
+                return written == null || written.getData() == null ? 0L : written.getData().getVersion();
+            })), relativePath);
+    }
+
+    /**
+     * Fails the call once the deadline of this view is over, without failing the given future, which may be shared.
+     */
+    private <T> CompletableFuture<T> bounded(CompletableFuture<T> call, String path) {
+        if (deadline == null) {
+            return call;
+        }
+        return call.copy()
+            .orTimeout(deadline.toMillis(), TimeUnit.MILLISECONDS)
+            .exceptionally(e -> {
+                if (Futures.unwrap(e) instanceof TimeoutException) {
+                    throw new DeadlineExceededException("No response from vault at " + uri + " for " + path
+                        + " within the deadline of " + deadline.toMillis() + " ms");
+                }
+                throw e instanceof CompletionException ? (CompletionException) e : new CompletionException(e);
+            });
+    }
+
+    /**
+     * Sends the request to the nodes picked by the router, one after the other, through their circuit breakers.
+     * Connection failures, {@code 5xx} and {@code 429} count as failures of a node, any other answer shows it is up,
+     * even an error like {@code 404}.
+     * <p>
+     * A read fails over to the next node on any failure, a write only on connection failures, as vault may have
+     * applied it, and a check-and-set write or a patch only when it could not connect at all. Only the last node to
+     * try retries according to the retry policy, the others fail over right away.
+     *
+     * @param read    whether the request reads, which any node serves, rather than writes
+     * @param request builds the request from the templates of a node
+     */
+    private <T> CompletableFuture<HttpResponse<T>> send(boolean read, Function<VaultRequestTemplates, HttpRequest> request,
+                                                        HttpResponse.BodyHandler<T> bodyHandler) {
+        return send(read ? router.forRead() : router.forWrite(), 0, read, request, bodyHandler);
+    }
+
+    private <T> CompletableFuture<HttpResponse<T>> send(List<EndpointRouter.Node> nodes, int index, boolean read,
+                                                        Function<VaultRequestTemplates, HttpRequest> request,
+                                                        HttpResponse.BodyHandler<T> bodyHandler) {
+        EndpointRouter.Node node = nodes.get(index);
+        boolean last = index == nodes.size() - 1;
+        CircuitBreaker breaker = node.getEndpoint().getCircuitBreaker();
+        if (breaker != null && !breaker.tryAcquire()) {
+            if (!last) {
+                return send(nodes, index + 1, read, request, bodyHandler);
+            }
+            return CompletableFuture.failedFuture(new CircuitOpenException("Circuit breaker of vault at "
+                + node.getEndpoint().getUri() + " is open"));
+        }
+        long start = System.nanoTime();
+        HttpRequest sent = request.apply(node.templates());
+        return (last ? http : failoverHttp).sendAsync(sent, bodyHandler)
+            .handle((response, e) -> {
+                boolean failed = e != null || response.statusCode() / 100 == 5 || response.statusCode() == 429;
+                router.record(node, System.nanoTime() - start, failed);
+                if (failed && !last && (read || e != null && isConnectionFailure(e) && RetryPolicy.isResendable(sent.method(), e))) {
+                    log.debug("Failing over from vault node {} to {}", node, nodes.get(index + 1));
+                    return send(nodes, index + 1, read, request, bodyHandler);
+                }
+                return e == null ? CompletableFuture.completedFuture(response) : CompletableFuture.<HttpResponse<T>>failedFuture(e);
+            })
+            .thenCompose(next -> next);
+    }
+
+    private static boolean isCasConflict(VaultWriteResponse response) {
+        return response != null && response.getErrors() != null
+            && response.getErrors().stream().anyMatch(error -> error.contains("check-and-set"));
+    }
+
+    private static boolean isConnectionFailure(Throwable e) {
+        Throwable cause = Futures.unwrap(e);
+        return cause instanceof IOException || cause instanceof RetryAttemptExhausted;
+    }
+
+    /**
+     * @return the metrics of the calls of this vault, shared with its http client
+     */
+    public VaultMetrics getMetrics() {
+        return http.getMetrics();
+    }
+
+    /**
+     * @return the circuit breaker of the primary node of this vault, to observe its state, null if it has none
+     */
+    public CircuitBreaker getCircuitBreaker() {
+        return router.primary().getEndpoint().getCircuitBreaker();
+    }
+
+    /**
+     * @return the nodes requests are routed over, with their current role, health and latency, e.g. for logs
+     */
+    public String describeEndpoints() {
+        return router.nodes().toString();
+    }
+
+    /**
+     * Errors raised by this library, e.g. a failed login, are passed on as they are. Anything else is replaced by a
+     * generic {@link VaultException}, as printing it might reveal secrets in logs, a {@link VaultUnavailableException}
+     * for connection failures.
+     */
+    private static RuntimeException failure(Throwable e, URI uri) {
+        Throwable cause = Futures.unwrap(e);
+        if (cause instanceof VaultException) {
+            return (VaultException) cause;
+        }
+        if (isConnectionFailure(cause)) {
+            return new VaultUnavailableException("Failed to get a response from vault at " + uri);
+        }
+        return new VaultException("Failed to get a response from vault at " + uri);
+    }
+
+    /**
+     * @return a {@link VaultUnavailableException} for the answers which count as failures of a node, {@code 5xx} and
+     * {@code 429}, a {@link VaultException} for the others
+     */
+    private static VaultException statusFailure(String message, int statusCode) {
+        String text = message + ", got response code : " + statusCode;
+        return statusCode / 100 == 5 || statusCode == 429 ? new VaultUnavailableException(text) : new VaultException(text);
+    }
+
+    /**
+     * Stops the auth of this vault and releases its http client, which is a no-op for the process wide shared client
+     * and for the views of a vault.
+     */
+    @Override
+    public void close() {
+        if (deadline != null) {
+            return;
         }
+        router.close();
+        auth.close();
+        client.close();
     }
 }
@@ -0,0 +1,50 @@
+package com.avinash.vault.kv;
+
+import com.avinash.vault.kv.exceptions.VaultInitializationException;
+
+import java.util.Map;
+
+/**
+ * Typed accessors over the raw {@code config.providers.vault.param.*} map handed to
+ * {@link VaultSecretProvider#configure(Map)}. Kafka passes every value as a String, so numbers are parsed here.
+ */
+final class VaultConfig {
+
+    private final Map<String, ?> configs;
+
+    VaultConfig(Map<String, ?> configs) {
+        this.configs = configs;
+    }
+
+    boolean has(String key) {
+        return configs.containsKey(key) && configs.get(key) != null;
+    }
+
+    String getString(String key, String defaultValue) {
+        return has(key) ? String.valueOf(configs.get(key)).trim() : defaultValue;
+    }
+
+    long getLong(String key, long defaultValue) {
+        if (!has(key)) {
+            return defaultValue;
+        }
+        String value = getString(key, null);
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new VaultInitializationException("Value provided for " + key + " is not a valid number : " + value);
+        }
+    }
+
+    int getInt(String key, int defaultValue) {
+        long value = getLong(key, defaultValue);
+        if (value > Integer.MAX_VALUE || value < Integer.MIN_VALUE) {
+            throw new VaultInitializationException("Value provided for " + key + " is out of range : " + value);
+        }
+        return (int) value;
+    }
+
+    boolean getBoolean(String key, boolean defaultValue) {
+        return has(key) ? Boolean.parseBoolean(getString(key, null)) : defaultValue;
+    }
+}
@@ -0,0 +1,40 @@
+package com.avinash.vault.kv;
+
+import com.avinash.vault.kv.http.CircuitBreaker;
+import lombok.Value;
+
+import java.net.URI;
+
+/**
+ * A node of a vault cluster requests can be sent to. Writes go to the active node, reads to whichever healthy node
+ * answers fastest, which includes the performance standbys.
+ */
+@Value
+public class VaultEndpoint {
+
+    public enum Role {
+        ACTIVE, STANDBY
+    }
+
+    URI uri;
+    /**
+     * The role the node is expected to have, until its health checks tell otherwise.
+     */
+    Role role;
+    /**
+     * Fails the requests to this node fast while it is failing, none if null.
+     */
+    CircuitBreaker circuitBreaker;
+
+    public static VaultEndpoint active(URI uri) {
+        return new VaultEndpoint(uri, Role.ACTIVE, null);
+    }
+
+    public static VaultEndpoint standby(URI uri) {
+        return new VaultEndpoint(uri, Role.STANDBY, null);
+    }
+
+    public VaultEndpoint withCircuitBreaker(CircuitBreaker circuitBreaker) {
+        return new VaultEndpoint(uri, role, circuitBreaker);
+    }
+}
@@ -0,0 +1,23 @@
+package com.avinash.vault.kv;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Response of a LIST of the KV v2 {@code /metadata/} endpoint of a folder: the names of the secrets right under it,
+ * and of its sub folders, which end with {@code /}.
+ */
+@Data
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class VaultListResponse {
+    private String request_id;
+    private KvKeys data;
+
+    @Data
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class KvKeys {
+        private List<String> keys;
+    }
+}
@@ -0,0 +1,25 @@
+package com.avinash.vault.kv;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import lombok.Data;
+
+/**
+ * Response of the KV v2 {@code /metadata/} endpoint of a secret, which describes its versions without its data.
+ */
+@Data
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class VaultMetadataResponse {
+    private String request_id;
+    private KvMetadata data;
+
+    @Data
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class KvMetadata {
+        private long current_version;
+        private long oldest_version;
+        private int max_versions;
+        private boolean cas_required;
+        private String created_time;
+        private String updated_time;
+    }
+}
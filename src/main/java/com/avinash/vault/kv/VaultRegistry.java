@@ -0,0 +1,189 @@
+package com.avinash.vault.kv;
+
+import com.avinash.vault.kv.http.Futures;
+import com.avinash.vault.kv.metrics.VaultMetrics;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Process wide registry of the vault clients of the {@link VaultSecretProvider}s. Kafka instantiates a provider
+ * wherever one is declared, e.g. in the worker, MirrorMaker and embedded clients, and providers configured alike share
+ * one http client, one token, logged in and renewed once, and one cache of the secrets instead of each their own.
+ * <p>
+ * Providers are keyed by the vault url, namespace and auth identity, as well as the rest of their settings, so that
+ * only identical providers share. The identity and settings are kept as digests, the registry holds no credential. A
+ * shared client is reference counted and closed with the last provider using it. Clients are built, logging in and
+ * prefetching, without holding the registry, so providers of other keys are never held up by it.
+ */
+@Slf4j
+final class VaultRegistry {
+
+    // the settings making up the auth identity of a provider
+    private static final Set<String> CREDENTIALS = Set.of("auth.mechanism", "role.id", "secret.id", "token");
+    // the settings of every provider on its own, which do not prevent sharing
+    private static final Set<String> PROVIDER_SETTINGS = Set.of("url", "namespace", "watch.interval.ms",
+        "watch.max.in.flight", "ttl.ms", "ttl.path.patterns", "shared.enabled");
+
+    // the client of every key, completed once built, so that building one does not hold up the other keys
+    private static final ConcurrentMap<Key, CompletableFuture<Shared>> SHARED = new ConcurrentHashMap<>();
+
+    private VaultRegistry() {
+    }
+
+    /**
+     * Builds the client of the key at most once at a time, outside of any lock, the providers of the key acquiring it
+     * meanwhile wait for it and those of other keys do not. If building it fails, they fail alike.
+     *
+     * @param factory builds the client when no provider with the key holds one
+     * @return the client of the key, held until {@link #release(Shared) released}
+     */
+    static Shared acquire(Key key, Supplier<Shared> factory) {
+        while (true) {
+            CompletableFuture<Shared> building = new CompletableFuture<>();
+            CompletableFuture<Shared> existing = SHARED.putIfAbsent(key, building);
+            if (existing == null) {
+                return build(key, factory, building);
+            }
+            Shared shared = Futures.join(existing);
+            synchronized (shared) {
+                // a client released by its last provider is being removed, the next round builds a new one
+                if (shared.references > 0) {
+                    log.info("Sharing the vault client of {} in namespace {} with {} other providers", key.getUrl(),
+                        key.getNamespace(), shared.references);
+                    shared.references++;
+                    return shared;
+                }
+            }
+            Thread.yield();
+        }
+    }
+
+    private static Shared build(Key key, Supplier<Shared> factory, CompletableFuture<Shared> building) {
+        Shared shared;
+        try {
+            shared = factory.get();
+        } catch (RuntimeException | Error e) {
+            SHARED.remove(key, building);
+            building.completeExceptionally(e);
+            throw e;
+        }
+        synchronized (shared) {
+            shared.key = key;
+            shared.references = 1;
+        }
+        building.complete(shared);
+        return shared;
+    }
+
+    /**
+     * Releases the client, which is closed if no other provider holds it, or if it is not shared at all.
+     */
+    static void release(Shared shared) {
+        synchronized (shared) {
+            if (shared.key != null) {
+                if (--shared.references > 0) {
+                    return;
+                }
+                SHARED.computeIfPresent(shared.key, (key, future) -> future.getNow(null) == shared ? null : future);
+                log.info("Closing the vault client of {} in namespace {}, released by its last provider",
+                    shared.key.getUrl(), shared.key.getNamespace());
+            }
+        }
+        shared.close();
+    }
+
+    static int size() {
+        return SHARED.size();
+    }
+
+    @Value
+    static class Key {
+        String url;
+        String namespace;
+        String identity;
+        String settings;
+
+        static Key of(Map<String, ?> configs) {
+            Map<String, String> credentials = new TreeMap<>();
+            Map<String, String> settings = new TreeMap<>();
+            configs.forEach((name, value) -> {
+                if (CREDENTIALS.contains(name)) {
+                    credentials.put(name, String.valueOf(value));
+                } else if (!PROVIDER_SETTINGS.contains(name)) {
+                    settings.put(name, String.valueOf(value));
+                }
+            });
+            return new Key(String.valueOf(configs.get("url")), String.valueOf(configs.get("namespace")),
+                digest(credentials), digest(settings));
+        }
+
+        private static String digest(Map<String, String> entries) {
+            MessageDigest digest;
+            try {
+                digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 is not available", e);
+            }
+            entries.forEach((name, value) -> {
+                digest.update(name.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+                digest.update(value.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+            });
+            return Base64.getEncoder().encodeToString(digest.digest());
+        }
+    }
+
+    /**
+     * What the providers of a key share, the client and the providers built on it, with their cache or snapshot.
+     */
+    static final class Shared {
+        private final Vault client;
+        private final SecretProvider provider;
+        private final SecretProvider reader;
+        private final VaultMetrics metrics;
+        // null while not registered, both guarded by the shared client itself
+        private Key key;
+        private int references;
+
+        /**
+         * @param provider the client, or the cache or snapshot in front of it, closed with the client
+         * @param reader   what reads go through, the provider or its view bounded by a deadline
+         */
+        Shared(Vault client, SecretProvider provider, SecretProvider reader, VaultMetrics metrics) {
+            this.client = client;
+            this.provider = provider;
+            this.reader = reader;
+            this.metrics = metrics;
+        }
+
+        Vault getClient() {
+            return client;
+        }
+
+        SecretProvider getProvider() {
+            return provider;
+        }
+
+        SecretProvider getReader() {
+            return reader;
+        }
+
+        private void close() {
+            provider.close();
+            metrics.close();
+        }
+    }
+}
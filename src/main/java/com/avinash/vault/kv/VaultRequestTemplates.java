@@ -0,0 +1,128 @@
+package com.avinash.vault.kv;
+
+import com.avinash.vault.kv.exceptions.VaultException;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import lombok.Data;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.http.HttpRequest;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Everything about a request to vault which does not change from call to call, prepared once: the uri of every path,
+ * the namespace header and timeout, and the json encoding of the bodies. A request is then a copy of the template
+ * with the token and body of the call.
+ */
+final class VaultRequestTemplates {
+
+    static final String MERGE_PATCH = "application/merge-patch+json";
+
+    private static final ObjectWriter REQUEST_WRITER = new ObjectMapper().writerFor(VaultRequest.class);
+    private static final ObjectWriter DESTROY_WRITER = new ObjectMapper().writerFor(DestroyRequest.class);
+    private static final byte[] EMPTY_SECRET = "{\"data\":{},\"options\":{}}".getBytes(StandardCharsets.UTF_8);
+    // paths are normally a handful per connector, the bound only protects against callers generating endless paths
+    private static final int MAX_CACHED_URIS = 10_000;
+
+    private final String baseUri;
+    private final HttpRequest.Builder template;
+    private final ConcurrentMap<String, URI> uris = new ConcurrentHashMap<>();
+
+    VaultRequestTemplates(URI baseUri, String namespace, Duration timeout) {
+        this.baseUri = baseUri.toString();
+        this.template = HttpRequest.newBuilder()
+            .header("X-Vault-Namespace", namespace)
+            .timeout(timeout);
+    }
+
+    /**
+     * @return a new request to the path with the namespace, token and timeout set, ready for the method and body
+     */
+    HttpRequest.Builder request(String relativePath, String token) {
+        return template.copy()
+            .uri(uri(relativePath))
+            .header("X-Vault-Token", token);
+    }
+
+    URI uri(String relativePath) {
+        URI uri = uris.get(relativePath);
+        if (uri == null) {
+            try {
+                uri = new URI(baseUri + relativePath);
+            } catch (URISyntaxException e) {
+                throw new VaultException("Can not form a proper uri from path : {" + relativePath + "}", e);
+            }
+            if (uris.size() >= MAX_CACHED_URIS) {
+                uris.clear();
+            }
+            uris.put(relativePath, uri);
+        }
+        return uri;
+    }
+
+    static HttpRequest.BodyPublisher emptySecret() {
+        return HttpRequest.BodyPublishers.ofByteArray(EMPTY_SECRET);
+    }
+
+    static HttpRequest.BodyPublisher secret(Map<String, String> data, Map<String, String> options) throws JsonProcessingException {
+        VaultRequest vaultRequest = new VaultRequest();
+        vaultRequest.setData(data);
+        vaultRequest.setOptions(options);
+        return HttpRequest.BodyPublishers.ofByteArray(REQUEST_WRITER.writeValueAsBytes(vaultRequest));
+    }
+
+    static HttpRequest.BodyPublisher destroy(int version) throws JsonProcessingException {
+        DestroyRequest destroyRequest = new DestroyRequest();
+        destroyRequest.setVersions(List.of(version));
+        return HttpRequest.BodyPublishers.ofByteArray(DESTROY_WRITER.writeValueAsBytes(destroyRequest));
+    }
+
+    /**
+     * @param cas the version a secret must be at to be written, null for none
+     * @return the options of a KV v2 write checking the version
+     */
+    static Map<String, String> casOptions(Long cas) {
+        return cas == null ? Map.of() : Map.of("cas", cas.toString());
+    }
+
+    static String dataPath(String secretEngine, String secretName) {
+        return "/v1/" + secretEngine + "/data/" + secretName;
+    }
+
+    /**
+     * @param dataPath the path of a KV v2 secret, i.e. {@code /v1/<engine>/data/<name>}
+     * @return the path of the metadata of the secret, i.e. {@code /v1/<engine>/metadata/<name>}
+     */
+    static String metadataPath(String dataPath) {
+        int data = dataPath.indexOf("/data/");
+        if (!dataPath.startsWith("/v1/") || data < 0) {
+            throw new VaultException("Path " + dataPath + " is not a KV v2 path of the form /v1/<engine>/data/<name>");
+        }
+        return dataPath.substring(0, data) + "/metadata/" + dataPath.substring(data + "/data/".length());
+    }
+
+    /**
+     * @param folderPath the path of a KV v2 folder, i.e. {@code /v1/<engine>/data/<folder>/}
+     * @return the path listing the folder, i.e. {@code /v1/<engine>/metadata/<folder>/?list=true}, which works where
+     * proxies reject the {@code LIST} method
+     */
+    static String listPath(String folderPath) {
+        return metadataPath(folderPath) + "?list=true";
+    }
+
+    static String destroyPath(String secretEngine, String secretName) {
+        return "/v1/" + secretEngine + "/destroy/" + secretName;
+    }
+
+    @Data
+    static class DestroyRequest {
+        private List<Integer> versions;
+    }
+}
@@ -18,6 +18,38 @@ public class VaultResponse {
     private String warnings = null;
     private Auth auth = null;
 
+    static VaultResponse of(Map<String, String> secrets) {
+        InternalData internalData = new InternalData();
+        internalData.setData(secrets);
+        VaultResponse response = new VaultResponse();
+        response.setData(internalData);
+        return response;
+    }
+
+    static VaultResponse of(Map<String, String> secrets, long version) {
+        VaultResponse response = of(secrets);
+        Metadata metadata = new Metadata();
+        metadata.setVersion(version);
+        response.getData().setMetadata(metadata);
+        return response;
+    }
+
+    /**
+     * @return a copy of this response, lease and metadata included, with the given secrets as its data
+     */
+    VaultResponse withData(Map<String, String> secrets) {
+        InternalData internalData = new InternalData();
+        internalData.setData(secrets);
+        internalData.setMetadata(data == null ? null : data.getMetadata());
+        VaultResponse response = new VaultResponse();
+        response.setRequest_id(request_id);
+        response.setLease_id(lease_id);
+        response.setRenewable(renewable);
+        response.setLease_duration(lease_duration);
+        response.setData(internalData);
+        return response;
+    }
+
     @Data
     @JsonIgnoreProperties(ignoreUnknown = true)
     public static class Auth {
@@ -35,20 +67,3 @@ public class VaultResponse {
         private Long num_uses;
     }
 }
-
-@Data
-@JsonIgnoreProperties(ignoreUnknown = true)
-class InternalData {
-    private Map<String, String> data;
-    private Metadata metadata;
-}
-
-@Data
-@JsonIgnoreProperties(ignoreUnknown = true)
-class Metadata {
-    private String created_time;
-    private String deletion_time;
-    private boolean destroyed;
-    private float version;
-}
-
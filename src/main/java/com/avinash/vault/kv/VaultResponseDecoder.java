@@ -0,0 +1,123 @@
+package com.avinash.vault.kv;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Decodes the response of a KV read straight from the token stream. Only the lease fields, {@code data.data} and
+ * {@code data.metadata} are extracted, everything else (auth, wrap info, warnings) is skipped without being bound.
+ */
+final class VaultResponseDecoder {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private VaultResponseDecoder() {
+    }
+
+    static VaultResponse decode(byte[] body) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(body)) {
+            expect(parser, parser.nextToken(), JsonToken.START_OBJECT);
+            VaultResponse response = new VaultResponse();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                switch (field) {
+                    case "request_id":
+                        response.setRequest_id(parser.getValueAsString());
+                        break;
+                    case "lease_id":
+                        response.setLease_id(parser.getValueAsString());
+                        break;
+                    case "renewable":
+                        response.setRenewable(parser.getValueAsBoolean());
+                        break;
+                    case "lease_duration":
+                        response.setLease_duration((float) parser.getValueAsDouble());
+                        break;
+                    case "data":
+                        response.setData(value == JsonToken.VALUE_NULL ? null : internalData(parser));
+                        break;
+                    default:
+                        parser.skipChildren();
+                }
+            }
+            return response;
+        }
+    }
+
+    private static InternalData internalData(JsonParser parser) throws IOException {
+        expect(parser, parser.currentToken(), JsonToken.START_OBJECT);
+        InternalData internalData = new InternalData();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if (value == JsonToken.VALUE_NULL) {
+                continue;
+            }
+            switch (field) {
+                case "data":
+                    internalData.setData(secrets(parser));
+                    break;
+                case "metadata":
+                    internalData.setMetadata(metadata(parser));
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+        return internalData;
+    }
+
+    private static Map<String, String> secrets(JsonParser parser) throws IOException {
+        expect(parser, parser.currentToken(), JsonToken.START_OBJECT);
+        Map<String, String> secrets = new HashMap<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String key = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if (value.isStructStart()) {
+                // never include the value in the message, it is a secret
+                throw new JsonParseException(parser, "Secret value of key " + key + " is not a scalar");
+            }
+            secrets.put(key, value == JsonToken.VALUE_NULL ? null : parser.getValueAsString());
+        }
+        return secrets;
+    }
+
+    private static Metadata metadata(JsonParser parser) throws IOException {
+        expect(parser, parser.currentToken(), JsonToken.START_OBJECT);
+        Metadata metadata = new Metadata();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            switch (field) {
+                case "created_time":
+                    metadata.setCreated_time(parser.getValueAsString());
+                    break;
+                case "deletion_time":
+                    metadata.setDeletion_time(parser.getValueAsString());
+                    break;
+                case "destroyed":
+                    metadata.setDestroyed(parser.getValueAsBoolean());
+                    break;
+                case "version":
+                    metadata.setVersion((float) parser.getValueAsDouble());
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+        return metadata;
+    }
+
+    private static void expect(JsonParser parser, JsonToken actual, JsonToken expected) throws JsonParseException {
+        if (actual != expected) {
+            throw new JsonParseException(parser, "Expected " + expected + " but got " + actual);
+        }
+    }
+}
@@ -4,17 +4,41 @@ import com.avinash.vault.kv.Vault.VaultBuilder;
 import com.avinash.vault.kv.auth.AppRoleAuth;
 import com.avinash.vault.kv.auth.TokenAuth;
 import com.avinash.vault.kv.auth.VaultAuth;
+import com.avinash.vault.kv.exceptions.SecretNotFoundException;
+import com.avinash.vault.kv.exceptions.VaultException;
 import com.avinash.vault.kv.exceptions.VaultInitializationException;
+import com.avinash.vault.kv.http.AsyncLimiter;
+import com.avinash.vault.kv.http.CircuitBreaker;
+import com.avinash.vault.kv.http.Futures;
+import com.avinash.vault.kv.http.HttpExecutorMode;
+import com.avinash.vault.kv.http.HttpSettings;
+import com.avinash.vault.kv.http.RetryPolicy;
+import com.avinash.vault.kv.http.RetryableHttp;
+import com.avinash.vault.kv.memory.SecretSlabs;
+import com.avinash.vault.kv.metrics.VaultMetrics;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.common.config.ConfigChangeCallback;
 import org.apache.kafka.common.config.ConfigData;
 import org.apache.kafka.common.config.provider.ConfigProvider;
 import org.apache.kafka.common.config.provider.FileConfigProvider;
 
+import javax.crypto.SecretKey;
+import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 /**
  * An implementation inline with {@link FileConfigProvider} that represents a Properties file which
@@ -25,33 +49,103 @@ import java.util.Set;
 @Slf4j
 public class VaultSecretProvider implements ConfigProvider {
 
+    private static final long DEFAULT_OFF_HEAP_MAX_BYTES = 64L << 20;
+
     private SecretProvider vault;
+    // what get reads from, the vault or its view bounded by the deadline of a call
+    private SecretProvider reader;
+    private SecretTtlPolicy ttlPolicy = SecretTtlPolicy.NONE;
+    private SecretWatcher watcher;
+    // the client, possibly shared with other providers configured alike
+    private VaultRegistry.Shared shared;
 
     @Override
     public ConfigData get(String path) {
         log.info("VaultSecretProvider get({}) called", path);
-        return new ConfigData(vault.getSecret(path));
+        SecretSnapshot snapshot = reader.getSecretSnapshot(path);
+        return new ConfigData(snapshot.asMap(), ttlPolicy.ttlOf(snapshot));
     }
 
     @Override
     public ConfigData get(String path, Set<String> keys) {
         log.info("VaultSecretProvider get({},{}) called", path, keys);
+        // only the requested keys are materialized, e.g. from a cache keeping its values off heap, and not copied
+        SecretSnapshot snapshot = reader.getSecretSnapshot(path, keys);
+        return new ConfigData(snapshot.asMap(), ttlPolicy.ttlOf(snapshot));
+    }
+
+    /**
+     * Resolves all the references of a connector at once. The paths are read in parallel, so resolving a whole
+     * connector config costs roughly one round trip to vault instead of one per path.
+     *
+     * @param keysByPath the keys referenced at every path
+     * @return the referenced keys and their secret values of every path
+     * @throws com.avinash.vault.kv.exceptions.VaultException if any of the paths or keys can not be resolved
+     */
+    public Map<String, ConfigData> getAll(Map<String, Set<String>> keysByPath) {
+        log.info("VaultSecretProvider getAll({}) called", keysByPath);
+        Map<String, SecretResult> secrets = reader.getSecrets(keysByPath.keySet());
+        Map<String, ConfigData> res = new LinkedHashMap<>();
+        keysByPath.forEach((path, keys) -> {
+            SecretResult secret = secrets.get(path);
+            Map<String, String> values = selectKeys(path, secret.orElseThrow(), keys);
+            res.put(path, new ConfigData(values, ttlPolicy.ttlOf(path, secret.getResponse())));
+        });
+        return res;
+    }
+
+    private static Map<String, String> selectKeys(String path, Map<String, String> data, Set<String> keys) {
         Map<String, String> res = new HashMap<>();
         for (String key : keys) {
-            res.put(key, vault.getSecret(path, key).get(key));
+            if (!data.containsKey(key)) {
+                throw new SecretNotFoundException("Secret value for key " + key + " is not present at path " + path);
+            }
+            res.put(key, data.get(key));
         }
-        return new ConfigData(res);
+        return res;
+    }
+
+    /**
+     * The path is polled in the background and the callback is notified of the subscribed keys whose values changed.
+     */
+    @Override
+    public void subscribe(String path, Set<String> keys, ConfigChangeCallback callback) {
+        log.info("VaultSecretProvider subscribe({},{}) called", path, keys);
+        watcher.subscribe(path, keys, callback);
+    }
+
+    @Override
+    public void unsubscribe(String path, Set<String> keys, ConfigChangeCallback callback) {
+        log.info("VaultSecretProvider unsubscribe({},{}) called", path, keys);
+        watcher.unsubscribe(path, keys, callback);
+    }
+
+    @Override
+    public void unsubscribeAll() {
+        log.info("VaultSecretProvider unsubscribeAll() called");
+        watcher.unsubscribeAll();
     }
 
     @Override
     public void close() {
+        if (watcher != null) {
+            watcher.close();
+        }
+        if (shared != null) {
+            VaultRegistry.release(shared);
+            shared = null;
+        }
         log.info("VaultSecretProvider closed");
     }
 
     @Override
     public void configure(Map<String, ?> configs) {
         log.info("VaultSecretProvider is initializing");
-        URI uri = URI.create("<>");
+        if (shared != null) {
+            // configured again, the client of the previous configuration is released rather than leaked
+            close();
+        }
+        URI uri;
         String namespace;
 
         //Overwrite values if required
@@ -64,6 +158,7 @@ public class VaultSecretProvider implements ConfigProvider {
             }
             log.info("Got vault url from config : {}", uri);
         } else {
+            uri = URI.create("<>");
             log.warn("No url is provided in config. Default {} url will be used.", uri);
         }
         if (configs.containsKey("namespace")) {
@@ -73,15 +168,302 @@ public class VaultSecretProvider implements ConfigProvider {
             throw new VaultInitializationException("namespace is not provided for vault config, please add the namespace configuration");
         }
 
-        vault = new VaultBuilder()
-            .uri(uri)
-            .namespace(namespace)
-            .auth(configuredAuthMechanism(configs))
-            .build();
+        VaultConfig config = new VaultConfig(configs);
+        ttlPolicy = configuredTtlPolicy(config);
+        Supplier<VaultRegistry.Shared> factory = () -> configuredVault(config, configs, uri, namespace);
+        if (config.getBoolean("shared.enabled", true)) {
+            shared = VaultRegistry.acquire(VaultRegistry.Key.of(configs), factory);
+        } else {
+            log.info("The vault client of this provider is not shared with other providers");
+            shared = factory.get();
+        }
+        vault = shared.getProvider();
+        reader = shared.getReader();
+        try {
+            watcher = configuredWatcher(config, shared.getClient(), vault);
+        } catch (RuntimeException e) {
+            VaultRegistry.release(shared);
+            shared = null;
+            throw e;
+        }
         log.info("VaultSecretProvider initialized with Hashicorp vault at {} for {} namespace.", uri, namespace);
     }
 
-    private VaultAuth configuredAuthMechanism(Map<String, ?> configs) {
+    /**
+     * Builds the client and the cache or snapshot in front of it, which may be shared with other providers. Settings
+     * are validated before the http client is created, and what was built is closed if anything else fails.
+     */
+    private VaultRegistry.Shared configuredVault(VaultConfig config, Map<String, ?> configs, URI uri, String namespace) {
+        int maxInFlight = config.getInt("bulk.max.in.flight", AsyncLimiter.DEFAULT_MAX_IN_FLIGHT);
+        if (maxInFlight <= 0) {
+            throw new VaultInitializationException("bulk.max.in.flight must be positive when provided");
+        }
+        RetryPolicy retryPolicy = configuredRetryPolicy(config);
+        List<VaultEndpoint> endpoints = configuredEndpoints(config, uri);
+        CircuitBreaker circuitBreaker = endpoints == null ? configuredCircuitBreaker(config, uri) : null;
+        RetryableHttp http = configuredHttp(config);
+        VaultMetrics metrics = http.getMetrics();
+        Vault client = null;
+        SecretProvider provider = null;
+        try {
+            client = new VaultBuilder()
+                .uri(uri)
+                .namespace(namespace)
+                .auth(configuredAuthMechanism(configs, http.withPolicy(retryPolicy)))
+                .http(http)
+                .bulkLimiter(new AsyncLimiter(maxInFlight))
+                .retryPolicy(retryPolicy)
+                .circuitBreaker(circuitBreaker)
+                .endpoints(endpoints)
+                .healthCheckMillis(config.getLong("health.check.interval.ms", EndpointRouter.DEFAULT_HEALTH_CHECK_MS))
+                .build();
+            provider = configuredCache(config, client, namespace);
+            provider = configuredSnapshot(config, provider);
+            SecretProvider deadlineReader = configuredDeadline(config, provider);
+            if (config.getBoolean("metrics.jmx.enabled", true)) {
+                metrics.register(config.getString("metrics.name", namespace));
+            }
+            prefetch(config, client, provider);
+            return new VaultRegistry.Shared(client, provider, deadlineReader, metrics);
+        } catch (RuntimeException e) {
+            // the provider closes the client, which closes the http client
+            if (provider != null) {
+                provider.close();
+            } else if (client != null) {
+                client.close();
+            } else {
+                http.close();
+            }
+            metrics.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Lists the secrets under every prefix of {@code prefetch.paths} and reads them all in parallel, bounded by the
+     * bulk limiter, into the cache or snapshot of the provider. The first reads of the connectors are then served
+     * locally, instead of going to vault one after the other. Prefetching is best effort, secrets which can not be
+     * listed or read are read on first use as usual.
+     */
+    private void prefetch(VaultConfig config, Vault client, SecretProvider provider) {
+        String prefixes = config.getString("prefetch.paths", null);
+        if (prefixes == null || prefixes.isBlank()) {
+            return;
+        }
+        if (provider == client) {
+            log.warn("prefetch.paths is ignored, as secrets are neither cached nor kept in a snapshot");
+            return;
+        }
+        long start = System.nanoTime();
+        Map<String, CompletableFuture<List<String>>> listings = new LinkedHashMap<>();
+        for (String prefix : prefixes.split(",")) {
+            String folder = prefix.trim();
+            // accepts the prefixes as written in the references, e.g. /v1/kv/data/avinash/*
+            if (folder.endsWith("*")) {
+                folder = folder.substring(0, folder.length() - 1);
+            }
+            listings.put(folder, client.listSecretPathsAsync(folder));
+        }
+        Set<String> paths = new LinkedHashSet<>();
+        listings.forEach((folder, listing) -> {
+            try {
+                paths.addAll(Futures.join(listing));
+            } catch (VaultException e) {
+                log.warn("Can not list the secrets under {} to prefetch them : {}", folder, e.getMessage());
+            }
+        });
+        long failed = provider.getSecrets(paths).values().stream().filter(result -> !result.isSuccess()).count();
+        log.info("Prefetched {} secrets under {} in {} ms, {} of them failed", paths.size(), listings.keySet(),
+            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), failed);
+    }
+
+    /**
+     * @return the active node at the url and the standbys, null for the single node at the url
+     */
+    private List<VaultEndpoint> configuredEndpoints(VaultConfig config, URI uri) {
+        String standbyUrls = config.getString("standby.urls", null);
+        if (standbyUrls == null || standbyUrls.isBlank()) {
+            return null;
+        }
+        if (config.getLong("health.check.interval.ms", EndpointRouter.DEFAULT_HEALTH_CHECK_MS) <= 0) {
+            throw new VaultInitializationException("health.check.interval.ms must be positive when provided");
+        }
+        List<VaultEndpoint> endpoints = new ArrayList<>();
+        endpoints.add(VaultEndpoint.active(uri).withCircuitBreaker(configuredCircuitBreaker(config, uri)));
+        for (String url : standbyUrls.split(",")) {
+            URI standby;
+            try {
+                standby = new URI(url.trim());
+            } catch (URISyntaxException e) {
+                throw new VaultInitializationException("Standby URL provided for vault config is not a valid URI : " + url);
+            }
+            endpoints.add(VaultEndpoint.standby(standby).withCircuitBreaker(configuredCircuitBreaker(config, standby)));
+        }
+        log.info("Vault requests will be routed over {}", endpoints.stream().map(VaultEndpoint::getUri).collect(Collectors.toList()));
+        return endpoints;
+    }
+
+    private SecretProvider configuredDeadline(VaultConfig config, SecretProvider provider) {
+        if (!config.has("call.deadline.ms")) {
+            return provider;
+        }
+        long deadlineMs = config.getLong("call.deadline.ms", 0);
+        if (deadlineMs <= 0) {
+            throw new VaultInitializationException("call.deadline.ms must be positive when provided");
+        }
+        log.info("Vault secret reads will fail after {} ms, retries included", deadlineMs);
+        return provider.withDeadline(Duration.ofMillis(deadlineMs));
+    }
+
+    private RetryableHttp configuredHttp(VaultConfig config) {
+        HttpExecutorMode mode;
+        try {
+            mode = HttpExecutorMode.of(config.getString("http.executor", "pool"));
+        } catch (IllegalArgumentException e) {
+            throw new VaultInitializationException(e.getMessage());
+        }
+        int threads = config.getInt("http.executor.threads", Runtime.getRuntime().availableProcessors());
+        if (threads <= 0) {
+            throw new VaultInitializationException("http.executor.threads must be positive when provided");
+        }
+        HttpSettings settings;
+        try {
+            settings = HttpSettings.builder()
+                .version(config.has("http.version") ? HttpSettings.version(config.getString("http.version", null)) : null)
+                .connectTimeout(Duration.ofMillis(config.getLong("http.connect.timeout.ms",
+                    HttpSettings.DEFAULT_CONNECT_TIMEOUT.toMillis())))
+                .requestTimeout(Duration.ofMillis(config.getLong("http.request.timeout.ms",
+                    HttpSettings.DEFAULT_REQUEST_TIMEOUT.toMillis())))
+                .connectionPoolSize(config.has("http.connection.pool.size") ? config.getInt("http.connection.pool.size", 0) : null)
+                .keepAliveSeconds(config.has("http.keepalive.timeout.ms")
+                    ? Math.max(1, TimeUnit.MILLISECONDS.toSeconds(config.getLong("http.keepalive.timeout.ms", 0))) : null)
+                .build();
+        } catch (IllegalArgumentException e) {
+            throw new VaultInitializationException(e.getMessage());
+        }
+        log.info("Vault http client will run on a {} executor with {} threads and {}", mode, threads, settings);
+        return RetryableHttp.create(mode, threads, settings);
+    }
+
+    private RetryPolicy configuredRetryPolicy(VaultConfig config) {
+        RetryPolicy retryPolicy;
+        try {
+            retryPolicy = RetryPolicy.builder()
+                .maxRetries(config.getInt("retry.max.retries", RetryPolicy.DEFAULT_MAX_RETRIES))
+                .baseDelayMs(config.getLong("retry.base.delay.ms", RetryPolicy.DEFAULT_BASE_DELAY_MS))
+                .maxDelayMs(config.getLong("retry.max.delay.ms", RetryPolicy.DEFAULT_MAX_DELAY_MS))
+                .deadlineMs(config.getLong("retry.deadline.ms", RetryPolicy.DEFAULT_DEADLINE_MS))
+                .build();
+        } catch (IllegalArgumentException e) {
+            throw new VaultInitializationException(e.getMessage());
+        }
+        log.info("Vault requests will be retried as per {}", retryPolicy);
+        return retryPolicy;
+    }
+
+    private SecretProvider configuredSnapshot(VaultConfig config, SecretProvider provider) {
+        String snapshotPath = config.getString("snapshot.path", null);
+        if (snapshotPath == null) {
+            return provider;
+        }
+        SecretKey key;
+        if (config.has("snapshot.key.file")) {
+            key = SnapshotFile.keyFromFile(Path.of(config.getString("snapshot.key.file", null)));
+        } else if (config.has("snapshot.keystore.path")) {
+            key = SnapshotFile.keyFromKeyStore(Path.of(config.getString("snapshot.keystore.path", null)),
+                config.getString("snapshot.keystore.password", "").toCharArray(),
+                config.getString("snapshot.keystore.type", "PKCS12"),
+                config.getString("snapshot.key.alias", "vault-snapshot"));
+        } else {
+            throw new VaultInitializationException("snapshot.path requires the key to encrypt the snapshot with, " +
+                "either snapshot.key.file or snapshot.keystore.path");
+        }
+        long maxAgeMs = config.getLong("snapshot.max.age.ms", SnapshotSecretProvider.DEFAULT_MAX_AGE_MS);
+        if (maxAgeMs < 0) {
+            throw new VaultInitializationException("snapshot.max.age.ms can not be negative : " + maxAgeMs);
+        }
+        try {
+            SnapshotFile snapshot = SnapshotFile.open(Path.of(snapshotPath), key);
+            log.info("Secrets will be kept in the encrypted snapshot {}, served from it up to {} ms after vault confirmed them"
+                + " (0 for no limit)", snapshotPath, maxAgeMs);
+            return new SnapshotSecretProvider(provider, snapshot, maxAgeMs);
+        } catch (IOException e) {
+            throw new VaultInitializationException("Can not open the secret snapshot " + snapshotPath + " : " + e.getMessage());
+        }
+    }
+
+    private CircuitBreaker configuredCircuitBreaker(VaultConfig config, URI uri) {
+        if (!config.getBoolean("circuit.breaker.enabled", false)) {
+            log.info("Circuit breaker of vault is disabled");
+            return null;
+        }
+        int failureRatePercent = config.getInt("circuit.breaker.failure.rate.percent", (int) (CircuitBreaker.DEFAULT_FAILURE_RATE * 100));
+        int windowSize = config.getInt("circuit.breaker.window.size", CircuitBreaker.DEFAULT_WINDOW_SIZE);
+        int minimumCalls = config.getInt("circuit.breaker.minimum.calls", CircuitBreaker.DEFAULT_MINIMUM_CALLS);
+        long openMillis = config.getLong("circuit.breaker.open.ms", CircuitBreaker.DEFAULT_OPEN_MS);
+        try {
+            CircuitBreaker breaker = new CircuitBreaker(uri.toString(), failureRatePercent / 100.0, windowSize, minimumCalls, openMillis);
+            log.info("Circuit breaker of vault opens at {}% failures of the last {} calls, for {} ms", failureRatePercent,
+                windowSize, openMillis);
+            return breaker;
+        } catch (IllegalArgumentException e) {
+            throw new VaultInitializationException("circuit.breaker.* settings are invalid, the failure rate must be " +
+                "a percentage and the minimum calls at most the window size");
+        }
+    }
+
+    private SecretWatcher configuredWatcher(VaultConfig config, Vault client, SecretProvider provider) {
+        long intervalMs = config.getLong("watch.interval.ms", TimeUnit.MINUTES.toMillis(1));
+        int maxInFlight = config.getInt("watch.max.in.flight", AsyncLimiter.DEFAULT_MAX_IN_FLIGHT);
+        if (intervalMs <= 0 || maxInFlight <= 0) {
+            throw new VaultInitializationException("watch.interval.ms and watch.max.in.flight must be positive when provided");
+        }
+        // the watcher reads through the client, bypassing the cache, and evicts changed paths from it
+        return new SecretWatcher(client, provider::evict, intervalMs, maxInFlight);
+    }
+
+    private SecretTtlPolicy configuredTtlPolicy(VaultConfig config) {
+        Long defaultTtlMs = config.has("ttl.ms") ? config.getLong("ttl.ms", 0) : null;
+        if (defaultTtlMs != null && defaultTtlMs <= 0) {
+            throw new VaultInitializationException("ttl.ms must be positive when provided");
+        }
+        String patterns = config.getString("ttl.path.patterns", null);
+        if (defaultTtlMs != null || patterns != null) {
+            log.info("Secrets without a lease will be reloaded after {} ms, or as per the path patterns {}", defaultTtlMs, patterns);
+        }
+        return SecretTtlPolicy.of(defaultTtlMs, patterns);
+    }
+
+    private SecretProvider configuredCache(VaultConfig config, SecretProvider provider, String namespace) {
+        if (!config.has("cache.ttl.ms") && !config.has("cache.max.entries") && !config.has("stale.if.error.ms")) {
+            log.info("No cache.ttl.ms or cache.max.entries provided in config, secrets will not be cached");
+            return provider;
+        }
+        long ttlMillis = config.getLong("cache.ttl.ms", CachingSecretProvider.DEFAULT_TTL_MS);
+        int maxEntries = config.getInt("cache.max.entries", CachingSecretProvider.DEFAULT_MAX_ENTRIES);
+        long staleIfErrorMillis = config.getLong("stale.if.error.ms", 0);
+        if (ttlMillis <= 0 || maxEntries <= 0 || staleIfErrorMillis < 0) {
+            throw new VaultInitializationException("cache.ttl.ms and cache.max.entries must be positive and " +
+                "stale.if.error.ms not negative when provided");
+        }
+        log.info("Secrets will be cached for up to {} ms with at most {} entries, and served up to {} ms past expiry " +
+            "when vault fails", ttlMillis, maxEntries, staleIfErrorMillis);
+        return new CachingSecretProvider(provider, namespace, ttlMillis, maxEntries, staleIfErrorMillis, configuredSlabs(config));
+    }
+
+    private SecretSlabs configuredSlabs(VaultConfig config) {
+        if (!config.getBoolean("cache.offheap.enabled", false)) {
+            return null;
+        }
+        long maxBytes = config.getLong("cache.offheap.max.bytes", DEFAULT_OFF_HEAP_MAX_BYTES);
+        if (maxBytes < 1024) {
+            throw new VaultInitializationException("cache.offheap.max.bytes must be at least 1024 when provided");
+        }
+        log.info("Cached secret values will be kept off heap, in up to {} bytes", maxBytes);
+        return new SecretSlabs((int) Math.min(SecretSlabs.DEFAULT_SLAB_BYTES, Long.highestOneBit(maxBytes)), maxBytes);
+    }
+
+    private VaultAuth configuredAuthMechanism(Map<String, ?> configs, RetryableHttp http) {
         String authMechanism = null;
         if (configs.containsKey("auth.mechanism")) {
             authMechanism = (String) configs.get("auth.mechanism");
@@ -93,9 +475,9 @@ public class VaultSecretProvider implements ConfigProvider {
 
         switch (authMechanism) {
             case "TOKEN_AUTH":
-                return TokenAuth.configuredAuth(configs);
+                return TokenAuth.configuredAuth(configs, http);
             case "APP_ROLE_AUTH":
-                return AppRoleAuth.configuredAuth(configs);
+                return AppRoleAuth.configuredAuth(configs, http);
             default:
                 throw new VaultInitializationException("Invalid auth.mechanism provided. " +
                     "Valid values are TOKEN_AUTH & APP_ROLE_AUTH");
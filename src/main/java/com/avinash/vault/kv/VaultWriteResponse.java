@@ -0,0 +1,26 @@
+package com.avinash.vault.kv;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Response of a KV v2 write, which describes the version written, or the errors of a rejected write.
+ */
+@Data
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class VaultWriteResponse {
+    private String request_id;
+    private WrittenVersion data;
+    private List<String> errors;
+
+    @Data
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class WrittenVersion {
+        private long version;
+        private String created_time;
+        private String deletion_time;
+        private boolean destroyed;
+    }
+}
@@ -0,0 +1,48 @@
+package com.avinash.vault.kv;
+
+import com.avinash.vault.kv.exceptions.VaultException;
+
+/**
+ * The outcome of one write of a batch, either written or the reason it could not be. Writes merged into one request
+ * share its result.
+ */
+public final class WriteResult {
+
+    private static final WriteResult SUCCESS = new WriteResult(null);
+
+    private final RuntimeException error;
+
+    private WriteResult(RuntimeException error) {
+        this.error = error;
+    }
+
+    static WriteResult success() {
+        return SUCCESS;
+    }
+
+    static WriteResult failure(Throwable error) {
+        return new WriteResult(error instanceof RuntimeException
+            ? (RuntimeException) error
+            : new VaultException("Failed to write secret to vault"));
+    }
+
+    public boolean isSuccess() {
+        return error == null;
+    }
+
+    /**
+     * @return the reason the write failed, or null if it was written
+     */
+    public RuntimeException getError() {
+        return error;
+    }
+
+    /**
+     * @throws RuntimeException the reason the write failed
+     */
+    public void orElseThrow() {
+        if (error != null) {
+            throw error;
+        }
+    }
+}
@@ -4,30 +4,34 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.avinash.vault.kv.exceptions.VaultException;
 import com.avinash.vault.kv.exceptions.VaultInitializationException;
+import com.avinash.vault.kv.exceptions.VaultUnavailableException;
 import com.avinash.vault.kv.VaultResponse;
 import com.avinash.vault.kv.VaultResponse.Auth;
+import com.avinash.vault.kv.http.Futures;
 import com.avinash.vault.kv.http.JsonBodyHandler;
+import com.avinash.vault.kv.http.RetryableHttp;
+import com.avinash.vault.kv.metrics.VaultOperation;
 import lombok.extern.slf4j.Slf4j;
 
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
-import java.time.Duration;
-import java.time.Instant;
+import java.nio.charset.StandardCharsets;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import static com.avinash.vault.kv.http.RetryableHttp.httpClient;
 
 @Slf4j
-public class AppRoleAuth implements VaultAuth {
-    public static final Long TOKEN_REFRESH_THRESHOLD = 3600L; // 1 hour
+public class AppRoleAuth extends RenewableTokenAuth {
+    private static final JsonBodyHandler<VaultResponse> LOGIN_BODY_HANDLER = new JsonBodyHandler<>(VaultResponse.class);
     private final String namespace;
     private final String roleId;
     private final String secretId;
     private final URI vaultUri;
-    private String cachedToken;
-    private Long expiryAt;
+    private final RetryableHttp http;
+    // the login never changes, so it is built once and sent as is on every refresh
+    private volatile HttpRequest loginRequest;
 
     public AppRoleAuth(String roleId, String secretId) {
         //Defaulted to non-prod namespace
@@ -39,21 +43,35 @@ public class AppRoleAuth implements VaultAuth {
     }
 
     public AppRoleAuth(URI uri, String namespace, String roleId, String secretId) {
-        this.vaultUri = uri;
-        this.namespace = namespace;
-        this.roleId = roleId;
-        this.secretId = secretId;
+        this(uri, namespace, roleId, secretId, httpClient());
     }
 
     public AppRoleAuth(String uri, String namespace, String roleId, String secretId) {
-        this.vaultUri = URI.create(uri);
+        this(URI.create(uri), namespace, roleId, secretId);
+    }
+
+    public AppRoleAuth(URI uri, String namespace, String roleId, String secretId, RetryableHttp http) {
+        this(uri, namespace, roleId, secretId, http, DEFAULT_RENEW_FRACTION);
+    }
+
+    /**
+     * @param renewFraction the fraction of the lease of a token after which it is renewed in the background
+     */
+    public AppRoleAuth(URI uri, String namespace, String roleId, String secretId, RetryableHttp http, double renewFraction) {
+        super(uri, namespace, http, renewFraction);
+        this.vaultUri = uri;
         this.namespace = namespace;
         this.roleId = roleId;
         this.secretId = secretId;
+        this.http = http;
     }
 
     public static VaultAuth configuredAuth(Map<String, ?> configs) {
-        URI uri = URI.create("<>");
+        return configuredAuth(configs, httpClient());
+    }
+
+    public static VaultAuth configuredAuth(Map<String, ?> configs, RetryableHttp http) {
+        URI uri;
         String namespace;
         String roleId = null;
         String secretId = null;
@@ -68,6 +86,7 @@ public class AppRoleAuth implements VaultAuth {
             }
             log.info("Got vault url from config : {}", uri);
         } else {
+            uri = URI.create("<>");
             log.warn("No url is provided in config. Default {} url will be used.", uri);
         }
         if (configs.containsKey("namespace")) {
@@ -79,7 +98,6 @@ public class AppRoleAuth implements VaultAuth {
         }
 
         if (configs.containsKey("role.id")) {
-            //roleId = EncryptionUtil.decrypt((String) configs.get("role.id")); //TODO This has to be in working state
             roleId = (String) configs.get("role.id");
             log.info("Got app role id from config : ******");
         }
@@ -99,47 +117,61 @@ public class AppRoleAuth implements VaultAuth {
                     " secret.id can be set in worker config against config.providers.vault.param.secret.id");
         }
 
-        return new AppRoleAuth(uri, namespace, roleId, secretId);
-    }
-
-    @Override
-    public String getToken() {
-        if (cachedToken == null || tokenIsExpired()) {
-            refreshToken();
-        }
-        return cachedToken;
-    }
-
-    private boolean tokenIsExpired() {
-        return expiryAt < Instant.now().getEpochSecond();
+        return new AppRoleAuth(uri, namespace, roleId, secretId, http, configuredRenewFraction(configs));
     }
 
     /**
      * We use an app role id and secret id to get a new service token for vault access. This token is valid for
-     * 32 days by default. We set the expiry of token to be 1 hour before actual expiry to have enough time to refresh
-     * it, before it actually expires during usage once returned.
+     * 32 days by default. It is renewed with renew-self in the background once {@code renewFraction} of its lease has
+     * passed, up to its max ttl, and it is not handed out any more shortly before it expires (at most 1 hour before),
+     * so that it does not expire during usage once returned. A token without a lease never expires, it is kept for
+     * good and never renewed.
      */
     @Override
-    public void refreshToken() {
-        ObjectNode rootNode = new ObjectMapper().createObjectNode();
-        rootNode.put("role_id", roleId);
-        rootNode.put("secret_id", secretId);
-
-        HttpRequest request = HttpRequest.newBuilder(fullUri("/v1/auth/approle/login"))
-                .header("X-Vault-Namespace", namespace)
-                .POST(HttpRequest.BodyPublishers.ofString(rootNode.toString()))
-                .timeout(Duration.ofSeconds(10))
-                .build();
+    CompletableFuture<TokenHolder> login() {
+        HttpRequest request;
         try {
-            HttpResponse<VaultResponse> response = httpClient().withRetries(3).send(request, new JsonBodyHandler<>(VaultResponse.class));
+            request = loginRequest();
+        } catch (VaultException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return http.getMetrics().timed(VaultOperation.LOGIN, () -> http.sendAsync(request, LOGIN_BODY_HANDLER))
+                .handle((response, e) -> {
+                    if (e != null && Futures.unwrap(e) instanceof VaultUnavailableException) {
+                        throw (VaultUnavailableException) Futures.unwrap(e);
+                    }
+                    if (e != null || response.statusCode() / 100 == 5 || response.statusCode() == 429) { //ignore e, as printing it might reveal secrets in logs
+                        throw new VaultUnavailableException("Failed to refresh token for Hashcorp vault at " + vaultUri);
+                    }
+                    if (response.body() == null || response.body().getAuth() == null) {
+                        throw new VaultException("Failed to refresh token for Hashcorp vault at " + vaultUri);
+                    }
+                    Auth auth = response.body().getAuth();
+                    log.info("Refreshed vault token successfully!");
+                    long lease = auth.getLease_duration() == null ? 0 : auth.getLease_duration();
+                    // vault grants a lease of 0 to tokens without a ttl, e.g. of a role without token_ttl and max ttl
+                    if (lease == 0) {
+                        return TokenHolder.nonExpiring(auth.getClient_token());
+                    }
+                    return new TokenHolder(auth.getClient_token(), System.currentTimeMillis(), lease,
+                        TOKEN_REFRESH_THRESHOLD, Boolean.TRUE.equals(auth.getRenewable()));
+                });
+    }
 
-            Auth auth = response.body().getAuth();
-            expiryAt = Instant.now().getEpochSecond() + auth.getLease_duration() - TOKEN_REFRESH_THRESHOLD;
-            cachedToken = auth.getClient_token();
-        } catch (Exception e) { //ignore e, as printing it might reveal secrets in logs
-            throw new VaultException("Failed to refresh token for Hashcorp vault at " + vaultUri);
+    private HttpRequest loginRequest() {
+        HttpRequest request = loginRequest;
+        if (request == null) {
+            ObjectNode rootNode = new ObjectMapper().createObjectNode();
+            rootNode.put("role_id", roleId);
+            rootNode.put("secret_id", secretId);
+            request = HttpRequest.newBuilder(fullUri("/v1/auth/approle/login"))
+                    .header("X-Vault-Namespace", namespace)
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(rootNode.toString().getBytes(StandardCharsets.UTF_8)))
+                    .timeout(http.getRequestTimeout())
+                    .build();
+            loginRequest = request;
         }
-        log.info("Refreshed vault token successfully!");
+        return request;
     }
 
     private URI fullUri(String path) {
@@ -0,0 +1,231 @@
+package com.avinash.vault.kv.auth;
+
+import com.avinash.vault.kv.VaultResponse.Auth;
+import com.avinash.vault.kv.exceptions.VaultInitializationException;
+import com.avinash.vault.kv.http.Futures;
+import com.avinash.vault.kv.http.RetryableHttp;
+import com.avinash.vault.kv.metrics.VaultMetrics;
+import lombok.extern.slf4j.Slf4j;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Keeps a vault token alive in the background. Once {@code renewFraction} of its lease has passed, the token is
+ * renewed with {@code renew-self}, which only extends the existing lease. A full {@link #login()} is only done when
+ * the token is not renewable, the renewal fails, or vault capped the renewal because the token reached its max ttl.
+ */
+@Slf4j
+public abstract class RenewableTokenAuth implements VaultAuth {
+    public static final Long TOKEN_REFRESH_THRESHOLD = 3600L; // 1 hour
+    public static final double DEFAULT_RENEW_FRACTION = 0.75;
+    // renewals are short and rare, one thread serves every auth in the process
+    static final ScheduledExecutorService RENEWER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "vault-token-renewer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final TokenOperations tokens;
+    private final VaultMetrics metrics;
+    private final double renewFraction;
+    private final AtomicReference<TokenHolder> current = new AtomicReference<>();
+    // the login or renewal in flight, if any, shared by every caller needing a token meanwhile
+    private final AtomicReference<CompletableFuture<TokenHolder>> inFlight = new AtomicReference<>();
+    private volatile ScheduledFuture<?> renewal;
+    private volatile boolean closed;
+
+    /**
+     * @param renewFraction the fraction of the lease of a token after which it is renewed in the background
+     */
+    protected RenewableTokenAuth(URI vaultUri, String namespace, RetryableHttp http, double renewFraction) {
+        if (!(renewFraction > 0 && renewFraction < 1)) {
+            throw new IllegalArgumentException("Token renew fraction must be between 0 and 1 : " + renewFraction);
+        }
+        this.tokens = new TokenOperations(vaultUri, namespace, http);
+        this.metrics = http.getMetrics();
+        this.renewFraction = renewFraction;
+    }
+
+    /**
+     * @return the {@code token.renew.fraction} of the configs, {@link #DEFAULT_RENEW_FRACTION} if it is not set
+     * @throws VaultInitializationException if it is not a number between 0 and 1
+     */
+    static double configuredRenewFraction(Map<String, ?> configs) {
+        if (!configs.containsKey("token.renew.fraction")) {
+            return DEFAULT_RENEW_FRACTION;
+        }
+        String fraction = String.valueOf(configs.get("token.renew.fraction"));
+        double renewFraction;
+        try {
+            renewFraction = Double.parseDouble(fraction);
+        } catch (NumberFormatException e) {
+            renewFraction = -1;
+        }
+        if (!(renewFraction > 0 && renewFraction < 1)) {
+            throw new VaultInitializationException("token.renew.fraction must be a number between 0 and 1 : " + fraction);
+        }
+        log.info("Got token renew fraction from config : {}", renewFraction);
+        return renewFraction;
+    }
+
+    /**
+     * Gets a new token from vault, without blocking the calling thread.
+     */
+    abstract CompletableFuture<TokenHolder> login();
+
+    /**
+     * @return whether {@link #login()} gets a fresh token, rather than describing the one there is
+     */
+    boolean canLogin() {
+        return true;
+    }
+
+    /**
+     * Never blocks while a usable token exists, the token is renewed in the background before it expires.
+     */
+    @Override
+    public String getToken() {
+        TokenHolder holder = current.get();
+        if (holder != null && holder.isUsable(System.currentTimeMillis())) {
+            return holder.getToken();
+        }
+        return Futures.join(acquire(this::login)).getToken();
+    }
+
+    @Override
+    public CompletableFuture<String> getTokenAsync() {
+        TokenHolder holder = current.get();
+        if (holder != null && holder.isUsable(System.currentTimeMillis())) {
+            return CompletableFuture.completedFuture(holder.getToken());
+        }
+        return acquire(this::login).thenApply(TokenHolder::getToken);
+    }
+
+    /**
+     * Renews the current token if it is renewable, logs in otherwise.
+     */
+    @Override
+    public void refreshToken() {
+        Futures.join(acquire(this::renewOrLogin));
+    }
+
+    /**
+     * @return what vault knows about the current token, e.g. its remaining ttl
+     */
+    public CompletableFuture<TokenLookupResponse.TokenData> lookupSelf() {
+        return getTokenAsync().thenCompose(tokens::lookupSelf);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        ScheduledFuture<?> scheduled = renewal;
+        if (scheduled != null) {
+            scheduled.cancel(false);
+        }
+    }
+
+    TokenOperations tokens() {
+        return tokens;
+    }
+
+    TokenHolder current() {
+        return current.get();
+    }
+
+    /**
+     * Runs the action, unless a login or renewal is already in flight, in which case its outcome is shared.
+     */
+    CompletableFuture<TokenHolder> acquire(Supplier<CompletableFuture<TokenHolder>> action) {
+        while (true) {
+            CompletableFuture<TokenHolder> running = inFlight.get();
+            if (running != null) {
+                return running.copy();
+            }
+            CompletableFuture<TokenHolder> mine = new CompletableFuture<>();
+            if (inFlight.compareAndSet(null, mine)) {
+                CompletableFuture<TokenHolder> result;
+                try {
+                    result = action.get();
+                } catch (RuntimeException e) {
+                    result = CompletableFuture.failedFuture(e);
+                }
+                result.whenComplete((holder, e) -> {
+                    if (holder != null) {
+                        current.set(holder);
+                        metrics.recordTokenExpiry(holder.isExpiring() ? holder.getExpiresAtMillis() : -1);
+                        scheduleRenewal(holder);
+                    }
+                    inFlight.set(null);
+                    if (e != null) {
+                        mine.completeExceptionally(Futures.unwrap(e));
+                    } else {
+                        mine.complete(holder);
+                    }
+                });
+                return mine.copy();
+            }
+        }
+    }
+
+    private CompletableFuture<TokenHolder> renewOrLogin() {
+        TokenHolder holder = current.get();
+        if (holder == null || !holder.isRenewable() || !holder.isUsable(System.currentTimeMillis())) {
+            return login();
+        }
+        long requested = holder.getLeaseSeconds();
+        return tokens.renewSelf(holder.getToken(), requested)
+            .thenApply(auth -> renewed(holder.getToken(), requested, auth))
+            .handle((renewed, e) -> {
+                if (e == null) {
+                    return CompletableFuture.completedFuture(renewed);
+                }
+                log.warn("Failed to renew vault token, logging in again : {}", Futures.unwrap(e).getMessage());
+                return login();
+            })
+            .thenCompose(future -> future);
+    }
+
+    private static TokenHolder renewed(String token, long requested, Auth auth) {
+        long lease = auth.getLease_duration() == null ? 0 : auth.getLease_duration();
+        // vault caps the renewal at the max ttl, a shorter lease means the next renewal has to be a login
+        boolean renewable = Boolean.TRUE.equals(auth.getRenewable()) && lease >= requested;
+        if (!renewable) {
+            log.info("Vault token reached its max ttl, it will be replaced in {} seconds", lease);
+        } else {
+            log.info("Renewed vault token successfully!");
+        }
+        return new TokenHolder(token, System.currentTimeMillis(), lease, TOKEN_REFRESH_THRESHOLD, renewable);
+    }
+
+    private void scheduleRenewal(TokenHolder holder) {
+        if (closed || !holder.isExpiring() || !(holder.isRenewable() || canLogin())) {
+            return;
+        }
+        long delay = Math.max(0, holder.renewAtMillis(renewFraction) - System.currentTimeMillis());
+        renewal = RENEWER.schedule(this::renew, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void renew() {
+        acquire(this::renewOrLogin).whenComplete((holder, e) -> {
+            if (e != null) {
+                // keep serving the current token while it is usable and try again in a while
+                TokenHolder holding = current.get();
+                long remaining = holding == null ? 0 : holding.getExpiresAtMillis() - System.currentTimeMillis();
+                long retryIn = Math.max(1_000, Math.min(TimeUnit.MINUTES.toMillis(1), remaining / 2));
+                log.warn("Failed to renew vault token in the background, retrying in {} ms", retryIn);
+                if (!closed) {
+                    renewal = RENEWER.schedule(this::renew, retryIn, TimeUnit.MILLISECONDS);
+                }
+            }
+        });
+    }
+}
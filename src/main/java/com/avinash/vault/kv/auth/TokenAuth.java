@@ -1,18 +1,74 @@
 package com.avinash.vault.kv.auth;
 
 import com.avinash.vault.kv.exceptions.VaultInitializationException;
-import lombok.AllArgsConstructor;
+import com.avinash.vault.kv.http.Futures;
+import com.avinash.vault.kv.http.RetryableHttp;
 import lombok.extern.slf4j.Slf4j;
 
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
+import static com.avinash.vault.kv.http.RetryableHttp.httpClient;
+
+/**
+ * Authenticates with a token given up front. When the vault is known, the real ttl of the token is looked up with
+ * lookup-self and a renewable token is kept alive with renew-self. A token can not log in again, so once it reached its
+ * max ttl it is used as is until it expires.
+ */
 @Slf4j
-@AllArgsConstructor
-public class TokenAuth implements VaultAuth {
+public class TokenAuth extends RenewableTokenAuth {
+
+    private final String token;
+    private final boolean lookup;
+
+    /**
+     * A token used as is, which is never looked up nor renewed.
+     */
+    public TokenAuth(String token) {
+        super(URI.create(""), "", httpClient(), DEFAULT_RENEW_FRACTION);
+        this.token = token;
+        this.lookup = false;
+    }
 
-    private String token;
+    public TokenAuth(String token, URI uri, String namespace, RetryableHttp http) {
+        this(token, uri, namespace, http, DEFAULT_RENEW_FRACTION);
+    }
+
+    /**
+     * @param renewFraction the fraction of the ttl of the token after which it is renewed in the background
+     */
+    public TokenAuth(String token, URI uri, String namespace, RetryableHttp http, double renewFraction) {
+        super(uri, namespace, http, renewFraction);
+        this.token = token;
+        this.lookup = true;
+        // the token is usable right away, its ttl is learnt in the background
+        acquire(this::login);
+    }
 
     public static VaultAuth configuredAuth(Map<String, ?> configs) {
+        return new TokenAuth(configuredToken(configs));
+    }
+
+    public static VaultAuth configuredAuth(Map<String, ?> configs, RetryableHttp http) {
+        String token = configuredToken(configs);
+        if (!configs.containsKey("url") || !configs.containsKey("namespace")) {
+            log.warn("No url or namespace is provided in config. Vault token will not be looked up nor renewed.");
+            return new TokenAuth(token);
+        }
+        String url = (String) configs.get("url");
+        URI uri;
+        try {
+            uri = new URI(url);
+        } catch (URISyntaxException e) {
+            throw new VaultInitializationException("URL provided for vault config is not a valid URI : " + url);
+        }
+        return new TokenAuth(token, uri, (String) configs.get("namespace"), http, configuredRenewFraction(configs));
+    }
+
+    private static String configuredToken(Map<String, ?> configs) {
         String token = null;
         if (configs.containsKey("token")) {
             token = (String) configs.get("token");
@@ -22,11 +78,51 @@ public class TokenAuth implements VaultAuth {
             throw new VaultInitializationException("Vault token must be supplied." +
                 " Token can be set in worker config against config.providers.vault.param.token");
         }
-        return new TokenAuth(token);
+        return token;
     }
 
+    /**
+     * The token is the only one there is, so it is handed out even when vault reports it as expired.
+     */
     @Override
     public String getToken() {
-        return token;
+        TokenHolder holder = current();
+        return holder == null ? token : holder.getToken();
+    }
+
+    @Override
+    public CompletableFuture<String> getTokenAsync() {
+        return CompletableFuture.completedFuture(getToken());
+    }
+
+    /**
+     * Looks up the ttl of the token, a token without a ttl (e.g. a root token) never expires. The lease of the token
+     * is its creation ttl, counted from when it was created, so that renewals extend it by as much as it was first
+     * issued for rather than by whatever was left of it.
+     */
+    @Override
+    CompletableFuture<TokenHolder> login() {
+        if (!lookup) {
+            return CompletableFuture.completedFuture(TokenHolder.nonExpiring(token));
+        }
+        return tokens().lookupSelf(token)
+            .handle((data, e) -> {
+                if (e != null) {
+                    log.warn("Failed to look up vault token, it will be used without renewal : {}", Futures.unwrap(e).getMessage());
+                    return TokenHolder.nonExpiring(token);
+                }
+                if (data.getTtl() <= 0) {
+                    return TokenHolder.nonExpiring(token);
+                }
+                log.info("Vault token expires in {} seconds, renewable : {}", data.getTtl(), data.isRenewable());
+                long lease = Math.max(data.getTtl(), data.getCreation_ttl());
+                long createdAt = System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(lease - data.getTtl());
+                return new TokenHolder(token, createdAt, lease, TOKEN_REFRESH_THRESHOLD, data.isRenewable());
+            });
+    }
+
+    @Override
+    boolean canLogin() {
+        return false;
     }
 }
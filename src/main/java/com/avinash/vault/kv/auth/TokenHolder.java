@@ -0,0 +1,64 @@
+package com.avinash.vault.kv.auth;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An immutable snapshot of a vault token and its lease, swapped atomically as a whole when the token is renewed.
+ */
+final class TokenHolder {
+
+    private final String token;
+    private final long issuedAtMillis;
+    private final long leaseSeconds;
+    private final long expiresAtMillis;
+    // the token is not handed out any more this long before it expires, so that it does not expire while in use
+    private final long marginMillis;
+    private final boolean renewable;
+
+    TokenHolder(String token, long issuedAtMillis, long leaseSeconds, long maxMarginSeconds, boolean renewable) {
+        this.token = token;
+        this.issuedAtMillis = issuedAtMillis;
+        this.leaseSeconds = leaseSeconds;
+        this.expiresAtMillis = issuedAtMillis + TimeUnit.SECONDS.toMillis(leaseSeconds);
+        this.marginMillis = TimeUnit.SECONDS.toMillis(Math.min(maxMarginSeconds, leaseSeconds / 10));
+        this.renewable = renewable;
+    }
+
+    /**
+     * @return a holder for a token without a ttl, e.g. a root token, which is never renewed
+     */
+    static TokenHolder nonExpiring(String token) {
+        return new TokenHolder(token, 0, TimeUnit.MILLISECONDS.toSeconds(Long.MAX_VALUE / 2), 0, false);
+    }
+
+    String getToken() {
+        return token;
+    }
+
+    long getLeaseSeconds() {
+        return leaseSeconds;
+    }
+
+    long getExpiresAtMillis() {
+        return expiresAtMillis;
+    }
+
+    boolean isRenewable() {
+        return renewable;
+    }
+
+    boolean isExpiring() {
+        return expiresAtMillis < Long.MAX_VALUE / 4;
+    }
+
+    boolean isUsable(long nowMillis) {
+        return nowMillis < expiresAtMillis - marginMillis;
+    }
+
+    /**
+     * @return when the token should be renewed, after the given fraction of its lease has passed
+     */
+    long renewAtMillis(double fraction) {
+        return issuedAtMillis + (long) ((expiresAtMillis - issuedAtMillis) * fraction);
+    }
+}
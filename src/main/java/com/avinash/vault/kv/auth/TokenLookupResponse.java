@@ -0,0 +1,26 @@
+package com.avinash.vault.kv.auth;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import lombok.Data;
+
+/**
+ * Response of {@code /v1/auth/token/lookup-self}, which describes the token used to call it.
+ */
+@Data
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class TokenLookupResponse {
+    private String request_id;
+    private TokenData data;
+
+    @Data
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class TokenData {
+        private String accessor;
+        private long creation_ttl;
+        private long ttl;
+        private long explicit_max_ttl;
+        private String expire_time;
+        private boolean renewable;
+        private String type;
+    }
+}
@@ -0,0 +1,86 @@
+package com.avinash.vault.kv.auth;
+
+import com.avinash.vault.kv.VaultResponse;
+import com.avinash.vault.kv.exceptions.VaultException;
+import com.avinash.vault.kv.http.JsonBodyHandler;
+import com.avinash.vault.kv.http.RetryableHttp;
+import com.avinash.vault.kv.metrics.VaultOperation;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.http.HttpRequest;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The token self service endpoints of vault, which every token may call on itself.
+ */
+class TokenOperations {
+
+    private static final JsonBodyHandler<VaultResponse> RENEW_BODY_HANDLER = new JsonBodyHandler<>(VaultResponse.class);
+    private static final JsonBodyHandler<TokenLookupResponse> LOOKUP_BODY_HANDLER = new JsonBodyHandler<>(TokenLookupResponse.class);
+
+    private final String vaultUri;
+    private final String namespace;
+    private final RetryableHttp http;
+
+    TokenOperations(URI vaultUri, String namespace, RetryableHttp http) {
+        this.vaultUri = vaultUri.toString();
+        this.namespace = namespace;
+        this.http = http;
+    }
+
+    /**
+     * Extends the lease of the token, which is much cheaper than a login as no new token and lease are created.
+     * Vault caps the new lease at the max ttl of the token.
+     *
+     * @return the renewed lease in the auth block of the response
+     */
+    CompletableFuture<VaultResponse.Auth> renewSelf(String token, long incrementSeconds) {
+        URI renewSelfUri;
+        try {
+            renewSelfUri = new URI(vaultUri + "/v1/auth/token/renew-self");
+        } catch (URISyntaxException e) {
+            return CompletableFuture.failedFuture(new VaultException("Can not form a proper uri to renew a token at " + vaultUri, e));
+        }
+        HttpRequest request = HttpRequest.newBuilder(renewSelfUri)
+            .header("X-Vault-Token", token)
+            .header("X-Vault-Namespace", namespace)
+            .POST(HttpRequest.BodyPublishers.ofByteArray(
+                ("{\"increment\":\"" + incrementSeconds + "s\"}").getBytes(StandardCharsets.UTF_8)))
+            .timeout(http.getRequestTimeout())
+            .build();
+        return http.getMetrics().timed(VaultOperation.RENEW_TOKEN, () -> http.sendAsync(request, RENEW_BODY_HANDLER))
+            .handle((response, e) -> {
+                if (e != null || response.statusCode() != 200 || response.body() == null || response.body().getAuth() == null) { //ignore e, as printing it might reveal secrets in logs
+                    throw new VaultException("Failed to renew token for Hashcorp vault at " + vaultUri);
+                }
+                return response.body().getAuth();
+            });
+    }
+
+    /**
+     * @return the remaining ttl and renewability of the token
+     */
+    CompletableFuture<TokenLookupResponse.TokenData> lookupSelf(String token) {
+        URI lookupSelfUri;
+        try {
+            lookupSelfUri = new URI(vaultUri + "/v1/auth/token/lookup-self");
+        } catch (URISyntaxException e) {
+            return CompletableFuture.failedFuture(new VaultException("Can not form a proper uri to look up a token at " + vaultUri, e));
+        }
+        HttpRequest request = HttpRequest.newBuilder(lookupSelfUri)
+            .header("X-Vault-Token", token)
+            .header("X-Vault-Namespace", namespace)
+            .GET()
+            .timeout(http.getRequestTimeout())
+            .build();
+        return http.getMetrics().timed(VaultOperation.LOOKUP_TOKEN, () -> http.sendAsync(request, LOOKUP_BODY_HANDLER))
+            .handle((response, e) -> {
+                if (e != null || response.statusCode() != 200 || response.body() == null || response.body().getData() == null) {
+                    throw new VaultException("Failed to look up token for Hashcorp vault at " + vaultUri);
+                }
+                return response.body().getData();
+            });
+    }
+}
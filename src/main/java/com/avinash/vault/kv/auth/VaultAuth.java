@@ -1,8 +1,25 @@
 package com.avinash.vault.kv.auth;
 
-public interface VaultAuth {
+import java.util.concurrent.CompletableFuture;
+
+public interface VaultAuth extends AutoCloseable {
     String getToken();
 
+    /**
+     * Non blocking variant of {@link #getToken()}, implementations which have to log in to get a token should do so
+     * without blocking the calling thread.
+     */
+    default CompletableFuture<String> getTokenAsync() {
+        return CompletableFuture.completedFuture(getToken());
+    }
+
     default void refreshToken() {
     }
+
+    /**
+     * Stops any background work of the auth, e.g. scheduled token renewals.
+     */
+    @Override
+    default void close() {
+    }
 }
@@ -0,0 +1,13 @@
+package com.avinash.vault.kv.exceptions;
+
+/**
+ * Raised when a check-and-set write is rejected, as the secret is no longer at the version the writer expected, i.e.
+ * someone else wrote it in between. The writer should read the secret again and retry the write on top of it.
+ */
+public class CasConflictException extends VaultException {
+    private static final long serialVersionUID = 1L;
+
+    public CasConflictException(String msg) {
+        super(msg);
+    }
+}
@@ -0,0 +1,12 @@
+package com.avinash.vault.kv.exceptions;
+
+/**
+ * Raised without calling vault while its circuit breaker is open.
+ */
+public class CircuitOpenException extends VaultUnavailableException {
+    private static final long serialVersionUID = 1L;
+
+    public CircuitOpenException(String msg) {
+        super(msg);
+    }
+}
@@ -0,0 +1,12 @@
+package com.avinash.vault.kv.exceptions;
+
+/**
+ * Raised when vault did not answer within the deadline of the call, retries included.
+ */
+public class DeadlineExceededException extends VaultUnavailableException {
+    private static final long serialVersionUID = 1L;
+
+    public DeadlineExceededException(String msg) {
+        super(msg);
+    }
+}
@@ -0,0 +1,13 @@
+package com.avinash.vault.kv.exceptions;
+
+/**
+ * Raised when vault could not serve the call, e.g. it could not be reached, answered {@code 5xx} or {@code 429}, its
+ * circuit breaker is open or it missed the deadline, as opposed to vault refusing the call, e.g. with {@code 403}.
+ */
+public class VaultUnavailableException extends VaultException {
+    private static final long serialVersionUID = 1L;
+
+    public VaultUnavailableException(String msg) {
+        super(msg);
+    }
+}
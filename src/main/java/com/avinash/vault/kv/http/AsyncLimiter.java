@@ -0,0 +1,86 @@
+package com.avinash.vault.kv.http;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Bounds the number of asynchronous calls in flight. Calls submitted beyond the limit are queued and started, in
+ * submission order, as soon as a running call completes. No thread is blocked while waiting for a free slot.
+ */
+public class AsyncLimiter {
+
+    public static final int DEFAULT_MAX_IN_FLIGHT = 16;
+
+    private final int maxInFlight;
+    // calls completing synchronously would otherwise start the next call from within the completion, recursively
+    private final ThreadLocal<Boolean> draining = ThreadLocal.withInitial(() -> false);
+    private final Queue<Runnable> waiting = new ArrayDeque<>();
+    private int running;
+
+    public AsyncLimiter(int maxInFlight) {
+        if (maxInFlight <= 0) {
+            throw new IllegalArgumentException("Max in flight must be positive");
+        }
+        this.maxInFlight = maxInFlight;
+    }
+
+    public <T> CompletableFuture<T> submit(Supplier<CompletableFuture<T>> call) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Runnable start = () -> {
+            CompletableFuture<T> started;
+            try {
+                started = call.get();
+            } catch (RuntimeException | Error e) {
+                started = CompletableFuture.failedFuture(e);
+            }
+            started.whenComplete((value, e) -> {
+                synchronized (this) {
+                    running--;
+                }
+                drain();
+                if (e != null) {
+                    result.completeExceptionally(Futures.unwrap(e));
+                } else {
+                    result.complete(value);
+                }
+            });
+        };
+        synchronized (this) {
+            waiting.add(start);
+        }
+        drain();
+        return result;
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    public synchronized int inFlight() {
+        return running;
+    }
+
+    private void drain() {
+        if (draining.get()) {
+            return;
+        }
+        draining.set(true);
+        try {
+            while (true) {
+                Runnable next;
+                synchronized (this) {
+                    if (running >= maxInFlight || waiting.isEmpty()) {
+                        return;
+                    }
+                    running++;
+                    next = waiting.poll();
+                }
+                next.run();
+            }
+        } finally {
+            draining.set(false);
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.avinash.vault.kv.http;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fails calls to an endpoint fast while it is failing, instead of letting every caller wait for the timeout and the
+ * retries of its own call.
+ * <p>
+ * The outcomes of the last {@code windowSize} calls are kept. Once at least {@code minimumCalls} of them are known and
+ * the failure rate reaches the threshold, the breaker opens and refuses calls. After {@code openMillis} it lets a single
+ * probe through (half open), which closes the breaker on success and opens it again on failure.
+ */
+@Slf4j
+public final class CircuitBreaker {
+
+    public static final double DEFAULT_FAILURE_RATE = 0.5;
+    public static final int DEFAULT_WINDOW_SIZE = 20;
+    public static final int DEFAULT_MINIMUM_CALLS = 10;
+    public static final long DEFAULT_OPEN_MS = TimeUnit.SECONDS.toMillis(30);
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    @FunctionalInterface
+    public interface Listener {
+        void onStateChange(String endpoint, State from, State to);
+    }
+
+    private final String endpoint;
+    private final double failureRate;
+    private final int minimumCalls;
+    private final long openNanos;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    // guarded by this
+    private final boolean[] failed;
+    private int next;
+    private int calls;
+    private int failures;
+    private State state = State.CLOSED;
+    private long openedAt;
+    private boolean probing;
+
+    public CircuitBreaker(String endpoint) {
+        this(endpoint, DEFAULT_FAILURE_RATE, DEFAULT_WINDOW_SIZE, DEFAULT_MINIMUM_CALLS, DEFAULT_OPEN_MS);
+    }
+
+    /**
+     * @param endpoint     names the endpoint in logs and to listeners
+     * @param failureRate  the fraction of failed calls in the window which opens the breaker
+     * @param windowSize   the number of most recent calls the failure rate is computed over
+     * @param minimumCalls the calls needed in the window before the failure rate is considered
+     * @param openMillis   how long the breaker stays open before a probe is let through
+     */
+    public CircuitBreaker(String endpoint, double failureRate, int windowSize, int minimumCalls, long openMillis) {
+        if (!(failureRate > 0 && failureRate <= 1) || windowSize <= 0 || minimumCalls <= 0 || minimumCalls > windowSize
+            || openMillis <= 0) {
+            throw new IllegalArgumentException("Invalid circuit breaker settings for " + endpoint);
+        }
+        this.endpoint = endpoint;
+        this.failureRate = failureRate;
+        this.minimumCalls = minimumCalls;
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+        this.failed = new boolean[windowSize];
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * @return whether the call may go ahead, in which case its outcome must be reported with {@link #onSuccess()} or
+     * {@link #onFailure()}
+     */
+    public boolean tryAcquire() {
+        State from;
+        synchronized (this) {
+            if (state == State.CLOSED) {
+                return true;
+            }
+            if (state == State.OPEN) {
+                if (System.nanoTime() - openedAt < openNanos) {
+                    return false;
+                }
+                from = state;
+                state = State.HALF_OPEN;
+                probing = false;
+            } else {
+                from = null;
+            }
+            if (probing) {
+                return false;
+            }
+            probing = true;
+        }
+        if (from != null) {
+            notifyListeners(from, State.HALF_OPEN);
+        }
+        return true;
+    }
+
+    public void onSuccess() {
+        State from;
+        synchronized (this) {
+            if (state != State.HALF_OPEN) {
+                record(false);
+                return;
+            }
+            from = state;
+            state = State.CLOSED;
+            reset();
+        }
+        notifyListeners(from, State.CLOSED);
+    }
+
+    public void onFailure() {
+        State from;
+        synchronized (this) {
+            if (state == State.CLOSED) {
+                record(true);
+                if (calls < minimumCalls || failures < failureRate * calls) {
+                    return;
+                }
+            } else if (state == State.OPEN) {
+                return;
+            }
+            from = state;
+            state = State.OPEN;
+            openedAt = System.nanoTime();
+            reset();
+        }
+        notifyListeners(from, State.OPEN);
+    }
+
+    private void record(boolean failure) {
+        if (calls == failed.length) {
+            if (failed[next]) {
+                failures--;
+            }
+        } else {
+            calls++;
+        }
+        failed[next] = failure;
+        if (failure) {
+            failures++;
+        }
+        next = (next + 1) % failed.length;
+    }
+
+    private void reset() {
+        next = 0;
+        calls = 0;
+        failures = 0;
+        probing = false;
+    }
+
+    private void notifyListeners(State from, State to) {
+        if (to == State.OPEN) {
+            log.warn("Circuit breaker of vault at {} went from {} to {}, calls fail fast for {} ms", endpoint, from, to,
+                TimeUnit.NANOSECONDS.toMillis(openNanos));
+        } else {
+            log.info("Circuit breaker of vault at {} went from {} to {}", endpoint, from, to);
+        }
+        for (Listener listener : listeners) {
+            try {
+                listener.onStateChange(endpoint, from, to);
+            } catch (RuntimeException e) {
+                log.warn("Circuit breaker listener failed : {}", e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.avinash.vault.kv.http;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Helpers to bridge the asynchronous http calls back to the blocking {@link com.avinash.vault.kv.SecretProvider}
+ * API without wrapping the original exceptions any further.
+ */
+public final class Futures {
+
+    private Futures() {
+    }
+
+    /**
+     * Waits for the future and rethrows its failure as it was raised, unchecked exceptions and errors unwrapped.
+     */
+    public static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = unwrap(e);
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @return the exception which actually failed a future, without the {@link CompletionException} or
+     * {@link ExecutionException} wrappers added while it travelled through the stages
+     */
+    public static Throwable unwrap(Throwable t) {
+        Throwable cause = t;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException) && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+}
@@ -0,0 +1,74 @@
+package com.avinash.vault.kv.http;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The executor on which an {@link java.net.http.HttpClient} runs its asynchronous tasks, which includes decoding the
+ * response bodies.
+ */
+@Slf4j
+public enum HttpExecutorMode {
+    /**
+     * A single thread, every response in the client is processed one after the other.
+     */
+    SINGLE,
+    /**
+     * A fixed pool of threads, sized to the available cores by default.
+     */
+    POOL,
+    /**
+     * A new virtual thread per task when running on JDK 21 or later, a {@link #POOL} otherwise.
+     */
+    VIRTUAL;
+
+    public static HttpExecutorMode of(String mode) {
+        try {
+            return valueOf(mode.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid http executor mode " + mode + ". Valid values are single, pool & virtual");
+        }
+    }
+
+    public ExecutorService newExecutor(int threads) {
+        switch (this) {
+            case SINGLE:
+                return Executors.newSingleThreadExecutor(daemonThreads());
+            case VIRTUAL:
+                ExecutorService virtual = virtualThreadPerTask();
+                if (virtual != null) {
+                    return virtual;
+                }
+                log.warn("Virtual threads are not available on java {}, falling back to a pool of {} threads",
+                    System.getProperty("java.version"), threads);
+                return Executors.newFixedThreadPool(threads, daemonThreads());
+            default:
+                return Executors.newFixedThreadPool(threads, daemonThreads());
+        }
+    }
+
+    /**
+     * Looked up reflectively, so the library keeps compiling for and running on java 11.
+     */
+    private static ExecutorService virtualThreadPerTask() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static ThreadFactory daemonThreads() {
+        AtomicInteger count = new AtomicInteger();
+        return r -> {
+            Thread thread = new Thread(r, "secret-fetcher-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
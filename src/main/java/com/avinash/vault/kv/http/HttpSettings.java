@@ -0,0 +1,136 @@
+package com.avinash.vault.kv.http;
+
+import lombok.Builder;
+import lombok.extern.slf4j.Slf4j;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.Locale;
+
+/**
+ * How the http client talks to vault: the preferred http version, how long connecting and every single request may
+ * take, and how connections are pooled.
+ * <p>
+ * {@link HttpClient.Version#HTTP_2} multiplexes all the requests to vault over one connection per host, negotiated
+ * over TLS and falling back to HTTP/1.1 when vault does not support it. {@link HttpClient.Version#HTTP_1_1} opens a
+ * connection per concurrent request instead, kept alive and reused from the pool.
+ * <p>
+ * The JDK http client only reads its pool settings from system properties, once per process, when its first client
+ * is built. They are therefore set process wide, not overriding any given on the command line, and only take effect
+ * when applied before any http client is built.
+ */
+@Slf4j
+public final class HttpSettings {
+
+    public static final Duration DEFAULT_CONNECT_TIMEOUT = Duration.ofSeconds(10);
+    public static final Duration DEFAULT_REQUEST_TIMEOUT = Duration.ofSeconds(10);
+
+    static final String POOL_SIZE_PROPERTY = "jdk.httpclient.connectionPoolSize";
+    static final String KEEP_ALIVE_PROPERTY = "jdk.httpclient.keepalive.timeout";
+
+    private static final HttpSettings DEFAULTS = new HttpSettings(null, null, null, null, null);
+
+    private final HttpClient.Version version;
+    private final Duration connectTimeout;
+    private final Duration requestTimeout;
+    private final Integer connectionPoolSize;
+    private final Long keepAliveSeconds;
+
+    /**
+     * @param version            the preferred http version, the JDK default, i.e. HTTP/2, if null
+     * @param connectTimeout     how long establishing a connection may take
+     * @param requestTimeout     how long a single request may take until its response headers are received
+     * @param connectionPoolSize the maximum number of idle connections kept for reuse, unbounded if null
+     * @param keepAliveSeconds   how long an idle connection is kept for reuse, the JDK default of 20 minutes if null
+     */
+    @Builder(toBuilder = true)
+    public HttpSettings(HttpClient.Version version, Duration connectTimeout, Duration requestTimeout,
+                        Integer connectionPoolSize, Long keepAliveSeconds) {
+        this.version = version;
+        this.connectTimeout = connectTimeout == null ? DEFAULT_CONNECT_TIMEOUT : connectTimeout;
+        this.requestTimeout = requestTimeout == null ? DEFAULT_REQUEST_TIMEOUT : requestTimeout;
+        this.connectionPoolSize = connectionPoolSize;
+        this.keepAliveSeconds = keepAliveSeconds;
+        if (this.connectTimeout.isNegative() || this.connectTimeout.isZero()
+            || this.requestTimeout.isNegative() || this.requestTimeout.isZero()
+            || (connectionPoolSize != null && connectionPoolSize < 0) || (keepAliveSeconds != null && keepAliveSeconds <= 0)) {
+            throw new IllegalArgumentException("Invalid http settings " + this);
+        }
+    }
+
+    public static HttpSettings defaults() {
+        return DEFAULTS;
+    }
+
+    /**
+     * @param version e.g. {@code HTTP_2}, {@code 2}, {@code HTTP_1_1} or {@code 1.1}
+     */
+    public static HttpClient.Version version(String version) {
+        switch (version.trim().toUpperCase(Locale.ROOT).replace('/', '_').replace('.', '_')) {
+            case "HTTP_2":
+            case "2":
+                return HttpClient.Version.HTTP_2;
+            case "HTTP_1_1":
+            case "1_1":
+                return HttpClient.Version.HTTP_1_1;
+            default:
+                throw new IllegalArgumentException("Invalid http version " + version + ". Valid values are HTTP_2 & HTTP_1_1");
+        }
+    }
+
+    public HttpClient.Version getVersion() {
+        return version;
+    }
+
+    public Duration getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public Duration getRequestTimeout() {
+        return requestTimeout;
+    }
+
+    public Integer getConnectionPoolSize() {
+        return connectionPoolSize;
+    }
+
+    public Long getKeepAliveSeconds() {
+        return keepAliveSeconds;
+    }
+
+    HttpClient.Builder apply(HttpClient.Builder builder) {
+        if (version != null) {
+            builder.version(version);
+        }
+        return builder.connectTimeout(connectTimeout);
+    }
+
+    /**
+     * Sets the pool settings as system properties, unless already set, see the class documentation.
+     */
+    void applyConnectionPool() {
+        setIfAbsent(POOL_SIZE_PROPERTY, connectionPoolSize);
+        setIfAbsent(KEEP_ALIVE_PROPERTY, keepAliveSeconds);
+    }
+
+    private static void setIfAbsent(String property, Number value) {
+        if (value == null) {
+            return;
+        }
+        String current = System.getProperty(property);
+        if (current != null) {
+            if (!current.equals(value.toString())) {
+                log.warn("Keeping {}={} given for the process, not {}", property, current, value);
+            }
+            return;
+        }
+        System.setProperty(property, value.toString());
+        log.info("Set {}={} for the process, it only takes effect if no http client was built before", property, value);
+    }
+
+    @Override
+    public String toString() {
+        return "HttpSettings{version=" + version + ", connectTimeout=" + connectTimeout + ", requestTimeout="
+            + requestTimeout + ", connectionPoolSize=" + connectionPoolSize + ", keepAliveSeconds=" + keepAliveSeconds + '}';
+    }
+}
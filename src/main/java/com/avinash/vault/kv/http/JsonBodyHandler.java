@@ -1,37 +1,75 @@
 package com.avinash.vault.kv.http;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 
 import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.net.http.HttpResponse;
-import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 public class JsonBodyHandler<W> implements HttpResponse.BodyHandler<W> {
 
-    private final Class<W> wClass;
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    // readers are immutable and thread safe, caching them avoids repeating jackson's introspection of the type
+    private static final ConcurrentMap<Class<?>, ObjectReader> READERS = new ConcurrentHashMap<>();
+
+    private final Decoder<W> decoder;
 
     public JsonBodyHandler(Class<W> wClass) {
-        this.wClass = wClass;
+        this(readerDecoder(wClass));
+    }
+
+    /**
+     * @param decoder decodes the raw body, e.g. by picking only the parts of the json which are of interest
+     */
+    public JsonBodyHandler(Decoder<W> decoder) {
+        this.decoder = decoder;
     }
 
     @Override
     public HttpResponse.BodySubscriber<W> apply(HttpResponse.ResponseInfo responseInfo) {
-        return asJSON(wClass);
+        return asJSON(decoder);
     }
 
     public static <T> HttpResponse.BodySubscriber<T> asJSON(Class<T> targetType) {
-        HttpResponse.BodySubscriber<String> upstream = HttpResponse.BodySubscribers.ofString(StandardCharsets.UTF_8);
+        return asJSON(readerDecoder(targetType));
+    }
 
+    /**
+     * The body is collected as bytes and decoded straight from them, without building an intermediate String.
+     * An empty body decodes to null.
+     */
+    public static <T> HttpResponse.BodySubscriber<T> asJSON(Decoder<T> decoder) {
         return HttpResponse.BodySubscribers.mapping(
-                upstream,
-                (String body) -> {
+                HttpResponse.BodySubscribers.ofByteArray(),
+                (byte[] body) -> {
+                    if (body.length == 0) {
+                        return null;
+                    }
                     try {
-                        ObjectMapper objectMapper = new ObjectMapper();
-                        return objectMapper.readValue(body, targetType);
+                        return decoder.decode(body);
                     } catch (IOException e) {
                         throw new UncheckedIOException(e);
                     }
                 });
     }
+
+    /**
+     * @return the shared, thread safe reader binding json to the given type
+     */
+    public static ObjectReader readerFor(Class<?> type) {
+        return READERS.computeIfAbsent(type, OBJECT_MAPPER::readerFor);
+    }
+
+    private static <T> Decoder<T> readerDecoder(Class<T> type) {
+        ObjectReader reader = readerFor(type);
+        return reader::readValue;
+    }
+
+    @FunctionalInterface
+    public interface Decoder<T> {
+        T decode(byte[] body) throws IOException;
+    }
 }
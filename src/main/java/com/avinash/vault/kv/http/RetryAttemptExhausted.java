@@ -5,4 +5,8 @@ public class RetryAttemptExhausted extends RuntimeException {
     public RetryAttemptExhausted(String msg) {
         super(msg);
     }
+
+    public RetryAttemptExhausted(String msg, Throwable cause) {
+        super(msg, cause);
+    }
 }
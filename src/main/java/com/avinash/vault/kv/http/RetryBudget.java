@@ -0,0 +1,74 @@
+package com.avinash.vault.kv.http;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounds the retries of many calls together, so that an outage of vault does not multiply the load on it by the number
+ * of retries of every call. Each call deposits {@code ratio} of a retry, each retry withdraws a whole one, so that over
+ * time at most that ratio of the calls are retried. The budget starts full, which allows bursts of retries after a
+ * quiet period.
+ */
+public final class RetryBudget {
+
+    private static final long SCALE = 1000;
+    private static final RetryBudget SHARED = new RetryBudget(0.2, 100);
+
+    private final long deposit;
+    private final long capacity;
+    private final AtomicLong balance;
+
+    /**
+     * @param ratio      the fraction of the calls which may be retried in the long run
+     * @param maxRetries the retries the budget holds at most, i.e. the largest burst of retries
+     */
+    public RetryBudget(double ratio, int maxRetries) {
+        if (ratio < 0 || maxRetries < 0) {
+            throw new IllegalArgumentException("Retry budget ratio and max retries must not be negative");
+        }
+        this.deposit = (long) (ratio * SCALE);
+        this.capacity = maxRetries * SCALE;
+        this.balance = new AtomicLong(capacity);
+    }
+
+    /**
+     * @return the budget shared by every client of the process which is not given one of its own
+     */
+    public static RetryBudget shared() {
+        return SHARED;
+    }
+
+    /**
+     * @return a budget which does not run out in practice, e.g. for tests
+     */
+    public static RetryBudget unlimited() {
+        return new RetryBudget(0, Integer.MAX_VALUE);
+    }
+
+    void deposit() {
+        long current;
+        do {
+            current = balance.get();
+            if (current >= capacity) {
+                return;
+            }
+        } while (!balance.compareAndSet(current, Math.min(capacity, current + deposit)));
+    }
+
+    boolean tryWithdraw() {
+        long current;
+        do {
+            current = balance.get();
+            if (current < SCALE) {
+                return false;
+            }
+        } while (!balance.compareAndSet(current, current - SCALE));
+        return true;
+    }
+
+    /**
+     * @return the whole retries left in the budget
+     */
+    public long available() {
+        return balance.get() / SCALE;
+    }
+}
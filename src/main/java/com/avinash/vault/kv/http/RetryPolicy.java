@@ -0,0 +1,169 @@
+package com.avinash.vault.kv.http;
+
+import lombok.Builder;
+
+import java.net.ConnectException;
+import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides whether and when a failed call is retried: connection failures (of a {@code POST} or {@code PATCH} only
+ * when it never reached vault), {@code 429 Too Many Requests},
+ * {@code 412 Precondition Failed} (a performance standby not yet caught up) and {@code 5xx} are retried after an
+ * exponential back off with jitter, or after the {@code Retry-After} of the response if that is longer. Retries stop
+ * after {@code maxRetries}, when the next attempt would start past the deadline of the call, or when the shared
+ * {@link RetryBudget} is used up.
+ */
+public final class RetryPolicy {
+
+    public static final int DEFAULT_MAX_RETRIES = 3;
+    public static final long DEFAULT_BASE_DELAY_MS = 100;
+    public static final long DEFAULT_MAX_DELAY_MS = 5_000;
+    public static final long DEFAULT_DEADLINE_MS = 30_000;
+    // a 500 may come after the request was applied, gateway errors and 503 come before it reached vault
+    private static final Set<Integer> RETRYABLE_ANY_METHOD = Set.of(412, 429, 502, 503, 504);
+    // check-and-set writes are not idempotent, they are sent as POST
+    private static final Set<String> IDEMPOTENT_METHODS = Set.of("GET", "HEAD", "PUT", "DELETE", "OPTIONS");
+
+    private static final RetryPolicy DEFAULT = RetryPolicy.builder().build();
+
+    private final int maxRetries;
+    private final long baseDelayMs;
+    private final long maxDelayMs;
+    private final long deadlineMs;
+    private final RetryBudget budget;
+
+    /**
+     * @param maxRetries  the retries after the first attempt, {@link #DEFAULT_MAX_RETRIES} if null
+     * @param baseDelayMs the back off before the first retry, doubled for every further one
+     * @param maxDelayMs  the longest back off, a longer {@code Retry-After} is still honoured within the deadline
+     * @param deadlineMs  the time from the first attempt after which no retry is started
+     * @param budget      the budget shared with other calls, {@link RetryBudget#shared()} if null
+     */
+    @Builder(toBuilder = true)
+    public RetryPolicy(Integer maxRetries, Long baseDelayMs, Long maxDelayMs, Long deadlineMs, RetryBudget budget) {
+        this.maxRetries = maxRetries == null ? DEFAULT_MAX_RETRIES : maxRetries;
+        this.baseDelayMs = baseDelayMs == null ? DEFAULT_BASE_DELAY_MS : baseDelayMs;
+        this.maxDelayMs = maxDelayMs == null ? DEFAULT_MAX_DELAY_MS : maxDelayMs;
+        this.deadlineMs = deadlineMs == null ? DEFAULT_DEADLINE_MS : deadlineMs;
+        this.budget = budget == null ? RetryBudget.shared() : budget;
+        if (this.maxRetries < 0 || this.baseDelayMs < 0 || this.maxDelayMs < this.baseDelayMs || this.deadlineMs <= 0) {
+            throw new IllegalArgumentException("Invalid retry policy : " + this);
+        }
+    }
+
+    public static RetryPolicy defaults() {
+        return DEFAULT;
+    }
+
+    public RetryPolicy withMaxRetries(int retries) {
+        return toBuilder().maxRetries(retries).build();
+    }
+
+    public RetryPolicy withDeadline(Duration deadline) {
+        return toBuilder().deadlineMs(deadline.toMillis()).build();
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    public long getDeadlineMs() {
+        return deadlineMs;
+    }
+
+    public RetryBudget getBudget() {
+        return budget;
+    }
+
+    /**
+     * A request which failed once sent, e.g. on a connection reset or a timeout, may have been applied by vault, so
+     * only an idempotent one is sent again. One which never reached vault, as it could not connect, always may be.
+     *
+     * @return whether the request of the method which failed can be sent again, to the same or to another node,
+     * without being applied twice
+     */
+    public static boolean isResendable(String method, Throwable failure) {
+        return IDEMPOTENT_METHODS.contains(method) || isUnsent(failure);
+    }
+
+    /**
+     * @return whether the failure, or the one which exhausted the retries, shows the request never reached vault
+     */
+    private static boolean isUnsent(Throwable failure) {
+        Throwable cause = failure;
+        while ((cause instanceof RetryAttemptExhausted || cause instanceof CompletionException) && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause instanceof ConnectException || cause instanceof HttpConnectTimeoutException;
+    }
+
+    boolean isRetryable(String method, int statusCode) {
+        if (RETRYABLE_ANY_METHOD.contains(statusCode)) {
+            return true;
+        }
+        return statusCode / 100 == 5 && IDEMPOTENT_METHODS.contains(method);
+    }
+
+    /**
+     * @param attempt       the attempt which failed, 0 for the first one
+     * @param retryAfterMs  the wait asked for by the response, 0 if none
+     * @return the back off before the next attempt, between half and all of the exponential delay
+     */
+    long delayMs(int attempt, long retryAfterMs) {
+        long exponential = Math.min(maxDelayMs, baseDelayMs << Math.min(attempt, 30));
+        long half = exponential / 2;
+        long jittered = half + ThreadLocalRandom.current().nextLong(exponential - half + 1);
+        return Math.max(jittered, retryAfterMs);
+    }
+
+    /**
+     * Withdraws from the budget when the retry is allowed, so it must only be called once per retry.
+     */
+    boolean mayRetry(int attempt, long delayMs, long deadlineNanos) {
+        return attempt < maxRetries
+            && System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMs) < deadlineNanos
+            && budget.tryWithdraw();
+    }
+
+    long deadlineNanos(long startNanos) {
+        return startNanos + TimeUnit.MILLISECONDS.toNanos(deadlineMs);
+    }
+
+    /**
+     * @return the wait asked for by the {@code Retry-After} header, given in seconds or as an http date, 0 if none
+     */
+    static long retryAfterMs(HttpResponse<?> response) {
+        Optional<String> retryAfter = response.headers().firstValue("Retry-After");
+        if (retryAfter.isEmpty()) {
+            return 0;
+        }
+        String value = retryAfter.get().trim();
+        try {
+            return Math.max(0, TimeUnit.SECONDS.toMillis(Long.parseLong(value)));
+        } catch (NumberFormatException e) {
+            //not seconds, try a date
+        }
+        try {
+            ZonedDateTime at = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME);
+            return Math.max(0, at.toInstant().toEpochMilli() - System.currentTimeMillis());
+        } catch (DateTimeParseException e) {
+            return 0;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "RetryPolicy{maxRetries=" + maxRetries + ", baseDelayMs=" + baseDelayMs + ", maxDelayMs=" + maxDelayMs
+            + ", deadlineMs=" + deadlineMs + '}';
+    }
+}
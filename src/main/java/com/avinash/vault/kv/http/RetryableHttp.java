@@ -1,58 +1,301 @@
 package com.avinash.vault.kv.http;
 
+import com.avinash.vault.kv.exceptions.DeadlineExceededException;
+import com.avinash.vault.kv.metrics.VaultMetrics;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.IOException;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 @Slf4j
-public class RetryableHttp {
+public class RetryableHttp implements AutoCloseable {
 
-    private int maxRetries = 3;
+    // built on first use, so that the pool settings of a configured client can still apply to the whole process
+    private static final class Shared {
+        private static final HttpClient HTTP_CLIENT = HttpSettings.defaults().apply(HttpClient.newBuilder())
+            .executor(Executors.newSingleThreadExecutor(r -> new Thread(r, "secret-fetcher")))
+            .build();
+    }
+
+    private final HttpClient client;
+    // only set when this instance created the executor and is therefore responsible for shutting it down
+    private final ExecutorService ownedExecutor;
+    private final RetryPolicy policy;
+    private final VaultMetrics metrics;
+    private final Duration requestTimeout;
 
-    private static final HttpClient HTTP_CLIENT = HttpClient
-        .newBuilder()
-        .executor(Executors.newSingleThreadExecutor(r -> new Thread(r, "secret-fetcher")))
-        .build();
+    private RetryableHttp(HttpClient client, ExecutorService ownedExecutor, RetryPolicy policy, VaultMetrics metrics,
+                          Duration requestTimeout) {
+        this.client = client;
+        this.ownedExecutor = ownedExecutor;
+        this.policy = policy;
+        this.metrics = metrics;
+        this.requestTimeout = requestTimeout;
+    }
 
+    /**
+     * @return a client sharing the process wide http client, which runs on a single "secret-fetcher" thread
+     */
     public static RetryableHttp httpClient() {
-        return new RetryableHttp();
+        return new RetryableHttp(Shared.HTTP_CLIENT, null, RetryPolicy.defaults(), new VaultMetrics(),
+            HttpSettings.DEFAULT_REQUEST_TIMEOUT);
+    }
+
+    /**
+     * @param mode    the kind of executor the new http client runs its asynchronous work on
+     * @param threads the number of threads of a pool, ignored for the other modes
+     * @return a client with its own http client and executor, which are released by {@link #close()}
+     */
+    public static RetryableHttp create(HttpExecutorMode mode, int threads) {
+        return create(mode, threads, HttpSettings.defaults());
+    }
+
+    /**
+     * @param settings the http version, timeouts and pool settings of the new http client
+     * @return a client with its own http client and executor, which are released by {@link #close()}
+     */
+    public static RetryableHttp create(HttpExecutorMode mode, int threads, HttpSettings settings) {
+        settings.applyConnectionPool();
+        ExecutorService executor = mode.newExecutor(threads);
+        HttpClient client = settings.apply(HttpClient.newBuilder()).executor(executor).build();
+        return new RetryableHttp(client, executor, RetryPolicy.defaults(), new VaultMetrics(), settings.getRequestTimeout());
     }
 
+    /**
+     * @return a client sharing the http client of this one and retrying the given number of times. The returned
+     * client does not own any resources, closing it is a no-op.
+     */
     public RetryableHttp withRetries(int retries) {
-        this.maxRetries = retries;
-        return this;
+        return withPolicy(policy.withMaxRetries(retries));
+    }
+
+    /**
+     * @return a client sharing the http client of this one and retrying according to the given policy. The returned
+     * client does not own any resources, closing it is a no-op.
+     */
+    public RetryableHttp withPolicy(RetryPolicy retryPolicy) {
+        return new RetryableHttp(client, null, retryPolicy, metrics, requestTimeout);
+    }
+
+    /**
+     * @return a client sharing the http client and policy of this one and recording into the given metrics. The
+     * returned client does not own any resources, closing it is a no-op.
+     */
+    public RetryableHttp withMetrics(VaultMetrics vaultMetrics) {
+        return new RetryableHttp(client, null, policy, vaultMetrics, requestTimeout);
+    }
+
+    public RetryPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * @return how long a single request of the users of this client may take, to be set on every request they build
+     */
+    public Duration getRequestTimeout() {
+        return requestTimeout;
+    }
+
+    /**
+     * @return the metrics the calls of this client are recorded into, shared by the clients derived from it
+     */
+    public VaultMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return whether this client created its executor and shut it down, false for the clients which own none
+     */
+    boolean isExecutorShutdown() {
+        return ownedExecutor != null && ownedExecutor.isShutdown();
     }
 
     public <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> responseBodyHandler) throws IOException, InterruptedException {
-        return send(request, responseBodyHandler, 3);
+        try {
+            return sendAsync(request, responseBodyHandler).get();
+        } catch (ExecutionException e) {
+            Throwable cause = Futures.unwrap(e);
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
     }
 
     public <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> responseBodyHandler, int retries) throws IOException, InterruptedException {
-        try {
-            return HTTP_CLIENT.send(request, responseBodyHandler);
+        return withRetries(retries).send(request, responseBodyHandler);
+    }
+
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request, HttpResponse.BodyHandler<T> responseBodyHandler, int retries) {
+        return withRetries(retries).sendAsync(request, responseBodyHandler);
+    }
+
+    /**
+     * Sends the request without blocking the calling thread. Failed attempts are retried according to the
+     * {@link RetryPolicy} after a back off which is scheduled on a timer, so no thread sleeps while waiting for the
+     * next attempt. When the retries of a retryable status run out, its last response is returned as is.
+     */
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request, HttpResponse.BodyHandler<T> responseBodyHandler) {
+        policy.getBudget().deposit();
+        metrics.callStarted();
+        return attempt(request, counting(responseBodyHandler), 0, policy.deadlineNanos(System.nanoTime()))
+            .whenComplete((response, e) -> metrics.callCompleted());
+    }
+
+    private <T> CompletableFuture<HttpResponse<T>> attempt(HttpRequest request, HttpResponse.BodyHandler<T> responseBodyHandler,
+                                                           int attempt, long deadlineNanos) {
+        return withinDeadline(client.sendAsync(request, responseBodyHandler), request, deadlineNanos)
+            .handle((response, e) -> {
+                long delayMs;
+                if (e != null) {
+                    Throwable cause = Futures.unwrap(e);
+                    // Connection reset by peer results in an IOException, which we are retrying
+                    if (!(cause instanceof IOException)) {
+                        return CompletableFuture.<HttpResponse<T>>failedFuture(cause);
+                    }
+                    if (!RetryPolicy.isResendable(request.method(), cause)) {
+                        // e.g. a patch whose connection was reset once sent, vault may have applied it
+                        return CompletableFuture.<HttpResponse<T>>failedFuture(cause);
+                    }
+                    delayMs = policy.delayMs(attempt, 0);
+                    if (mayOutliveDeadline(request, delayMs, deadlineNanos) || !policy.mayRetry(attempt, delayMs, deadlineNanos)) {
+                        metrics.recordRetriesExhausted();
+                        return CompletableFuture.<HttpResponse<T>>failedFuture(new RetryAttemptExhausted(
+                            "All retries exceeded for the Http request: " + request.method() + " " + request.uri().getPath(), cause));
+                    }
+                } else {
+                    if (!policy.isRetryable(request.method(), response.statusCode())) {
+                        return CompletableFuture.completedFuture(response);
+                    }
+                    delayMs = policy.delayMs(attempt, RetryPolicy.retryAfterMs(response));
+                    if (mayOutliveDeadline(request, delayMs, deadlineNanos) || !policy.mayRetry(attempt, delayMs, deadlineNanos)) {
+                        metrics.recordRetriesExhausted();
+                        return CompletableFuture.completedFuture(response);
+                    }
+                }
+                metrics.recordRetry();
+                log.debug("Retrying {} {} in {} ms", request.method(), request.uri().getPath(), delayMs);
+                Executor delayed = CompletableFuture.delayedExecutor(delayMs, TimeUnit.MILLISECONDS);
+                return CompletableFuture.runAsync(() -> { }, delayed)
+                    .thenCompose(ignored -> attempt(request, responseBodyHandler, attempt + 1, deadlineNanos));
+            })
+            .thenCompose(next -> next);
+    }
+
+    /**
+     * A request can not be called back once sent, an attempt cut at the deadline may still be applied by vault. So a
+     * write is only retried when the retry would time out before the deadline, then no retry of it lands after the
+     * call failed. Reads are retried until the deadline, whenever they land.
+     */
+    private static boolean mayOutliveDeadline(HttpRequest request, long delayMs, long deadlineNanos) {
+        if ("GET".equals(request.method()) || "HEAD".equals(request.method())) {
+            return false;
         }
-        // Connection rest by peer results in an IOException, which we are retrying
-        //TODO: We should also try 50x response codes
-        catch (IOException e) {
-            if (retries == 0) throw new RetryAttemptExhausted("All retries exceeded for the Http request: " + request);
-            sleep(backOff(--retries));
-            return send(request, responseBodyHandler, retries);
+        Optional<Duration> timeout = request.timeout();
+        return timeout.isEmpty()
+            || System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMs) + timeout.get().toNanos() > deadlineNanos;
+    }
+
+    /**
+     * Cuts the attempt at the deadline of the call when the deadline comes before the timeout of the request, so that
+     * no attempt outlives the call.
+     */
+    private static <T> CompletableFuture<HttpResponse<T>> withinDeadline(CompletableFuture<HttpResponse<T>> sent,
+                                                                         HttpRequest request, long deadlineNanos) {
+        long remainingNanos = deadlineNanos - System.nanoTime();
+        Optional<Duration> timeout = request.timeout();
+        if (timeout.isPresent() && timeout.get().toNanos() <= remainingNanos) {
+            return sent;
         }
+        return sent.orTimeout(Math.max(0, remainingNanos), TimeUnit.NANOSECONDS)
+            .exceptionally(e -> {
+                if (Futures.unwrap(e) instanceof TimeoutException) {
+                    // not an IOException, the deadline is over and there is nothing to retry
+                    throw new CompletionException(new DeadlineExceededException(
+                        "No response within the deadline of the call for the Http request: " + request.method() + " " + request.uri().getPath()));
+                }
+                throw e instanceof CompletionException ? (CompletionException) e : new CompletionException(e);
+            });
     }
 
-    private int backOff(int attemptsLeft) {
-        return (int) (5 + Math.pow(2, maxRetries - attemptsLeft - 1));
+    /**
+     * Wraps the handler to record the status and the bytes of every response.
+     */
+    private <T> HttpResponse.BodyHandler<T> counting(HttpResponse.BodyHandler<T> responseBodyHandler) {
+        return responseInfo -> {
+            metrics.recordStatus(responseInfo.statusCode());
+            return new CountingSubscriber<>(responseBodyHandler.apply(responseInfo), metrics);
+        };
     }
 
-    public static void sleep(int seconds) {
-        try {
-            Thread.sleep(seconds * 1000L);
-        } catch (InterruptedException e) {
-            //ignore
+    /**
+     * Shuts down the executor if this client created it. The underlying {@link HttpClient} has no close method
+     * before java 21, its selector thread ends once the client is no longer referenced.
+     */
+    @Override
+    public void close() {
+        if (ownedExecutor != null) {
+            ownedExecutor.shutdown();
+            log.info("Http client executor shut down");
+        }
+    }
+
+    private static final class CountingSubscriber<T> implements HttpResponse.BodySubscriber<T> {
+        private final HttpResponse.BodySubscriber<T> delegate;
+        private final VaultMetrics metrics;
+
+        private CountingSubscriber(HttpResponse.BodySubscriber<T> delegate, VaultMetrics metrics) {
+            this.delegate = delegate;
+            this.metrics = metrics;
+        }
+
+        @Override
+        public CompletionStage<T> getBody() {
+            return delegate.getBody();
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            delegate.onSubscribe(subscription);
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> buffers) {
+            long bytes = 0;
+            for (int i = 0; i < buffers.size(); i++) {
+                bytes += buffers.get(i).remaining();
+            }
+            metrics.recordBytesReceived(bytes);
+            delegate.onNext(buffers);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            delegate.onError(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            delegate.onComplete();
         }
     }
 }
@@ -0,0 +1,70 @@
+package com.avinash.vault.kv.http;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Deduplicates concurrent calls for the same key. The first caller for a key runs the call, every caller arriving
+ * while it is in flight waits for and shares its outcome, including the failure if it fails.
+ * Nothing is remembered once the call completes, so this is not a cache.
+ *
+ * @param <K> the key identifying identical calls
+ * @param <V> the result of the call
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    public V execute(K key, Supplier<V> call) {
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> leader = inFlight.putIfAbsent(key, flight);
+        if (leader != null) {
+            return Futures.join(leader);
+        }
+        try {
+            V result = call.get();
+            flight.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    /**
+     * Asynchronous variant of {@link #execute(Object, Supplier)}, the call is only started by the first caller and
+     * every caller gets its own copy of the shared outcome, so cancelling one does not affect the others.
+     */
+    public CompletableFuture<V> executeAsync(K key, Supplier<CompletableFuture<V>> call) {
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> leader = inFlight.putIfAbsent(key, flight);
+        if (leader != null) {
+            return leader.copy();
+        }
+        try {
+            call.get().whenComplete((result, e) -> {
+                inFlight.remove(key, flight);
+                if (e != null) {
+                    flight.completeExceptionally(Futures.unwrap(e));
+                } else {
+                    flight.complete(result);
+                }
+            });
+        } catch (RuntimeException | Error e) {
+            inFlight.remove(key, flight);
+            flight.completeExceptionally(e);
+        }
+        return flight.copy();
+    }
+
+    /**
+     * @return the number of distinct keys which currently have a call in flight
+     */
+    public int inFlight() {
+        return inFlight.size();
+    }
+}
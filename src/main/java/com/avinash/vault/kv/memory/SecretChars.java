@@ -0,0 +1,114 @@
+package com.avinash.vault.kv.memory;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+
+/**
+ * A secret value kept off heap by {@link SecretSlabs}, read as a {@link CharSequence} straight from its slab. It is
+ * only valid until released, when its chars are zeroed and its region reused.
+ * <p>
+ * {@link #toString()} materializes the value as a string and {@link #toCharArray()} as an array, which the caller
+ * should zero once done with it.
+ */
+public final class SecretChars implements CharSequence {
+
+    private final SecretSlabs slabs;
+    private final ByteBuffer buffer;
+    private final int offset;
+    private final int capacity;
+    private final int length;
+    private volatile boolean released;
+
+    SecretChars(SecretSlabs slabs, ByteBuffer buffer, int offset, int capacity, int length) {
+        this.slabs = slabs;
+        this.buffer = buffer;
+        this.offset = offset;
+        this.capacity = capacity;
+        this.length = length;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + length);
+        }
+        checkNotReleased();
+        return buffer.getChar(offset + 2 * index);
+    }
+
+    /**
+     * @return a read only view of the chars, without copying them, valid as long as this value
+     */
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        checkNotReleased();
+        return buffer.duplicate().position(offset).limit(offset + 2 * length).slice()
+            .asCharBuffer().asReadOnlyBuffer().subSequence(start, end);
+    }
+
+    public char[] toCharArray() {
+        checkNotReleased();
+        char[] chars = new char[length];
+        CharBuffer view = buffer.duplicate().position(offset).limit(offset + 2 * length).slice().asCharBuffer();
+        view.get(chars);
+        return chars;
+    }
+
+    /**
+     * @return whether the chars equal those of the given sequence, without materializing either
+     */
+    public boolean contentEquals(CharSequence other) {
+        if (other.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (charAt(i) != other.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Zeroes the chars and gives the region back to the slabs, only the first call counts.
+     */
+    public void release() {
+        synchronized (this) {
+            if (released) {
+                return;
+            }
+            released = true;
+        }
+        slabs.release(buffer, offset, capacity);
+    }
+
+    public boolean isReleased() {
+        return released;
+    }
+
+    /**
+     * Materializes the value as a string, e.g. for the {@link org.apache.kafka.common.config.ConfigData} of a connector.
+     */
+    @Override
+    public String toString() {
+        checkNotReleased();
+        char[] chars = toCharArray();
+        try {
+            return new String(chars);
+        } finally {
+            Arrays.fill(chars, '\0');
+        }
+    }
+
+    private void checkNotReleased() {
+        if (released) {
+            throw new IllegalStateException("Secret value was released");
+        }
+    }
+}
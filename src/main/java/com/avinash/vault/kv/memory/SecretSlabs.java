@@ -0,0 +1,174 @@
+package com.avinash.vault.kv.memory;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Off heap storage of secret values, in direct {@link ByteBuffer} slabs which are carved into regions, one per value.
+ * <p>
+ * Values are kept as UTF-16 chars, so that they can be read as a {@link CharSequence} without ever decoding them into
+ * a {@link String}. A region is zeroed as soon as its value is released and reused for the next values of its size,
+ * regions are sized in powers of two for that. Values larger than a slab get a direct buffer of their own, zeroed and
+ * dropped on release.
+ * <p>
+ * Unlike strings, the values neither add to the heap the garbage collector has to trace, nor linger in it, or in heap
+ * dumps, until collected.
+ */
+public final class SecretSlabs implements AutoCloseable {
+
+    public static final int DEFAULT_SLAB_BYTES = 1 << 20;
+
+    private static final int MIN_REGION_BYTES = 64;
+
+    private final int slabBytes;
+    private final long maxBytes;
+    private final List<ByteBuffer> slabs = new ArrayList<>();
+    // the buffers of the values larger than a slab which are not released, by identity as buffers equal by content
+    private final Set<ByteBuffer> large = Collections.newSetFromMap(new IdentityHashMap<>());
+    // the free regions of every size class, the class of a region being the log2 of its size
+    private final List<ArrayDeque<Region>> free = new ArrayList<>();
+    private ByteBuffer current;
+    private int currentOffset;
+    private long reservedBytes;
+    private long usedBytes;
+    private boolean closed;
+
+    /**
+     * @param slabBytes the size of every slab, a power of two
+     * @param maxBytes  how much off heap memory may be reserved at most, slabs and large values included
+     */
+    public SecretSlabs(int slabBytes, long maxBytes) {
+        if (slabBytes < MIN_REGION_BYTES || Integer.bitCount(slabBytes) != 1 || maxBytes < slabBytes) {
+            throw new IllegalArgumentException("Slab size must be a power of two of at least " + MIN_REGION_BYTES
+                + " bytes and at most the max bytes");
+        }
+        this.slabBytes = slabBytes;
+        this.maxBytes = maxBytes;
+        for (int sizeClass = 0; sizeClass <= Integer.numberOfTrailingZeros(slabBytes); sizeClass++) {
+            free.add(new ArrayDeque<>());
+        }
+    }
+
+    /**
+     * Copies the value off heap.
+     *
+     * @return the value, or null if the slabs are full
+     */
+    public synchronized SecretChars allocate(CharSequence value) {
+        if (closed) {
+            throw new IllegalStateException("Secret slabs are closed");
+        }
+        int bytes = Math.multiplyExact(value.length(), 2);
+        ByteBuffer buffer;
+        int offset;
+        int capacity;
+        if (bytes > slabBytes) {
+            if (reservedBytes + bytes > maxBytes) {
+                return null;
+            }
+            buffer = ByteBuffer.allocateDirect(bytes);
+            offset = 0;
+            capacity = bytes;
+            reservedBytes += bytes;
+            large.add(buffer);
+        } else {
+            capacity = Math.max(MIN_REGION_BYTES, Integer.highestOneBit(Math.max(1, bytes - 1)) << 1);
+            int sizeClass = Integer.numberOfTrailingZeros(capacity);
+            Region region = free.get(sizeClass).poll();
+            if (region != null) {
+                buffer = region.slab;
+                offset = region.offset;
+            } else {
+                if (current == null || currentOffset + capacity > slabBytes) {
+                    if (reservedBytes + slabBytes > maxBytes) {
+                        return null;
+                    }
+                    current = ByteBuffer.allocateDirect(slabBytes);
+                    currentOffset = 0;
+                    slabs.add(current);
+                    reservedBytes += slabBytes;
+                }
+                buffer = current;
+                offset = currentOffset;
+                currentOffset += capacity;
+            }
+        }
+        for (int i = 0; i < value.length(); i++) {
+            buffer.putChar(offset + 2 * i, value.charAt(i));
+        }
+        usedBytes += capacity;
+        return new SecretChars(this, buffer, offset, capacity, value.length());
+    }
+
+    /**
+     * @return the bytes taken by the values which are not released, rounded up to their regions
+     */
+    public synchronized long usedBytes() {
+        return usedBytes;
+    }
+
+    /**
+     * @return the off heap memory reserved, in slabs and for large values
+     */
+    public synchronized long reservedBytes() {
+        return reservedBytes;
+    }
+
+    /**
+     * Zeroes every slab and large value, the values still allocated included, which must not be read afterwards.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        for (ByteBuffer slab : slabs) {
+            zero(slab, 0, slabBytes);
+        }
+        slabs.clear();
+        for (ByteBuffer buffer : large) {
+            zero(buffer, 0, buffer.capacity());
+        }
+        large.clear();
+        free.forEach(ArrayDeque::clear);
+        current = null;
+    }
+
+    synchronized void release(ByteBuffer buffer, int offset, int capacity) {
+        if (closed) {
+            return;
+        }
+        zero(buffer, offset, capacity);
+        usedBytes -= capacity;
+        if (capacity > slabBytes) {
+            large.remove(buffer);
+            reservedBytes -= capacity;
+            return;
+        }
+        free.get(Integer.numberOfTrailingZeros(capacity)).add(new Region(buffer, offset));
+    }
+
+    private static final class Region {
+        private final ByteBuffer slab;
+        private final int offset;
+
+        private Region(ByteBuffer slab, int offset) {
+            this.slab = slab;
+            this.offset = offset;
+        }
+    }
+
+    private static void zero(ByteBuffer buffer, int offset, int length) {
+        int end = offset + length;
+        int i = offset;
+        for (; i + 8 <= end; i += 8) {
+            buffer.putLong(i, 0L);
+        }
+        for (; i < end; i++) {
+            buffer.put(i, (byte) 0);
+        }
+    }
+}
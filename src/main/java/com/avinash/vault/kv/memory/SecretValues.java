@@ -0,0 +1,111 @@
+package com.avinash.vault.kv.memory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The key value pairs of one secret, with the values kept off heap. The keys are not secret and stay on heap.
+ * <p>
+ * The values are reference counted: they are released, i.e. zeroed, once the owner released them and every reader
+ * which {@link #retain() retained} them released them too, so that a reader never sees the zeroed chars of a value
+ * dropped by someone else meanwhile.
+ */
+public final class SecretValues {
+
+    private final String[] keys;
+    private final SecretChars[] values;
+    private final AtomicInteger references = new AtomicInteger(1);
+
+    private SecretValues(String[] keys, SecretChars[] values) {
+        this.keys = keys;
+        this.values = values;
+    }
+
+    /**
+     * Copies the values off heap, the caller owns the result and releases it once done with it.
+     *
+     * @return the secret, or null if the slabs are full
+     */
+    public static SecretValues copyOf(Map<String, String> data, SecretSlabs slabs) {
+        String[] keys = new String[data.size()];
+        SecretChars[] values = new SecretChars[data.size()];
+        int i = 0;
+        for (Map.Entry<String, String> entry : data.entrySet()) {
+            SecretChars value = entry.getValue() == null ? null : slabs.allocate(entry.getValue());
+            if (value == null && entry.getValue() != null) {
+                for (int j = 0; j < i; j++) {
+                    if (values[j] != null) {
+                        values[j].release();
+                    }
+                }
+                return null;
+            }
+            keys[i] = entry.getKey();
+            values[i++] = value;
+        }
+        return new SecretValues(keys, values);
+    }
+
+    /**
+     * @return whether the values can be read, until {@link #release()}, false if they are released already
+     */
+    public boolean retain() {
+        while (true) {
+            int current = references.get();
+            if (current == 0) {
+                return false;
+            }
+            if (references.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    public void release() {
+        if (references.decrementAndGet() == 0) {
+            for (SecretChars value : values) {
+                if (value != null) {
+                    value.release();
+                }
+            }
+        }
+    }
+
+    public int size() {
+        return keys.length;
+    }
+
+    public boolean containsKey(String key) {
+        return indexOf(key) >= 0;
+    }
+
+    /**
+     * @return the value of the key, read straight from its slab, null if there is none
+     */
+    public SecretChars get(String key) {
+        int index = indexOf(key);
+        return index < 0 ? null : values[index];
+    }
+
+    /**
+     * Materializes all the values as strings.
+     */
+    public Map<String, String> toMap() {
+        Map<String, String> map = new HashMap<>(keys.length * 2);
+        for (int i = 0; i < keys.length; i++) {
+            map.put(keys[i], values[i] == null ? null : values[i].toString());
+        }
+        return map;
+    }
+
+    private int indexOf(String key) {
+        // secrets hold a handful of keys, a scan beats hashing them
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i].equals(key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,20 @@
+package com.avinash.vault.kv.metrics;
+
+public interface LatencyMXBean {
+
+    long getCount();
+
+    double getMeanMillis();
+
+    double getMaxMillis();
+
+    double getP50Millis();
+
+    double getP99Millis();
+
+    double getP999Millis();
+
+    double[] getBucketBoundsMillis();
+
+    long[] getBucketCounts();
+}
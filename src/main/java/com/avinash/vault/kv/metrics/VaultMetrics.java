@@ -0,0 +1,230 @@
+package com.avinash.vault.kv.metrics;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * The metrics of a vault client: latency per operation, responses per status code, retries, bytes received, in flight
+ * calls and the time left on the token. Every recording is an increment of a striped {@link LongAdder}, so recording
+ * allocates nothing and is safe on every call.
+ * <p>
+ * Once {@link #register(String) registered}, the metrics are exposed as MBeans under
+ * {@code com.avinash.vault.kv:type=VaultMetrics,name=<name>,client=<client>} and
+ * {@code com.avinash.vault.kv:type=VaultLatency,name=<name>,client=<client>,operation=<operation>}, where the client
+ * is a sequence number telling apart the clients registered under the same name in the process.
+ */
+@Slf4j
+public final class VaultMetrics implements VaultMetricsMXBean, AutoCloseable {
+
+    static final String DOMAIN = "com.avinash.vault.kv";
+    private static final int MAX_STATUS_CODE = 599;
+    private static final AtomicInteger CLIENTS = new AtomicInteger();
+
+    private final LatencyHistogram[] latencies = new LatencyHistogram[VaultOperation.values().length];
+    private final LongAdder[] statusCodes = new LongAdder[MAX_STATUS_CODE + 1];
+    private final LongAdder inFlight = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder retriesExhausted = new LongAdder();
+    private final LongAdder bytesReceived = new LongAdder();
+    private volatile long tokenExpiresAtMillis = -1;
+    private final List<ObjectName> registered = new ArrayList<>();
+
+    public VaultMetrics() {
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = new LatencyHistogram();
+        }
+        for (int i = 0; i < statusCodes.length; i++) {
+            statusCodes[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Exposes the metrics as MBeans, once, under the name and the next client sequence number, so that clients
+     * registered under the same name, e.g. unshared providers of a namespace, each expose their own.
+     */
+    public synchronized void register(String name) {
+        if (!registered.isEmpty()) {
+            return;
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        String properties = "name=" + ObjectName.quote(name) + ",client=" + CLIENTS.incrementAndGet();
+        try {
+            ObjectName metricsName = new ObjectName(DOMAIN + ":type=VaultMetrics," + properties);
+            server.registerMBean(new StandardMBean(this, VaultMetricsMXBean.class, true), metricsName);
+            registered.add(metricsName);
+            for (VaultOperation operation : VaultOperation.values()) {
+                ObjectName latencyName = new ObjectName(DOMAIN + ":type=VaultLatency," + properties
+                    + ",operation=" + operation.getMetricName());
+                server.registerMBean(new StandardMBean(new Latency(latency(operation)), LatencyMXBean.class, true), latencyName);
+                registered.add(latencyName);
+            }
+            log.info("Vault metrics registered as {}", metricsName);
+        } catch (JMException e) {
+            log.warn("Failed to register vault metrics {} : {}", name, e.getMessage());
+        }
+    }
+
+    /**
+     * Unregisters the MBeans, recording goes on.
+     */
+    @Override
+    public synchronized void close() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName name : registered) {
+            try {
+                server.unregisterMBean(name);
+            } catch (JMException e) {
+                log.debug("Vault metrics {} were already unregistered", name);
+            }
+        }
+        registered.clear();
+    }
+
+    public LatencyHistogram latency(VaultOperation operation) {
+        return latencies[operation.ordinal()];
+    }
+
+    public void recordLatency(VaultOperation operation, long startNanos) {
+        latencies[operation.ordinal()].record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Records the time from now until the started call completes, successfully or not.
+     */
+    public <T> CompletableFuture<T> timed(VaultOperation operation, Supplier<CompletableFuture<T>> call) {
+        long start = System.nanoTime();
+        return call.get().whenComplete((result, e) -> recordLatency(operation, start));
+    }
+
+    public void recordStatus(int statusCode) {
+        if (statusCode >= 0 && statusCode <= MAX_STATUS_CODE) {
+            statusCodes[statusCode].increment();
+        }
+    }
+
+    public void callStarted() {
+        inFlight.increment();
+    }
+
+    public void callCompleted() {
+        inFlight.decrement();
+    }
+
+    public void recordRetry() {
+        retries.increment();
+    }
+
+    public void recordRetriesExhausted() {
+        retriesExhausted.increment();
+    }
+
+    public void recordBytesReceived(long bytes) {
+        bytesReceived.add(bytes);
+    }
+
+    /**
+     * @param expiresAtMillis when the current token expires, -1 if it does not
+     */
+    public void recordTokenExpiry(long expiresAtMillis) {
+        tokenExpiresAtMillis = expiresAtMillis;
+    }
+
+    @Override
+    public long getInFlight() {
+        return inFlight.sum();
+    }
+
+    @Override
+    public long getRetries() {
+        return retries.sum();
+    }
+
+    @Override
+    public long getRetriesExhausted() {
+        return retriesExhausted.sum();
+    }
+
+    @Override
+    public long getBytesReceived() {
+        return bytesReceived.sum();
+    }
+
+    @Override
+    public long getTokenTimeToExpiryMs() {
+        long expiresAt = tokenExpiresAtMillis;
+        return expiresAt < 0 ? -1 : Math.max(0, expiresAt - System.currentTimeMillis());
+    }
+
+    @Override
+    public Map<String, Long> getStatusCodes() {
+        Map<String, Long> counts = new TreeMap<>();
+        for (int code = 0; code < statusCodes.length; code++) {
+            long count = statusCodes[code].sum();
+            if (count > 0) {
+                counts.put(String.valueOf(code), count);
+            }
+        }
+        return counts;
+    }
+
+    private static final class Latency implements LatencyMXBean {
+        private final LatencyHistogram histogram;
+
+        private Latency(LatencyHistogram histogram) {
+            this.histogram = histogram;
+        }
+
+        @Override
+        public long getCount() {
+            return histogram.getCount();
+        }
+
+        @Override
+        public double getMeanMillis() {
+            return histogram.getMeanMillis();
+        }
+
+        @Override
+        public double getMaxMillis() {
+            return histogram.getMaxMillis();
+        }
+
+        @Override
+        public double getP50Millis() {
+            return histogram.getPercentileMillis(0.5);
+        }
+
+        @Override
+        public double getP99Millis() {
+            return histogram.getPercentileMillis(0.99);
+        }
+
+        @Override
+        public double getP999Millis() {
+            return histogram.getPercentileMillis(0.999);
+        }
+
+        @Override
+        public double[] getBucketBoundsMillis() {
+            return LatencyHistogram.getBucketBoundsMillis();
+        }
+
+        @Override
+        public long[] getBucketCounts() {
+            return histogram.getBucketCounts();
+        }
+    }
+}
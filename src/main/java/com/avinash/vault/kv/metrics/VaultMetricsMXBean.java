@@ -0,0 +1,30 @@
+package com.avinash.vault.kv.metrics;
+
+import java.util.Map;
+
+public interface VaultMetricsMXBean {
+
+    /**
+     * @return the calls to vault in flight, including those waiting for a retry
+     */
+    long getInFlight();
+
+    long getRetries();
+
+    /**
+     * @return the calls which ran out of retries, either failing or answering with a retryable status
+     */
+    long getRetriesExhausted();
+
+    long getBytesReceived();
+
+    /**
+     * @return the milliseconds until the current token expires, -1 if there is none or it does not expire
+     */
+    long getTokenTimeToExpiryMs();
+
+    /**
+     * @return the number of responses per status code
+     */
+    Map<String, Long> getStatusCodes();
+}
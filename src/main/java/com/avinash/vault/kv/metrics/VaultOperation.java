@@ -0,0 +1,26 @@
+package com.avinash.vault.kv.metrics;
+
+/**
+ * The operations whose latency is recorded, named as in the {@code operation} key of their MBean.
+ */
+public enum VaultOperation {
+    GET_SECRET("getSecret"),
+    READ_METADATA("readMetadata"),
+    LIST_SECRETS("listSecrets"),
+    ADD_SECRET("addSecret"),
+    PATCH_SECRET("patchSecret"),
+    DESTROY_SECRET("destroySecret"),
+    LOGIN("login"),
+    RENEW_TOKEN("renewToken"),
+    LOOKUP_TOKEN("lookupToken");
+
+    private final String metricName;
+
+    VaultOperation(String metricName) {
+        this.metricName = metricName;
+    }
+
+    public String getMetricName() {
+        return metricName;
+    }
+}
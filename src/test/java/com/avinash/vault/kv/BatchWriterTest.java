@@ -0,0 +1,111 @@
+package com.avinash.vault.kv;
+
+import com.avinash.vault.kv.auth.TokenAuth;
+import com.avinash.vault.kv.fake.FakeVault;
+import com.avinash.vault.kv.http.RetryPolicy;
+import com.avinash.vault.kv.http.RetryableHttp;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BatchWriterTest {
+
+    private FakeVault fake;
+    private RetryableHttp http;
+    private Vault vault;
+
+    @BeforeEach
+    void setup() {
+        fake = new FakeVault();
+        http = RetryableHttp.httpClient();
+        vault = Vault.builder()
+            .uri(fake.uri())
+            .auth(new TokenAuth(FakeVault.ROOT_TOKEN))
+            .namespace("ns")
+            .http(http)
+            .retryPolicy(RetryPolicy.builder().maxRetries(0).build())
+            .build();
+    }
+
+    @AfterEach
+    void tearDown() {
+        vault.close();
+        http.close();
+        fake.close();
+    }
+
+    @Test
+    void consecutivePatchesOfASecretAreMerged() {
+        fake.put("kv", "db", Map.of("username", "root", "password", "asd"));
+        Map<String, String> removeUsername = new HashMap<>();
+        removeUsername.put("username", null);
+        List<SecretWrite> writes = List.of(
+            SecretWrite.patch("kv", "db", Map.of("password", "one"), Map.of()),
+            SecretWrite.add("kv", "app", Map.of("token", "t0", "user", "u0"), Map.of()),
+            SecretWrite.patch("kv", "db", Map.of("password", "two"), Map.of()),
+            SecretWrite.patch("kv", "app", removeUsername, Map.of()),
+            SecretWrite.patch("kv", "app", Map.of("token", "t1"), Map.of()),
+            SecretWrite.patch("kv", "db", removeUsername, Map.of()),
+            SecretWrite.patch("kv", "missing", Map.of("password", "one"), Map.of()));
+
+        List<WriteResult> results;
+        try (BatchWriter writer = BatchWriter.builder().vault(vault).maxInFlight(2).build()) {
+            results = writer.writeAll(writes);
+        }
+
+        assertEquals(7, results.size());
+        results.subList(0, 6).forEach(result -> assertTrue(result.isSuccess()));
+        assertFalse(results.get(6).isSuccess());
+        assertEquals(Map.of("password", "two"), fake.get("kv", "db"));
+        assertEquals(Map.of("token", "t1", "user", "u0"), fake.get("kv", "app"));
+        // one patch per existing secret, the patches of app merged into its add
+        assertEquals(2, fake.requests(FakeVault.Route.PATCH));
+        assertEquals(1, fake.requests(FakeVault.Route.WRITE));
+        assertEquals(2, fake.version("kv", "db"));
+    }
+
+    @Test
+    void writesWithOptionsAreNotMerged() {
+        fake.put("kv", "db", Map.of("password", "asd"));
+        List<WriteResult> results;
+        try (BatchWriter writer = BatchWriter.builder().vault(vault).build()) {
+            results = writer.writeAll(List.of(
+                SecretWrite.add("kv", "db", Map.of("password", "one"), Map.of("cas", "1")),
+                SecretWrite.patch("kv", "db", Map.of("password", "two"), Map.of()),
+                SecretWrite.add("kv", "db", Map.of("password", "three"), Map.of("cas", "1"))));
+        }
+        assertTrue(results.get(0).isSuccess());
+        assertTrue(results.get(1).isSuccess());
+        // written in order, so the version moved past the expected one
+        assertFalse(results.get(2).isSuccess());
+        assertEquals(Map.of("password", "two"), fake.get("kv", "db"));
+        assertEquals(3, fake.version("kv", "db"));
+    }
+
+    @Test
+    void submittedWritesAreFlushedOnSizeAndTime() throws Exception {
+        fake.put("kv", "db", Map.of("password", "asd"));
+        try (BatchWriter writer = BatchWriter.builder().vault(vault).flushSize(3).flushIntervalMs(50L).build()) {
+            List<CompletableFuture<WriteResult>> results = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                results.add(writer.submit(SecretWrite.patch("kv", "db", Map.of("password", "p" + i), Map.of())));
+            }
+            CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0])).get(5, TimeUnit.SECONDS);
+            assertEquals(1, fake.requests(FakeVault.Route.PATCH));
+            assertEquals(Map.of("password", "p2"), fake.get("kv", "db"));
+
+            assertTrue(writer.submit(SecretWrite.patch("kv", "db", Map.of("password", "late"), Map.of()))
+                .get(5, TimeUnit.SECONDS).isSuccess());
+            assertEquals(Map.of("password", "late"), fake.get("kv", "db"));
+        }
+    }
+}
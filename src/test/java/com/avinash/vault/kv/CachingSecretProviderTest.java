@@ -0,0 +1,150 @@
+package com.avinash.vault.kv;
+
+import com.avinash.vault.kv.exceptions.SecretNotFoundException;
+import com.avinash.vault.kv.exceptions.VaultException;
+import com.avinash.vault.kv.memory.SecretSlabs;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CachingSecretProviderTest {
+
+    @Test
+    void repeatedReadsAreServedFromCache() {
+        CountingProvider delegate = new CountingProvider();
+        CachingSecretProvider cache = new CachingSecretProvider(delegate, "ns", 60_000, 10);
+
+        assertEquals("root", cache.getSecret("/v1/kv/data/db").get("username"));
+        assertEquals("root", cache.getSecret("/v1/kv/data/db", "username").get("username"));
+
+        assertEquals(1, delegate.reads.get());
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertThrows(SecretNotFoundException.class, () -> cache.getSecret("/v1/kv/data/db", "missing"));
+    }
+
+    @Test
+    void cachedSnapshotsAreSharedAsIs() {
+        CountingProvider delegate = new CountingProvider();
+        CachingSecretProvider cache = new CachingSecretProvider(delegate, "ns", 60_000, 10);
+
+        SecretSnapshot snapshot = cache.getSecretSnapshot("/v1/kv/data/db");
+        assertSame(snapshot, cache.getSecretSnapshot("/v1/kv/data/db"));
+        assertSame(snapshot, cache.getSecretSnapshot("/v1/kv/data/db", Set.of("username")));
+        assertEquals(Map.of("username", "root"), cache.getSecret("/v1/kv/data/db"));
+        assertThrows(SecretNotFoundException.class, () -> cache.getSecretSnapshot("/v1/kv/data/db", Set.of("missing")));
+        assertEquals(1, delegate.reads.get());
+    }
+
+    @Test
+    void leastRecentlyUsedEntryIsEvicted() {
+        CountingProvider delegate = new CountingProvider();
+        CachingSecretProvider cache = new CachingSecretProvider(delegate, "ns", 60_000, 2);
+
+        cache.getSecret("/v1/kv/data/a");
+        cache.getSecret("/v1/kv/data/b");
+        cache.getSecret("/v1/kv/data/a");
+        cache.getSecret("/v1/kv/data/c");
+        cache.getSecret("/v1/kv/data/a");
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictions());
+        assertEquals(3, delegate.reads.get());
+    }
+
+    @Test
+    void writesInvalidateThePath() {
+        CountingProvider delegate = new CountingProvider();
+        CachingSecretProvider cache = new CachingSecretProvider(delegate, "ns", 60_000, 10);
+
+        cache.getSecret("/v1/kv/data/db");
+        cache.patchSecret("kv", "db", new HashMap<>(), new HashMap<>());
+        cache.getSecret("/v1/kv/data/db");
+
+        assertEquals(2, delegate.reads.get());
+    }
+
+    @Test
+    void expiredEntryIsServedWhenTheDelegateFails() throws Exception {
+        CountingProvider delegate = new CountingProvider();
+        CachingSecretProvider cache = new CachingSecretProvider(delegate, "ns", 1, 10, 60_000);
+
+        cache.getSecret("/v1/kv/data/db");
+        Thread.sleep(5);
+        delegate.failing = new VaultException("vault is down");
+        assertEquals("root", cache.getSecret("/v1/kv/data/db").get("username"));
+        assertEquals("root", cache.getSecrets(List.of("/v1/kv/data/db")).get("/v1/kv/data/db").getData().get("username"));
+        assertEquals(2, cache.getStaleHits());
+
+        // a secret gone from vault is not hidden by its stale value
+        delegate.failing = new SecretNotFoundException("gone");
+        assertThrows(SecretNotFoundException.class, () -> cache.getSecret("/v1/kv/data/db"));
+        delegate.failing = new VaultException("vault is down");
+        assertThrows(VaultException.class, () -> cache.getSecret("/v1/kv/data/other"));
+    }
+
+    @Test
+    void valuesKeptOffHeapAreReleasedWithTheirEntries() {
+        CountingProvider delegate = new CountingProvider();
+        SecretSlabs slabs = new SecretSlabs(1024, 4096);
+        CachingSecretProvider cache = new CachingSecretProvider(delegate, "ns", 60_000, 1, 0, slabs);
+
+        assertEquals(Map.of("username", "root"), cache.readSecret("/v1/kv/data/a", Set.of("username")).getData().getData());
+        assertArrayEquals("root".toCharArray(), cache.getSecretChars("/v1/kv/data/a", "username"));
+        assertEquals(4, (int) cache.readSecretValue("/v1/kv/data/a", "username", CharSequence::length));
+        assertThrows(SecretNotFoundException.class, () -> cache.getSecretChars("/v1/kv/data/a", "missing"));
+        assertEquals(1, delegate.reads.get());
+        assertTrue(cache.getOffHeapBytes() > 0);
+
+        // the evicted entry gives its region back
+        long used = cache.getOffHeapBytes();
+        cache.getSecret("/v1/kv/data/b");
+        assertEquals(used, cache.getOffHeapBytes());
+        cache.invalidateAll();
+        assertEquals(0, cache.getOffHeapBytes());
+    }
+
+    private static class CountingProvider implements SecretProvider {
+        private final AtomicInteger reads = new AtomicInteger();
+        private volatile RuntimeException failing;
+
+        @Override
+        public Map<String, String> getSecret(String path) {
+            reads.incrementAndGet();
+            if (failing != null) {
+                throw failing;
+            }
+            Map<String, String> secrets = new HashMap<>();
+            secrets.put("username", "root");
+            return secrets;
+        }
+
+        @Override
+        public Map<String, String> getSecret(String path, String key) {
+            return Map.of(key, getSecret(path).get(key));
+        }
+
+        @Override
+        public void addSecret(String secretEngine, String secretName) {
+        }
+
+        @Override
+        public void addSecret(String secretEngine, String secretName, Map<String, String> data, Map<String, String> options) {
+        }
+
+        @Override
+        public void patchSecret(String secretEngine, String secretName, Map<String, String> data, Map<String, String> options) {
+        }
+
+        @Override
+        public void destroySecret(String secretEngine, String secretName, Optional<String> secretVersion) {
+        }
+    }
+}
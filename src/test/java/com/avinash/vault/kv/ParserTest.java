@@ -5,6 +5,12 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.junit.jupiter.api.Test;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
 @Slf4j
 public class ParserTest {
     @Test
@@ -15,4 +21,16 @@ public class ParserTest {
         VaultResponse vaultResponse = objectMapper.readValue(response, VaultResponse.class);
         log.info(vaultResponse.getData().getData().toString());
     }
+
+    @Test
+    void decodeVaultResponseTest() throws IOException {
+        String response = "{\"request_id\":\"b39595c5-9107-4066-aef1-303bcc391027\",\"lease_id\":\"\",\"renewable\":false,\"lease_duration\":0,\"data\":{\"data\":{\"registry_pwd\":\"dummyPassword\",\"registry_usr_info\":\"admin\"},\"metadata\":{\"created_time\":\"2022-03-28T10:22:52.997559047Z\",\"custom_metadata\":{\"owner\":\"kafka\"},\"deletion_time\":\"\",\"destroyed\":false,\"version\":3}},\"wrap_info\":null,\"warnings\":null,\"auth\":{\"client_token\":\"ignored\"}}";
+
+        VaultResponse expected = new ObjectMapper().readValue(response, VaultResponse.class);
+        VaultResponse decoded = VaultResponseDecoder.decode(response.getBytes(StandardCharsets.UTF_8));
+        assertEquals(expected.getData(), decoded.getData());
+        assertEquals(expected.getRequest_id(), decoded.getRequest_id());
+        assertEquals(3, decoded.getData().getMetadata().getVersion());
+        assertNull(decoded.getAuth());
+    }
 }
@@ -0,0 +1,52 @@
+package com.avinash.vault.kv;
+
+import com.avinash.vault.kv.exceptions.SecretNotFoundException;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SecretSnapshotTest {
+
+    @Test
+    void keysAreLookedUpThroughTheIndex() {
+        Map<String, String> data = new HashMap<>();
+        for (int i = 0; i < 100; i++) {
+            data.put("key_" + i, "value_" + i);
+        }
+        VaultResponse response = VaultResponse.of(data, 3);
+        response.setLease_duration(60);
+        SecretSnapshot snapshot = SecretSnapshot.of("/v1/kv/data/db", response);
+
+        assertEquals(100, snapshot.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals("value_" + i, snapshot.get("key_" + i));
+        }
+        assertNull(snapshot.get("missing"));
+        assertFalse(snapshot.containsKey(null));
+        assertThrows(SecretNotFoundException.class, () -> snapshot.getRequired("missing"));
+        assertEquals(data, snapshot.asMap());
+        assertEquals(3, snapshot.getVersion());
+        assertEquals(60_000, snapshot.getLeaseDurationMillis());
+        assertThrows(UnsupportedOperationException.class, () -> snapshot.asMap().put("key_0", "changed"));
+    }
+
+    @Test
+    void selectedKeysShareTheSnapshot() {
+        SecretSnapshot snapshot = SecretSnapshot.of("/v1/kv/data/db",
+            VaultResponse.of(Map.of("username", "root", "password", "asd", "host", "db"), 2));
+
+        SecretSnapshot selected = snapshot.select(List.of("password", "username", "password"));
+        assertEquals(Map.of("username", "root", "password", "asd"), selected.asMap());
+        assertNull(selected.get("host"));
+        assertEquals(2, selected.getVersion());
+        assertEquals(Map.of("password", "asd"), selected.select(Set.of("password")).asMap());
+        assertThrows(SecretNotFoundException.class, () -> selected.select(Set.of("host")));
+        assertSame(snapshot, snapshot.select(Set.of("username", "password", "host")));
+        assertFalse(selected.toString().contains("asd"));
+    }
+}
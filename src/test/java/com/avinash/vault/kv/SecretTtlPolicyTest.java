@@ -0,0 +1,29 @@
+package com.avinash.vault.kv;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SecretTtlPolicyTest {
+
+    private final SecretTtlPolicy policy = SecretTtlPolicy.of(3_600_000L,
+        "/v1/kv/data/avinash/**=600000, /v1/kv/data/shared/*=86400000");
+
+    @Test
+    void leaseWins() {
+        VaultResponse response = VaultResponse.of(Map.of());
+        response.setLease_duration(30);
+        assertEquals(30_000L, policy.ttlOf("/v1/kv/data/avinash/mm2", response));
+    }
+
+    @Test
+    void firstMatchingPatternThenDefault() {
+        VaultResponse response = VaultResponse.of(Map.of());
+        assertEquals(600_000L, policy.ttlOf("/v1/kv/data/avinash/team/mm2", response));
+        assertEquals(86_400_000L, policy.ttlOf("/v1/kv/data/shared/truststore", response));
+        assertEquals(3_600_000L, policy.ttlOf("/v1/kv/data/shared/team/truststore", response));
+        assertNull(SecretTtlPolicy.NONE.ttlOf("/v1/kv/data/shared/truststore", response));
+    }
+}
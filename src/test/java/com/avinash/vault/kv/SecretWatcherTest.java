@@ -0,0 +1,144 @@
+package com.avinash.vault.kv;
+
+import org.apache.kafka.common.config.ConfigData;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SecretWatcherTest {
+
+    private static final String PATH = "/v1/kv/data/db";
+
+    @Test
+    void notifiesOnlyChangedSubscribedKeys() {
+        FakeVault vault = new FakeVault();
+        vault.secrets.put("username", "root");
+        vault.secrets.put("password", "one");
+        List<String> evicted = new ArrayList<>();
+        List<ConfigData> changes = new ArrayList<>();
+        try (SecretWatcher watcher = new SecretWatcher(vault, evicted::add, 60_000, 4)) {
+            watcher.subscribe(PATH, Set.of("password"), (path, data) -> changes.add(data));
+
+            // unchanged version, only the metadata is read
+            watcher.poll(PATH).join();
+            assertEquals(1, vault.secretReads.get());
+
+            vault.version = 2;
+            vault.secrets.put("username", "admin");
+            watcher.poll(PATH).join();
+            assertTrue(changes.isEmpty());
+
+            vault.version = 3;
+            vault.secrets.put("password", "two");
+            watcher.poll(PATH).join();
+            assertEquals(1, changes.size());
+            assertEquals(Map.of("password", "two"), changes.get(0).data());
+            assertEquals(List.of(PATH, PATH), evicted);
+            assertEquals(4, vault.metadataReads.get());
+        }
+    }
+
+    @Test
+    void keysSubscribedLaterAreComparedToTheLastSeenVersion() {
+        FakeVault vault = new FakeVault();
+        vault.secrets.put("username", "root");
+        vault.secrets.put("password", "one");
+        List<ConfigData> changes = new ArrayList<>();
+        try (SecretWatcher watcher = new SecretWatcher(vault, path -> { }, 60_000, 4)) {
+            watcher.subscribe(PATH, Set.of("password"), (path, data) -> { });
+            watcher.poll(PATH).join();
+            watcher.subscribe(PATH, Set.of("username", "token"), (path, data) -> changes.add(data));
+
+            vault.version = 2;
+            vault.secrets.put("password", "two");
+            watcher.poll(PATH).join();
+            assertTrue(changes.isEmpty());
+
+            vault.version = 3;
+            vault.secrets.put("username", "admin");
+            vault.secrets.put("token", "new");
+            watcher.poll(PATH).join();
+            assertEquals(1, changes.size());
+            assertEquals(Map.of("username", "admin", "token", "new"), changes.get(0).data());
+        }
+    }
+
+    @Test
+    void unsubscribingTheLastKeyStopsWatchingThePath() {
+        FakeVault vault = new FakeVault();
+        try (SecretWatcher watcher = new SecretWatcher(vault, path -> { }, 60_000, 4)) {
+            watcher.subscribe(PATH, Set.of("a", "b"), (path, data) -> { });
+            watcher.unsubscribe(PATH, Set.of("a"), (path, data) -> { });
+            assertEquals(1, watcher.watchedPaths());
+            watcher.unsubscribeAll();
+            assertEquals(0, watcher.watchedPaths());
+        }
+    }
+
+    private static class FakeVault implements AsyncSecretProvider {
+        private final Map<String, String> secrets = new HashMap<>();
+        private final AtomicInteger metadataReads = new AtomicInteger();
+        private final AtomicInteger secretReads = new AtomicInteger();
+        private volatile long version = 1;
+
+        @Override
+        public CompletableFuture<VaultMetadataResponse> readMetadataAsync(String path) {
+            metadataReads.incrementAndGet();
+            VaultMetadataResponse response = new VaultMetadataResponse();
+            response.setData(new VaultMetadataResponse.KvMetadata());
+            response.getData().setCurrent_version(version);
+            return CompletableFuture.completedFuture(response);
+        }
+
+        @Override
+        public CompletableFuture<VaultResponse> readSecretAsync(String path) {
+            secretReads.incrementAndGet();
+            return CompletableFuture.completedFuture(VaultResponse.of(new HashMap<>(secrets)));
+        }
+
+        @Override
+        public CompletableFuture<Map<String, String>> getSecretAsync(String path) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public CompletableFuture<Map<String, String>> getSecretAsync(String path, String key) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public CompletableFuture<Map<String, SecretResult>> getSecretsAsync(Collection<String> paths) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public CompletableFuture<Void> addSecretAsync(String secretEngine, String secretName) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public CompletableFuture<Void> addSecretAsync(String secretEngine, String secretName, Map<String, String> data, Map<String, String> options) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public CompletableFuture<Void> patchSecretAsync(String secretEngine, String secretName, Map<String, String> data, Map<String, String> options) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public CompletableFuture<Void> destroySecretAsync(String secretEngine, String secretName, Optional<String> secretVersion) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.avinash.vault.kv;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SnapshotFileTest {
+
+    private static final SecretKey KEY = new SecretKeySpec(new byte[16], "AES");
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void recordsSurviveReopening() throws Exception {
+        Path file = dir.resolve("snapshot");
+        try (SnapshotFile snapshot = SnapshotFile.open(file, KEY)) {
+            snapshot.put("/v1/kv/data/db", 1, Map.of("password", "one"));
+            snapshot.put("/v1/kv/data/db", 2, Map.of("password", "two"));
+            snapshot.put("/v1/kv/data/gone", 1, Map.of("password", "old"));
+            snapshot.delete("/v1/kv/data/gone");
+        }
+        assertFalse(new String(Files.readAllBytes(file)).contains("two"));
+        try (SnapshotFile snapshot = SnapshotFile.open(file, KEY)) {
+            assertEquals(2, snapshot.get("/v1/kv/data/db").version);
+            assertEquals("two", snapshot.get("/v1/kv/data/db").data.get("password"));
+            assertNull(snapshot.get("/v1/kv/data/gone"));
+        }
+    }
+
+    @Test
+    void tornRecordIsCutOffAndUnreadableFileIsKeptAside() throws Exception {
+        Path file = dir.resolve("snapshot");
+        try (SnapshotFile snapshot = SnapshotFile.open(file, KEY)) {
+            snapshot.put("/v1/kv/data/a", 1, Map.of("k", "a"));
+            snapshot.put("/v1/kv/data/b", 1, Map.of("k", "b"));
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+        try (SnapshotFile snapshot = SnapshotFile.open(file, KEY)) {
+            assertEquals("a", snapshot.get("/v1/kv/data/a").data.get("k"));
+            assertNull(snapshot.get("/v1/kv/data/b"));
+            snapshot.put("/v1/kv/data/c", 1, Map.of("k", "c"));
+        }
+        try (SnapshotFile snapshot = SnapshotFile.open(file, KEY)) {
+            assertEquals("c", snapshot.get("/v1/kv/data/c").data.get("k"));
+        }
+        byte[] other = new byte[16];
+        other[0] = 1;
+        try (SnapshotFile snapshot = SnapshotFile.open(file, new SecretKeySpec(other, "AES"))) {
+            assertTrue(snapshot.records().isEmpty());
+        }
+        // the file of the other key is still there, e.g. to go back to it
+        List<Path> aside;
+        try (Stream<Path> files = Files.list(dir)) {
+            aside = files.filter(f -> f.getFileName().toString().startsWith("snapshot.unreadable-")).collect(Collectors.toList());
+        }
+        assertEquals(1, aside.size());
+        try (SnapshotFile snapshot = SnapshotFile.open(aside.get(0), KEY)) {
+            assertEquals("c", snapshot.get("/v1/kv/data/c").data.get("k"));
+        }
+    }
+
+    @Test
+    void corruptAndReorderedRecordsAreSkipped() throws Exception {
+        Path file = dir.resolve("snapshot");
+        try (SnapshotFile snapshot = SnapshotFile.open(file, KEY)) {
+            snapshot.put("/v1/kv/data/a", 1, Map.of("k", "a"));
+            snapshot.put("/v1/kv/data/b", 1, Map.of("k", "b"));
+            snapshot.put("/v1/kv/data/c", 1, Map.of("k", "c"));
+        }
+        byte[] bytes = Files.readAllBytes(file);
+        List<int[]> frames = frames(bytes);
+        bytes[frames.get(1)[0] + frames.get(1)[1] - 1] ^= 1;
+        Files.write(file, bytes);
+        try (SnapshotFile snapshot = SnapshotFile.open(file, KEY)) {
+            assertEquals("a", snapshot.get("/v1/kv/data/a").data.get("k"));
+            assertNull(snapshot.get("/v1/kv/data/b"));
+            assertEquals("c", snapshot.get("/v1/kv/data/c").data.get("k"));
+            snapshot.put("/v1/kv/data/d", 1, Map.of("k", "d"));
+        }
+        try (SnapshotFile snapshot = SnapshotFile.open(file, KEY)) {
+            assertEquals("d", snapshot.get("/v1/kv/data/d").data.get("k"));
+        }
+
+        // swapping the frames of a and c, which are of the same length, is detected
+        bytes = Files.readAllBytes(file);
+        frames = frames(bytes);
+        int[] a = frames.get(0);
+        int[] c = frames.get(2);
+        byte[] swapped = bytes.clone();
+        System.arraycopy(bytes, a[0], swapped, c[0], a[1]);
+        System.arraycopy(bytes, c[0], swapped, a[0], c[1]);
+        Files.write(file, swapped);
+        try (SnapshotFile snapshot = SnapshotFile.open(file, KEY)) {
+            assertNull(snapshot.get("/v1/kv/data/a"));
+            assertNull(snapshot.get("/v1/kv/data/c"));
+            assertEquals("d", snapshot.get("/v1/kv/data/d").data.get("k"));
+        }
+    }
+
+    /**
+     * @return the offset and length of each frame of a snapshot file
+     */
+    private static List<int[]> frames(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        buffer.position(8);
+        List<int[]> frames = new ArrayList<>();
+        while (buffer.remaining() >= Integer.BYTES) {
+            int offset = buffer.position();
+            int length = buffer.getInt();
+            frames.add(new int[]{offset, Integer.BYTES + length});
+            buffer.position(buffer.position() + length);
+        }
+        return frames;
+    }
+
+    @Test
+    void compactionKeepsOnlyTheLatestRecords() throws Exception {
+        Path file = dir.resolve("snapshot");
+        try (SnapshotFile snapshot = SnapshotFile.open(file, KEY)) {
+            String value = "x".repeat(4096);
+            for (int version = 1; version <= 600; version++) {
+                snapshot.put("/v1/kv/data/db", version, Map.of("password", value + version));
+            }
+            assertTrue(snapshot.needsCompaction());
+            snapshot.compact();
+            assertFalse(snapshot.needsCompaction());
+            snapshot.put("/v1/kv/data/other", 1, Map.of("k", "v"));
+        }
+        assertTrue(Files.size(file) < 16 * 1024);
+        try (SnapshotFile snapshot = SnapshotFile.open(file, KEY)) {
+            assertEquals(600, snapshot.get("/v1/kv/data/db").version);
+            assertEquals("v", snapshot.get("/v1/kv/data/other").data.get("k"));
+        }
+    }
+}
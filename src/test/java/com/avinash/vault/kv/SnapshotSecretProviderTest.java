@@ -0,0 +1,191 @@
+package com.avinash.vault.kv;
+
+import com.avinash.vault.kv.auth.TokenAuth;
+import com.avinash.vault.kv.exceptions.SecretNotFoundException;
+import com.avinash.vault.kv.exceptions.VaultException;
+import com.avinash.vault.kv.exceptions.VaultUnavailableException;
+import com.avinash.vault.kv.fake.FakeVault;
+import com.avinash.vault.kv.http.RetryPolicy;
+import com.avinash.vault.kv.http.RetryableHttp;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * {@link SnapshotSecretProvider} over a {@link Vault} talking to the in-process {@link FakeVault}.
+ */
+public class SnapshotSecretProviderTest {
+
+    private static final SecretKey KEY = new SecretKeySpec(new byte[16], "AES");
+    private static final String DB = "/v1/kv/data/db";
+
+    @TempDir
+    Path dir;
+
+    private FakeVault fake;
+    private RetryableHttp http;
+    private final List<SnapshotSecretProvider> providers = new ArrayList<>();
+
+    @BeforeEach
+    void setup() {
+        fake = new FakeVault();
+        http = RetryableHttp.httpClient();
+    }
+
+    @AfterEach
+    void tearDown() {
+        providers.forEach(SnapshotSecretProvider::close);
+        http.close();
+        fake.close();
+    }
+
+    @Test
+    void unconfirmedPathsAreServedFromTheSnapshotUntilRevalidated() throws Exception {
+        fake.put("kv", "db", Map.of("password", "one"));
+        fake.put("kv", "db", Map.of("password", "two"));
+        seed(DB, 1, Map.of("password", "one"));
+
+        // vault is down when the worker starts, the background revalidation falls back to the snapshot
+        fake.failRate(1, 503);
+        SnapshotSecretProvider provider = provider(FakeVault.ROOT_TOKEN, 0);
+        eventually(() -> provider.getSnapshotHits() == 1);
+        assertEquals(1, provider.getUnconfirmed());
+
+        fake.healthy();
+        fake.resetCounters();
+        assertEquals("one", provider.getSecret(DB).get("password"));
+        assertEquals(0, fake.requests(FakeVault.Route.READ));
+        assertEquals(2, provider.getSnapshotHits());
+
+        provider.revalidate();
+        assertEquals(0, provider.getUnconfirmed());
+        assertEquals("two", provider.getSecret(DB).get("password"));
+        assertEquals(2, provider.getSnapshotHits());
+
+        close(provider);
+        try (SnapshotFile snapshot = SnapshotFile.open(dir.resolve("snapshot"), KEY)) {
+            assertEquals(2, snapshot.get(DB).version);
+            assertEquals("two", snapshot.get(DB).data.get("password"));
+        }
+    }
+
+    @Test
+    void missingSecretIsRemovedFromTheSnapshot() throws Exception {
+        seed("/v1/kv/data/gone", 1, Map.of("password", "old"));
+
+        SnapshotSecretProvider provider = provider(FakeVault.ROOT_TOKEN, 0);
+        eventually(() -> provider.getUnconfirmed() == 0);
+        assertThrows(SecretNotFoundException.class, () -> provider.getSecret("/v1/kv/data/gone"));
+
+        close(provider);
+        try (SnapshotFile snapshot = SnapshotFile.open(dir.resolve("snapshot"), KEY)) {
+            assertNull(snapshot.get("/v1/kv/data/gone"));
+        }
+    }
+
+    @Test
+    void snapshotIsServedWhileVaultIsUnavailable() throws Exception {
+        fake.put("kv", "db", Map.of("password", "one"));
+        SnapshotSecretProvider provider = provider(FakeVault.ROOT_TOKEN, 0);
+        assertEquals("one", provider.getSecret(DB).get("password"));
+        assertEquals(0, provider.getSnapshotHits());
+
+        fake.failRate(1, 503);
+        assertEquals("one", provider.getSecret(DB).get("password"));
+        assertEquals(1, provider.getSnapshotHits());
+        assertThrows(VaultUnavailableException.class, () -> provider.getSecret("/v1/kv/data/unknown"));
+    }
+
+    @Test
+    void refusedReadsAreNotServedFromTheSnapshot() throws Exception {
+        fake.put("kv", "db", Map.of("password", "one"));
+        seed(DB, 1, Map.of("password", "one"));
+
+        // a token without access, as once its policy was revoked, vault answers 403
+        SnapshotSecretProvider provider = provider("s.revoked", 0);
+        eventually(() -> provider.getUnconfirmed() == 0);
+        VaultException e = assertThrows(VaultException.class, () -> provider.getSecret(DB));
+        assertFalse(e instanceof VaultUnavailableException);
+        assertEquals(0, provider.getSnapshotHits());
+    }
+
+    @Test
+    void secretsOlderThanTheMaxAgeAreNotServed() throws Exception {
+        fake.put("kv", "db", Map.of("password", "one"));
+        SnapshotSecretProvider provider = provider(FakeVault.ROOT_TOKEN, 200);
+        provider.getSecret(DB);
+
+        fake.failRate(1, 503);
+        assertEquals("one", provider.getSecret(DB).get("password"));
+        Thread.sleep(250);
+        assertThrows(VaultUnavailableException.class, () -> provider.getSecret(DB));
+    }
+
+    @Test
+    void bulkReadsMergeTheSnapshotAndVault() throws Exception {
+        fake.put("kv", "a", Map.of("k", "vault"));
+        fake.put("kv", "b", Map.of("k", "b"));
+        seed("/v1/kv/data/a", 1, Map.of("k", "snapshot"));
+
+        fake.failRate(1, 503);
+        SnapshotSecretProvider provider = provider(FakeVault.ROOT_TOKEN, 0);
+        eventually(() -> provider.getSnapshotHits() == 1);
+        fake.healthy();
+        fake.resetCounters();
+
+        List<String> paths = List.of("/v1/kv/data/a", "/v1/kv/data/b", "/v1/kv/data/c", "/v1/kv/data/a");
+        Map<String, SecretResult> results = provider.getSecrets(paths);
+
+        assertEquals(List.of("/v1/kv/data/a", "/v1/kv/data/b", "/v1/kv/data/c"), new ArrayList<>(results.keySet()));
+        assertEquals("snapshot", results.get("/v1/kv/data/a").getData().get("k"));
+        assertEquals("b", results.get("/v1/kv/data/b").getData().get("k"));
+        assertInstanceOf(SecretNotFoundException.class, results.get("/v1/kv/data/c").getError());
+        // the unconfirmed path is not read from vault, the duplicate is read once
+        assertEquals(2, fake.requests(FakeVault.Route.READ));
+    }
+
+    private void seed(String path, long version, Map<String, String> data) throws IOException {
+        try (SnapshotFile snapshot = SnapshotFile.open(dir.resolve("snapshot"), KEY)) {
+            snapshot.put(path, version, data);
+        }
+    }
+
+    private SnapshotSecretProvider provider(String token, long maxAgeMs) throws IOException {
+        Vault vault = Vault.builder()
+            .uri(fake.uri())
+            .auth(new TokenAuth(token))
+            .namespace("ns")
+            .http(http)
+            .retryPolicy(RetryPolicy.builder().baseDelayMs(1L).maxDelayMs(5L).build())
+            .build();
+        SnapshotSecretProvider provider = new SnapshotSecretProvider(vault, SnapshotFile.open(dir.resolve("snapshot"), KEY),
+            maxAgeMs);
+        providers.add(provider);
+        return provider;
+    }
+
+    private void close(SnapshotSecretProvider provider) {
+        providers.remove(provider);
+        provider.close();
+    }
+
+    private static void eventually(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "condition not met within 5 s");
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,400 @@
+package com.avinash.vault.kv;
+
+import com.avinash.vault.kv.auth.AppRoleAuth;
+import com.avinash.vault.kv.auth.TokenAuth;
+import com.avinash.vault.kv.exceptions.CasConflictException;
+import com.avinash.vault.kv.exceptions.DeadlineExceededException;
+import com.avinash.vault.kv.exceptions.SecretNotFoundException;
+import com.avinash.vault.kv.exceptions.VaultException;
+import com.avinash.vault.kv.exceptions.VaultInitializationException;
+import com.avinash.vault.kv.fake.FakeVault;
+import com.avinash.vault.kv.http.RetryPolicy;
+import com.avinash.vault.kv.http.RetryableHttp;
+import com.avinash.vault.kv.metrics.VaultMetrics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * {@link Vault} and {@link VaultSecretProvider} against the in-process {@link FakeVault}.
+ */
+public class VaultOfflineTest {
+
+    private FakeVault fake;
+    private RetryableHttp http;
+    private Vault vault;
+
+    @BeforeEach
+    void setup() {
+        fake = new FakeVault().appRole("role", "secret");
+        http = RetryableHttp.httpClient();
+        vault = Vault.builder()
+            .uri(fake.uri())
+            .auth(new AppRoleAuth(fake.uri(), "ns", "role", "secret", http))
+            .namespace("ns")
+            .http(http)
+            .retryPolicy(RetryPolicy.builder().baseDelayMs(1L).maxDelayMs(5L).build())
+            .build();
+    }
+
+    @AfterEach
+    void tearDown() {
+        vault.close();
+        http.close();
+        fake.close();
+    }
+
+    @Test
+    void secretsAreWrittenPatchedAndDestroyed() {
+        vault.addSecret("kv", "app/db", Map.of("username", "root", "password", "asd"), Map.of());
+        assertEquals("asd", vault.getSecret("/v1/kv/data/app/db", "password").get("password"));
+
+        Map<String, String> patch = new HashMap<>();
+        patch.put("password", "changed");
+        vault.patchSecret("kv", "app/db", patch, Map.of());
+        assertEquals(Map.of("username", "root", "password", "changed"), vault.getSecret("/v1/kv/data/app/db"));
+        assertEquals(2, vault.readMetadataAsync("/v1/kv/data/app/db").join().getData().getCurrent_version());
+
+        vault.destroySecret("kv", "app/db", Optional.of("2"));
+        assertThrows(SecretNotFoundException.class, () -> vault.getSecret("/v1/kv/data/app/db"));
+        assertThrows(SecretNotFoundException.class, () -> vault.getSecret("/v1/kv/data/missing"));
+        assertEquals(1, fake.requests(FakeVault.Route.LOGIN));
+    }
+
+    @Test
+    void asyncCallsCompleteWithTheOutcomeOfTheBlockingOnes() throws Exception {
+        vault.addSecretAsync("kv", "db", Map.of("username", "root", "password", "asd"), Map.of()).get(5, TimeUnit.SECONDS);
+        assertEquals(Map.of("username", "root", "password", "asd"), vault.getSecretAsync("/v1/kv/data/db").get(5, TimeUnit.SECONDS));
+        assertEquals(Map.of("password", "asd"), vault.getSecretAsync("/v1/kv/data/db", "password").get(5, TimeUnit.SECONDS));
+
+        // failures are the exceptions the blocking calls throw, not wrapped any further
+        ExecutionException missing = assertThrows(ExecutionException.class,
+            () -> vault.getSecretAsync("/v1/kv/data/missing").get(5, TimeUnit.SECONDS));
+        assertInstanceOf(SecretNotFoundException.class, missing.getCause());
+        ExecutionException missingKey = assertThrows(ExecutionException.class,
+            () -> vault.getSecretAsync("/v1/kv/data/db", "missing").get(5, TimeUnit.SECONDS));
+        assertInstanceOf(SecretNotFoundException.class, missingKey.getCause());
+
+        fake.failRate(1, 500);
+        CompletableFuture<Map<String, String>> failing = vault.getSecretAsync("/v1/kv/data/db");
+        ExecutionException failed = assertThrows(ExecutionException.class, () -> failing.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(VaultException.class, failed.getCause());
+        assertFalse(failed.getCause() instanceof CompletionException);
+        VaultException thrown = assertThrows(VaultException.class, () -> vault.getSecret("/v1/kv/data/db"));
+        assertEquals(thrown.getClass(), failed.getCause().getClass());
+    }
+
+    @Test
+    void versionedWritesCheckAndSetAndAreReadBackFromTheCache() {
+        CachingSecretProvider cache = new CachingSecretProvider(vault, "ns", 60_000, 10);
+        assertEquals(1, cache.writeSecret("kv", "db", Map.of("username", "root", "password", "asd"), 0L));
+        assertThrows(CasConflictException.class, () -> cache.writeSecret("kv", "db", Map.of("username", "admin"), 0L));
+        assertEquals("root", cache.getSecret("/v1/kv/data/db").get("username"));
+        assertEquals(1, fake.requests(FakeVault.Route.READ));
+
+        // the writer reads its own write from the cache
+        assertEquals(2, cache.writePatch("kv", "db", Map.of("password", "changed"), 1L));
+        assertEquals(Map.of("username", "root", "password", "changed"), cache.getSecret("/v1/kv/data/db"));
+        assertEquals(2, cache.readSecret("/v1/kv/data/db").getData().getMetadata().getVersion());
+        assertEquals(1, fake.requests(FakeVault.Route.READ));
+
+        // someone else wrote in between
+        fake.put("kv", "db", Map.of("username", "other", "password", "theirs"));
+        assertThrows(CasConflictException.class, () -> cache.writePatch("kv", "db", Map.of("password", "mine"), 2L));
+        assertEquals("theirs", cache.getSecret("/v1/kv/data/db").get("password"));
+        assertEquals(2, fake.requests(FakeVault.Route.READ));
+    }
+
+    @Test
+    void checkAndSetWriteFailingOnceAppliedIsNotRetriedIntoAConflict() {
+        assertEquals(1, vault.writeSecret("kv", "db", Map.of("username", "root"), 0L));
+        fake.failNextWritesAfterApplying(1, 500);
+        VaultException thrown = assertThrows(VaultException.class,
+            () -> vault.writeSecret("kv", "db", Map.of("username", "admin"), 1L));
+        assertFalse(thrown instanceof CasConflictException);
+        assertEquals(2, fake.requests(FakeVault.Route.WRITE));
+        assertEquals(2, fake.version("kv", "db"));
+        assertEquals("admin", vault.getSecret("/v1/kv/data/db").get("username"));
+
+        // a write without check-and-set is idempotent, it is retried
+        fake.failNextWritesAfterApplying(1, 500);
+        vault.addSecret("kv", "db", Map.of("username", "root"), Map.of());
+        assertEquals(4, fake.requests(FakeVault.Route.WRITE));
+        assertEquals(4, fake.version("kv", "db"));
+    }
+
+    @Test
+    void writesResetOnceAppliedAreOnlyResentWhenIdempotent() {
+        assertEquals(1, vault.writeSecret("kv", "db", Map.of("username", "root"), 0L));
+        fake.resetNextWritesAfterApplying(1);
+        VaultException thrown = assertThrows(VaultException.class,
+            () -> vault.writeSecret("kv", "db", Map.of("username", "admin"), 1L));
+        assertFalse(thrown instanceof CasConflictException);
+        assertEquals(2, fake.requests(FakeVault.Route.WRITE));
+        assertEquals(2, fake.version("kv", "db"));
+
+        // a patch is applied once
+        fake.resetNextWritesAfterApplying(1);
+        assertThrows(VaultException.class, () -> vault.patchSecret("kv", "db", Map.of("password", "asd"), Map.of()));
+        assertEquals(1, fake.requests(FakeVault.Route.PATCH));
+        assertEquals(3, fake.version("kv", "db"));
+
+        // a write without check-and-set is idempotent, it is resent
+        fake.resetNextWritesAfterApplying(1);
+        vault.addSecret("kv", "db", Map.of("username", "root"), Map.of());
+        assertEquals(4, fake.requests(FakeVault.Route.WRITE));
+        assertEquals(Map.of("username", "root"), fake.get("kv", "db"));
+    }
+
+    @Test
+    void injectedFailuresAndResetsAreRetried() {
+        fake.put("kv", "db", Map.of("username", "root"));
+        // logs in first, so that the injected faults hit the reads
+        vault.getSecret("/v1/kv/data/db");
+        fake.resetCounters();
+
+        fake.failNext(2, 503);
+        assertEquals("root", vault.getSecret("/v1/kv/data/db").get("username"));
+        assertEquals(3, fake.requests(FakeVault.Route.READ));
+
+        fake.resetNext(1);
+        assertEquals("root", vault.getSecret("/v1/kv/data/db").get("username"));
+        assertEquals(5, fake.requests(FakeVault.Route.READ));
+    }
+
+    @Test
+    void callsOfADeadlineViewFailAtTheDeadline() {
+        fake.put("kv", "db", Map.of("username", "root"));
+        vault.getSecret("/v1/kv/data/db");
+        fake.latency(Duration.ofMillis(500));
+
+        long start = System.nanoTime();
+        assertThrows(DeadlineExceededException.class, () -> vault.withDeadline(Duration.ofMillis(100)).getSecret("/v1/kv/data/db"));
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(450));
+
+        // retries of reads stop at the deadline too, with the last failure or at the deadline itself
+        fake.healthy().failRate(1, 503);
+        fake.resetCounters();
+        start = System.nanoTime();
+        assertThrows(VaultException.class, () -> vault.withDeadline(Duration.ofMillis(100)).getSecret("/v1/kv/data/db"));
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(450));
+        assertTrue(fake.requests(FakeVault.Route.READ) > 1);
+
+        // a retry of a write would outlive the deadline, which is shorter than the request timeout, so none is sent
+        assertThrows(VaultException.class, () -> vault.withDeadline(Duration.ofMillis(100))
+            .addSecret("kv", "db", Map.of("username", "admin"), Map.of()));
+        assertEquals(1, fake.requests(FakeVault.Route.WRITE));
+        fake.healthy();
+        assertEquals("root", vault.getSecret("/v1/kv/data/db").get("username"));
+    }
+
+    @Test
+    void readsGoToTheFastestNodeAndFailOver() throws Exception {
+        try (FakeVault standby = new FakeVault().health(473)) {
+            fake.latency(Duration.ofMillis(30));
+            for (FakeVault node : List.of(fake, standby)) {
+                node.put("kv", "db", Map.of("username", "root"));
+            }
+            // tokens are valid on every node of a cluster, the fakes only share the root token
+            Vault cluster = Vault.builder()
+                .auth(new TokenAuth(FakeVault.ROOT_TOKEN))
+                .namespace("ns")
+                .http(http)
+                .retryPolicy(RetryPolicy.builder().baseDelayMs(1L).maxDelayMs(5L).build())
+                .endpoints(List.of(VaultEndpoint.active(fake.uri()), VaultEndpoint.standby(standby.uri())))
+                .healthCheckMillis(50L)
+                .build();
+            try {
+                for (int i = 0; i < 20; i++) {
+                    assertEquals("root", cluster.getSecret("/v1/kv/data/db").get("username"));
+                }
+                assertTrue(standby.requests(FakeVault.Route.READ) > fake.requests(FakeVault.Route.READ), cluster.describeEndpoints());
+
+                cluster.addSecret("kv", "db", Map.of("username", "admin"), Map.of());
+                assertEquals(1, fake.requests(FakeVault.Route.WRITE));
+                assertEquals(0, standby.requests(FakeVault.Route.WRITE));
+
+                // the standby drops every connection, reads fail over to the active node
+                standby.resetRate(1);
+                for (int i = 0; i < 5; i++) {
+                    assertEquals("admin", cluster.getSecret("/v1/kv/data/db").get("username"));
+                }
+            } finally {
+                cluster.close();
+            }
+        }
+    }
+
+    @Test
+    void providerResolvesKeysFromTheFake() {
+        fake.put("kv", "db", Map.of("username", "root", "password", "asd"));
+        VaultSecretProvider provider = new VaultSecretProvider();
+        try {
+            provider.configure(providerConfigs());
+            assertEquals(Map.of("password", "asd"), provider.get("/v1/kv/data/db", Set.of("password")).data());
+        } finally {
+            provider.close();
+        }
+    }
+
+    @Test
+    void providerPrefetchesTheSecretsUnderThePrefixes() {
+        for (String name : List.of("app/db", "app/kafka/sasl", "app/kafka/ssl/keystore", "other/db")) {
+            fake.put("kv", name, Map.of("password", name));
+        }
+        assertEquals(List.of("/v1/kv/data/app/db", "/v1/kv/data/app/kafka/sasl", "/v1/kv/data/app/kafka/ssl/keystore"),
+            vault.listSecretPaths("/v1/kv/data/app"));
+        assertEquals(List.of(), vault.listSecretPaths("/v1/kv/data/missing/"));
+        fake.resetCounters();
+
+        Map<String, String> configs = providerConfigs();
+        configs.put("cache.ttl.ms", "60000");
+        configs.put("prefetch.paths", "/v1/kv/data/app/*, /v1/kv/data/missing/");
+        VaultSecretProvider provider = new VaultSecretProvider();
+        try {
+            provider.configure(configs);
+            assertEquals(4, fake.requests(FakeVault.Route.LIST));
+            assertEquals(3, fake.requests(FakeVault.Route.READ));
+
+            assertEquals(Map.of("password", "app/kafka/ssl/keystore"),
+                provider.get("/v1/kv/data/app/kafka/ssl/keystore", Set.of("password")).data());
+            assertEquals(3, fake.requests(FakeVault.Route.READ));
+        } finally {
+            provider.close();
+        }
+    }
+
+    @Test
+    void providersConfiguredAlikeShareOneClient() {
+        fake.put("kv", "db", Map.of("username", "root", "password", "asd"));
+        Map<String, String> configs = providerConfigs();
+        configs.put("cache.ttl.ms", "60000");
+        VaultSecretProvider worker = new VaultSecretProvider();
+        VaultSecretProvider mirrorMaker = new VaultSecretProvider();
+        VaultSecretProvider unshared = new VaultSecretProvider();
+        try {
+            worker.configure(configs);
+            // settings of a provider on its own do not prevent sharing
+            Map<String, String> watched = new HashMap<>(configs);
+            watched.put("watch.interval.ms", "30000");
+            mirrorMaker.configure(watched);
+            assertEquals(Map.of("password", "asd"), worker.get("/v1/kv/data/db", Set.of("password")).data());
+            assertEquals(Map.of("username", "root"), mirrorMaker.get("/v1/kv/data/db", Set.of("username")).data());
+            assertEquals(1, fake.requests(FakeVault.Route.LOGIN));
+            assertEquals(1, fake.requests(FakeVault.Route.READ));
+
+            Map<String, String> own = new HashMap<>(configs);
+            own.put("shared.enabled", "false");
+            unshared.configure(own);
+            unshared.get("/v1/kv/data/db", Set.of("password"));
+            assertEquals(2, fake.requests(FakeVault.Route.LOGIN));
+
+            // the client outlives the first provider closed
+            worker.close();
+            assertEquals(Map.of("password", "asd"), mirrorMaker.get("/v1/kv/data/db", Set.of("password")).data());
+            assertEquals(2, fake.requests(FakeVault.Route.LOGIN));
+            assertEquals(2, fake.requests(FakeVault.Route.READ));
+        } finally {
+            worker.close();
+            mirrorMaker.close();
+            unshared.close();
+        }
+        assertEquals(0, VaultRegistry.size());
+    }
+
+    @Test
+    void reconfiguredProviderReleasesItsPreviousClient() {
+        fake.put("kv", "db", Map.of("username", "root", "password", "asd"));
+        Map<String, String> configs = providerConfigs();
+        VaultSecretProvider provider = new VaultSecretProvider();
+        try {
+            provider.configure(configs);
+            configs.put("cache.ttl.ms", "60000");
+            provider.configure(configs);
+            assertEquals(1, VaultRegistry.size());
+            assertEquals(Map.of("password", "asd"), provider.get("/v1/kv/data/db", Set.of("password")).data());
+        } finally {
+            provider.close();
+        }
+        assertEquals(0, VaultRegistry.size());
+    }
+
+    @Test
+    void clientsAreBuiltWithoutHoldingUpOtherKeys() throws Exception {
+        // a view owns nothing, releasing the clients built on it leaves the vault open
+        Vault view = vault.withDeadline(Duration.ofMinutes(1));
+        VaultRegistry.Key slow = VaultRegistry.Key.of(Map.of("url", "http://slow:8200", "namespace", "ns"));
+        VaultRegistry.Key fast = VaultRegistry.Key.of(Map.of("url", "http://fast:8200", "namespace", "ns"));
+        CountDownLatch building = new CountDownLatch(1);
+        CountDownLatch built = new CountDownLatch(1);
+        CompletableFuture<VaultRegistry.Shared> first = CompletableFuture.supplyAsync(() ->
+            VaultRegistry.acquire(slow, () -> {
+                building.countDown();
+                try {
+                    built.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return new VaultRegistry.Shared(view, view, view, new VaultMetrics());
+            }));
+        assertTrue(building.await(10, TimeUnit.SECONDS));
+        // waits for the client being built instead of building one more
+        CompletableFuture<VaultRegistry.Shared> second = CompletableFuture.supplyAsync(() ->
+            VaultRegistry.acquire(slow, () -> fail("the client of a key is built once")));
+        VaultRegistry.Shared other = VaultRegistry.acquire(fast,
+            () -> new VaultRegistry.Shared(view, view, view, new VaultMetrics()));
+        assertFalse(first.isDone());
+        assertFalse(second.isDone());
+
+        built.countDown();
+        VaultRegistry.Shared shared = first.get(10, TimeUnit.SECONDS);
+        assertSame(shared, second.get(10, TimeUnit.SECONDS));
+        VaultRegistry.release(other);
+        VaultRegistry.release(shared);
+        assertEquals(1, VaultRegistry.size());
+        VaultRegistry.release(shared);
+        assertEquals(0, VaultRegistry.size());
+    }
+
+    @Test
+    void providerWithInvalidSettingsLeavesNoClientBehind() throws Exception {
+        ObjectName metrics = new ObjectName("com.avinash.vault.kv:name=\"offline-invalid\",*");
+        for (Map.Entry<String, String> invalid : Map.of("bulk.max.in.flight", "0", "call.deadline.ms", "-1").entrySet()) {
+            Map<String, String> configs = providerConfigs();
+            configs.put("metrics.jmx.enabled", "true");
+            configs.put("metrics.name", "offline-invalid");
+            configs.put(invalid.getKey(), invalid.getValue());
+            VaultSecretProvider provider = new VaultSecretProvider();
+            assertThrows(VaultInitializationException.class, () -> provider.configure(configs));
+            assertTrue(ManagementFactory.getPlatformMBeanServer().queryNames(metrics, null).isEmpty());
+            assertEquals(0, VaultRegistry.size());
+        }
+    }
+
+    private Map<String, String> providerConfigs() {
+        Map<String, String> configs = new HashMap<>();
+        configs.put("url", fake.uri().toString());
+        configs.put("namespace", "ns");
+        configs.put("auth.mechanism", "APP_ROLE_AUTH");
+        configs.put("role.id", "role");
+        configs.put("secret.id", "secret");
+        configs.put("metrics.jmx.enabled", "false");
+        return configs;
+    }
+}
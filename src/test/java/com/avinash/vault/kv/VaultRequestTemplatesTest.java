@@ -0,0 +1,83 @@
+package com.avinash.vault.kv;
+
+import com.avinash.vault.kv.exceptions.VaultException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Flow;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class VaultRequestTemplatesTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Test
+    void requestsAreCopiesOfTheTemplate() {
+        VaultRequestTemplates templates = new VaultRequestTemplates(URI.create("http://vault:8200"), "ns", Duration.ofSeconds(7));
+        HttpRequest request = templates.request("/v1/kv/data/app/db", "token").GET().build();
+
+        assertEquals(URI.create("http://vault:8200/v1/kv/data/app/db"), request.uri());
+        assertEquals("ns", request.headers().firstValue("X-Vault-Namespace").orElseThrow());
+        assertEquals("token", request.headers().firstValue("X-Vault-Token").orElseThrow());
+        assertEquals(Duration.ofSeconds(7), request.timeout().orElseThrow());
+        // the token of a request never leaks into the next one
+        assertEquals(List.of("other"), templates.request("/v1/kv/data/app/db", "other").GET().build()
+            .headers().allValues("X-Vault-Token"));
+        assertSame(templates.uri("/v1/kv/data/app/db"), templates.uri("/v1/kv/data/app/db"));
+        assertThrows(VaultException.class, () -> templates.uri("/v1/kv/data/app db"));
+    }
+
+    @Test
+    void pathsAndBodiesAreEncodedForKv2() throws Exception {
+        assertEquals("/v1/kv/data/app/db", VaultRequestTemplates.dataPath("kv", "app/db"));
+        assertEquals("/v1/kv/metadata/app/db", VaultRequestTemplates.metadataPath("/v1/kv/data/app/db"));
+        assertEquals("/v1/kv/metadata/app/?list=true", VaultRequestTemplates.listPath("/v1/kv/data/app/"));
+        assertEquals("/v1/kv/destroy/app/db", VaultRequestTemplates.destroyPath("kv", "app/db"));
+        assertThrows(VaultException.class, () -> VaultRequestTemplates.metadataPath("/v1/secret/app/db"));
+
+        assertEquals(MAPPER.readTree("{\"versions\":[3]}"), body(VaultRequestTemplates.destroy(3)));
+        assertEquals(MAPPER.readTree("{\"data\":{},\"options\":{}}"), body(VaultRequestTemplates.emptySecret()));
+        JsonNode secret = body(VaultRequestTemplates.secret(Map.of("password", "asd"), VaultRequestTemplates.casOptions(2L)));
+        assertEquals("asd", secret.path("data").path("password").asText());
+        assertEquals("2", secret.path("options").path("cas").asText());
+    }
+
+    /**
+     * Reads the body as the http client would send it.
+     */
+    private static JsonNode body(HttpRequest.BodyPublisher publisher) throws Exception {
+        HttpResponse.BodySubscriber<byte[]> bytes = HttpResponse.BodySubscribers.ofByteArray();
+        publisher.subscribe(new Flow.Subscriber<>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                bytes.onSubscribe(subscription);
+            }
+
+            @Override
+            public void onNext(ByteBuffer item) {
+                bytes.onNext(List.of(item));
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                bytes.onError(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                bytes.onComplete();
+            }
+        });
+        return MAPPER.readTree(new String(bytes.getBody().toCompletableFuture().join(), StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,182 @@
+package com.avinash.vault.kv.auth;
+
+import com.avinash.vault.kv.exceptions.VaultInitializationException;
+import com.avinash.vault.kv.fake.FakeVault;
+import com.avinash.vault.kv.http.RetryableHttp;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RenewableTokenAuthTest {
+
+    private HttpServer server;
+    private URI uri;
+    private final AtomicInteger logins = new AtomicInteger();
+    private final AtomicInteger renewals = new AtomicInteger();
+    // the lease granted by renew-self, shorter than requested once the token reaches its max ttl
+    private final AtomicLong renewedLease = new AtomicLong(7200);
+    private final AtomicBoolean lookedUpRenewable = new AtomicBoolean();
+    private final AtomicReference<String> renewRequest = new AtomicReference<>();
+
+    @BeforeEach
+    void startVault() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/v1/auth/approle/login", exchange -> {
+            int login = logins.incrementAndGet();
+            respond(exchange, "{\"auth\":{\"client_token\":\"token-" + login + "\",\"lease_duration\":7200,\"renewable\":true}}");
+        });
+        server.createContext("/v1/auth/token/renew-self", exchange -> {
+            renewals.incrementAndGet();
+            renewRequest.set(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+            respond(exchange, "{\"auth\":{\"client_token\":\"" + exchange.getRequestHeaders().getFirst("X-Vault-Token")
+                + "\",\"lease_duration\":" + renewedLease.get() + ",\"renewable\":true}}");
+        });
+        server.createContext("/v1/auth/token/lookup-self", exchange ->
+            respond(exchange, "{\"data\":{\"ttl\":3600,\"creation_ttl\":7200,\"renewable\":" + lookedUpRenewable.get() + "}}"));
+        server.start();
+        uri = URI.create("http://127.0.0.1:" + server.getAddress().getPort());
+    }
+
+    @AfterEach
+    void stopVault() {
+        server.stop(0);
+    }
+
+    @Test
+    void renewsTheTokenUntilItsMaxTtlThenLogsIn() {
+        AppRoleAuth auth = new AppRoleAuth(uri, "ns", "role", "secret", RetryableHttp.httpClient());
+        try {
+            assertEquals("token-1", auth.getToken());
+            auth.refreshToken();
+            assertEquals("token-1", auth.getToken());
+            assertEquals(1, logins.get());
+            assertEquals(1, renewals.get());
+
+            renewedLease.set(600);
+            auth.refreshToken();
+            assertEquals("token-1", auth.getToken());
+            auth.refreshToken();
+            assertEquals("token-2", auth.getToken());
+            assertEquals(2, logins.get());
+            assertEquals(2, renewals.get());
+        } finally {
+            auth.close();
+        }
+    }
+
+    @Test
+    void appRoleTokenIsRenewedInTheBackgroundBeforeItExpires() throws Exception {
+        try (FakeVault fake = new FakeVault().appRole("role", "secret").tokenTtl(Duration.ofSeconds(2), true)) {
+            AppRoleAuth auth = new AppRoleAuth(fake.uri(), "ns", "role", "secret", RetryableHttp.httpClient(), 0.5);
+            try {
+                String token = auth.getToken();
+                long issuedAt = System.currentTimeMillis();
+                // renewed after half of its 2 seconds lease, well before it expires
+                long deadline = issuedAt + 10_000;
+                while (fake.requests(FakeVault.Route.RENEW_TOKEN) < 2 && System.currentTimeMillis() < deadline) {
+                    Thread.sleep(50);
+                }
+                assertTrue(fake.requests(FakeVault.Route.RENEW_TOKEN) >= 2);
+                assertTrue(auth.current().getExpiresAtMillis() > issuedAt + 2_000);
+                assertEquals(token, auth.getToken());
+                assertEquals(1, fake.requests(FakeVault.Route.LOGIN));
+            } finally {
+                auth.close();
+            }
+            // a closed auth renews no more, once a renewal which was in flight, if any, landed
+            Thread.sleep(200);
+            long renewals = fake.requests(FakeVault.Route.RENEW_TOKEN);
+            Thread.sleep(1_500);
+            assertEquals(renewals, fake.requests(FakeVault.Route.RENEW_TOKEN));
+        }
+    }
+
+    @Test
+    void appRoleTokenWithoutLeaseIsKeptAndNeverRenewed() throws Exception {
+        try (FakeVault fake = new FakeVault().appRole("role", "secret").tokenTtl(Duration.ZERO, false)) {
+            AppRoleAuth auth = new AppRoleAuth(fake.uri(), "ns", "role", "secret", RetryableHttp.httpClient());
+            try {
+                String token = auth.getToken();
+                for (int i = 0; i < 10; i++) {
+                    assertEquals(token, auth.getTokenAsync().join());
+                }
+                assertFalse(auth.current().isExpiring());
+                assertEquals(1, fake.requests(FakeVault.Route.LOGIN));
+                assertEquals(0, fake.requests(FakeVault.Route.RENEW_TOKEN));
+            } finally {
+                auth.close();
+            }
+        }
+    }
+
+    @Test
+    void tokenAuthLearnsItsTtl() throws Exception {
+        TokenAuth auth = new TokenAuth("static", uri, "ns", RetryableHttp.httpClient());
+        try {
+            assertEquals("static", auth.getToken());
+            TokenLookupResponse.TokenData data = auth.lookupSelf().get();
+            assertEquals(3600, data.getTtl());
+            assertFalse(data.isRenewable());
+            auth.refreshToken();
+            assertTrue(auth.current().isExpiring());
+            assertEquals("static", auth.getToken());
+            assertEquals(0, renewals.get());
+        } finally {
+            auth.close();
+        }
+    }
+
+    @Test
+    void tokenAuthIsRenewedByItsCreationTtl() throws Exception {
+        lookedUpRenewable.set(true);
+        TokenAuth auth = new TokenAuth("static", uri, "ns", RetryableHttp.httpClient());
+        try {
+            // the ttl is looked up in the background
+            long deadline = System.currentTimeMillis() + 10_000;
+            while ((auth.current() == null || !auth.current().isExpiring()) && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            long expiresIn = auth.current().getExpiresAtMillis() - System.currentTimeMillis();
+            assertTrue(expiresIn > 3_500_000 && expiresIn <= 3_600_000);
+
+            auth.refreshToken();
+            assertEquals(1, renewals.get());
+            assertEquals("{\"increment\":\"7200s\"}", renewRequest.get());
+            assertEquals("static", auth.getToken());
+        } finally {
+            auth.close();
+        }
+    }
+
+    @Test
+    void renewFractionIsValidatedOnce() {
+        assertEquals(RenewableTokenAuth.DEFAULT_RENEW_FRACTION, RenewableTokenAuth.configuredRenewFraction(Map.of()));
+        assertEquals(0.5, RenewableTokenAuth.configuredRenewFraction(Map.of("token.renew.fraction", "0.5")));
+        assertThrows(VaultInitializationException.class,
+            () -> RenewableTokenAuth.configuredRenewFraction(Map.of("token.renew.fraction", "1")));
+        assertThrows(VaultInitializationException.class,
+            () -> RenewableTokenAuth.configuredRenewFraction(Map.of("token.renew.fraction", "half")));
+    }
+
+    private static void respond(HttpExchange exchange, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(200, bytes.length);
+        exchange.getResponseBody().write(bytes);
+        exchange.close();
+    }
+}
@@ -0,0 +1,786 @@
+package com.avinash.vault.kv.fake;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An in-process stand-in for vault on the loopback interface, for integration and load tests without a real vault.
+ * <p>
+ * It serves a KV v2 engine at any mount, i.e. {@code /v1/<engine>/data/}, {@code metadata/} and {@code destroy/} with
+ * versions, check-and-set and merge patches, plus AppRole login, token renew-self and lookup-self and
+ * {@code sys/health}. Every request is counted by {@link Route}, and faults can be injected: latency, error statuses
+ * like {@code 503} or {@code 429} and connection resets, either for the next requests or for a random share of them.
+ * KV requests need a token issued by a login, or {@link #ROOT_TOKEN}.
+ */
+public final class FakeVault implements AutoCloseable {
+
+    public static final String ROOT_TOKEN = "s.fake-root";
+    public static final int DEFAULT_THREADS = 8;
+
+    static {
+        // without it the response headers and body go out as two segments, and every response waits for a delayed ack
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    /**
+     * The kinds of requests counted by the fake.
+     */
+    public enum Route {
+        LOGIN, RENEW_TOKEN, LOOKUP_TOKEN, HEALTH, READ, WRITE, PATCH, DELETE, READ_METADATA, LIST, DESTROY, UNKNOWN
+    }
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final ScheduledExecutorService delayer;
+    // keyed by <engine>/<name>
+    private final ConcurrentMap<String, Secret> secrets = new ConcurrentHashMap<>();
+    private final Set<String> tokens = ConcurrentHashMap.newKeySet();
+    private final AtomicLong tokenIds = new AtomicLong();
+    private final Map<Route, LongAdder> requests = new EnumMap<>(Route.class);
+
+    private volatile String roleId;
+    private volatile String secretId;
+    private volatile long tokenTtlSeconds = 3600;
+    private volatile boolean tokenRenewable = true;
+    private volatile long minLatencyMs;
+    private volatile long maxLatencyMs;
+    private final AtomicInteger failuresLeft = new AtomicInteger();
+    private final AtomicInteger appliedFailuresLeft = new AtomicInteger();
+    private final AtomicInteger appliedResetsLeft = new AtomicInteger();
+    private volatile int failureStatus = 503;
+    private volatile double failureRate;
+    private final AtomicInteger resetsLeft = new AtomicInteger();
+    private volatile double resetRate;
+    private volatile String retryAfter;
+    private volatile int healthStatus = 200;
+
+    public FakeVault() {
+        this(DEFAULT_THREADS);
+    }
+
+    /**
+     * @param threads the threads answering requests, delayed answers are sent from as many other threads
+     */
+    public FakeVault(int threads) {
+        for (Route route : Route.values()) {
+            requests.put(route, new LongAdder());
+        }
+        this.executor = Executors.newFixedThreadPool(threads, daemon("fake-vault"));
+        this.delayer = Executors.newScheduledThreadPool(threads, daemon("fake-vault-delayed"));
+        try {
+            server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        server.createContext("/v1/", this::receive);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public URI uri() {
+        return URI.create("http://127.0.0.1:" + server.getAddress().getPort());
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+        delayer.shutdownNow();
+    }
+
+    // ---- state
+
+    /**
+     * Writes a new version of the secret, as a {@code PUT} to its data path would.
+     *
+     * @return the new version
+     */
+    public long put(String engine, String name, Map<String, String> data) {
+        return secret(engine, name).write(new LinkedHashMap<>(data));
+    }
+
+    /**
+     * @return the data of the current version of the secret, null if there is none or it is deleted or destroyed
+     */
+    public Map<String, String> get(String engine, String name) {
+        Secret secret = secrets.get(engine + "/" + name);
+        if (secret == null) {
+            return null;
+        }
+        synchronized (secret) {
+            Version current = secret.versions.get(secret.currentVersion);
+            return current == null || !current.isReadable() ? null : new LinkedHashMap<>(current.data);
+        }
+    }
+
+    /**
+     * @return the current version of the secret, 0 if there is none
+     */
+    public long version(String engine, String name) {
+        Secret secret = secrets.get(engine + "/" + name);
+        if (secret == null) {
+            return 0;
+        }
+        synchronized (secret) {
+            return secret.currentVersion;
+        }
+    }
+
+    /**
+     * Only accepts logins with these credentials, any are accepted until then.
+     */
+    public FakeVault appRole(String roleId, String secretId) {
+        this.roleId = roleId;
+        this.secretId = secretId;
+        return this;
+    }
+
+    public FakeVault tokenTtl(Duration ttl, boolean renewable) {
+        this.tokenTtlSeconds = ttl.getSeconds();
+        this.tokenRenewable = renewable;
+        return this;
+    }
+
+    /**
+     * Answers {@code sys/health} with the status, e.g. {@code 429} for a standby or {@code 473} for a performance
+     * standby, {@code 200} for the active node by default.
+     */
+    public FakeVault health(int status) {
+        this.healthStatus = status;
+        return this;
+    }
+
+    /**
+     * Revokes every token issued so far, the next requests with them are denied with {@code 403}.
+     */
+    public void revokeTokens() {
+        tokens.clear();
+    }
+
+    // ---- faults
+
+    /**
+     * Delays every answer by this fixed latency.
+     */
+    public FakeVault latency(Duration latency) {
+        return latency(latency, latency);
+    }
+
+    /**
+     * Delays every answer by a latency uniformly distributed between the bounds.
+     */
+    public FakeVault latency(Duration min, Duration max) {
+        this.minLatencyMs = min.toMillis();
+        this.maxLatencyMs = Math.max(min.toMillis(), max.toMillis());
+        return this;
+    }
+
+    /**
+     * Answers the next requests with the status, e.g. {@code 503} or {@code 429}, before any other processing.
+     */
+    public FakeVault failNext(int count, int status) {
+        this.failureStatus = status;
+        failuresLeft.set(count);
+        return this;
+    }
+
+    /**
+     * Applies the next writes and patches, then answers them with the status, e.g. {@code 500}, as if vault failed
+     * once the write was committed.
+     */
+    public FakeVault failNextWritesAfterApplying(int count, int status) {
+        this.failureStatus = status;
+        appliedFailuresLeft.set(count);
+        return this;
+    }
+
+    /**
+     * Applies the next writes and patches, then closes their connection without answering them, as if it was lost
+     * once the write was committed.
+     */
+    public FakeVault resetNextWritesAfterApplying(int count) {
+        appliedResetsLeft.set(count);
+        return this;
+    }
+
+    /**
+     * Answers a random share of the requests with the status.
+     *
+     * @param rate between 0 and 1
+     */
+    public FakeVault failRate(double rate, int status) {
+        this.failureStatus = status;
+        this.failureRate = rate;
+        return this;
+    }
+
+    /**
+     * Sends a {@code Retry-After} header with every injected failure, none if null.
+     */
+    public FakeVault retryAfter(Duration retryAfter) {
+        this.retryAfter = retryAfter == null ? null : String.valueOf(retryAfter.getSeconds());
+        return this;
+    }
+
+    /**
+     * Closes the connection of the next requests without answering them.
+     */
+    public FakeVault resetNext(int count) {
+        resetsLeft.set(count);
+        return this;
+    }
+
+    /**
+     * Closes the connection of a random share of the requests without answering them.
+     *
+     * @param rate between 0 and 1
+     */
+    public FakeVault resetRate(double rate) {
+        this.resetRate = rate;
+        return this;
+    }
+
+    /**
+     * Removes all the injected faults and the latency.
+     */
+    public FakeVault healthy() {
+        minLatencyMs = 0;
+        maxLatencyMs = 0;
+        failuresLeft.set(0);
+        appliedFailuresLeft.set(0);
+        appliedResetsLeft.set(0);
+        failureRate = 0;
+        resetsLeft.set(0);
+        resetRate = 0;
+        retryAfter = null;
+        return this;
+    }
+
+    // ---- counters
+
+    public long requests() {
+        long total = 0;
+        for (LongAdder count : requests.values()) {
+            total += count.sum();
+        }
+        return total;
+    }
+
+    public long requests(Route route) {
+        return requests.get(route).sum();
+    }
+
+    public Map<Route, Long> requestCounts() {
+        Map<Route, Long> counts = new EnumMap<>(Route.class);
+        requests.forEach((route, count) -> {
+            if (count.sum() > 0) {
+                counts.put(route, count.sum());
+            }
+        });
+        return counts;
+    }
+
+    public void resetCounters() {
+        requests.values().forEach(LongAdder::reset);
+    }
+
+    // ---- serving
+
+    private void receive(HttpExchange exchange) {
+        long delay = minLatencyMs + (maxLatencyMs > minLatencyMs
+            ? ThreadLocalRandom.current().nextLong(maxLatencyMs - minLatencyMs + 1) : 0);
+        if (delay > 0) {
+            delayer.schedule(() -> serve(exchange), delay, TimeUnit.MILLISECONDS);
+        } else {
+            serve(exchange);
+        }
+    }
+
+    private void serve(HttpExchange exchange) {
+        try {
+            String method = exchange.getRequestMethod();
+            String path = exchange.getRequestURI().getPath();
+            String query = exchange.getRequestURI().getQuery();
+            byte[] body = exchange.getRequestBody().readAllBytes();
+            Request request = new Request(exchange, method, path, query, body);
+            requests.get(request.route).increment();
+
+            if (consume(resetsLeft) || chance(resetRate)) {
+                // closing before the response headers drops the connection, the client sees it reset
+                exchange.close();
+                return;
+            }
+            if (consume(failuresLeft) || chance(failureRate)) {
+                if (retryAfter != null) {
+                    exchange.getResponseHeaders().add("Retry-After", retryAfter);
+                }
+                error(exchange, failureStatus, "injected failure");
+                return;
+            }
+            handle(request);
+        } catch (Exception e) {
+            try {
+                error(exchange, 500, e.toString());
+            } catch (IOException ignored) {
+                exchange.close();
+            }
+        }
+    }
+
+    private void handle(Request request) throws IOException {
+        HttpExchange exchange = request.exchange;
+        switch (request.route) {
+            case HEALTH:
+                int status = healthStatus;
+                ObjectNode health = MAPPER.createObjectNode()
+                    .put("initialized", true).put("sealed", status == 503).put("standby", status == 429 || status == 473)
+                    .put("performance_standby", status == 473);
+                respond(exchange, status, health);
+                return;
+            case LOGIN:
+                login(request);
+                return;
+            default:
+        }
+        String token = exchange.getRequestHeaders().getFirst("X-Vault-Token");
+        if (token == null || !(ROOT_TOKEN.equals(token) || tokens.contains(token))) {
+            error(exchange, 403, "permission denied");
+            return;
+        }
+        switch (request.route) {
+            case RENEW_TOKEN:
+                renew(request, token);
+                return;
+            case LOOKUP_TOKEN:
+                ObjectNode lookup = MAPPER.createObjectNode();
+                lookup.putObject("data")
+                    .put("accessor", "fake-" + token.hashCode())
+                    .put("ttl", ROOT_TOKEN.equals(token) ? 0 : tokenTtlSeconds)
+                    .put("renewable", !ROOT_TOKEN.equals(token) && tokenRenewable)
+                    .put("type", "service");
+                respond(exchange, 200, lookup);
+                return;
+            case READ:
+                read(request);
+                return;
+            case WRITE:
+                write(request, false);
+                return;
+            case PATCH:
+                write(request, true);
+                return;
+            case DELETE:
+                delete(request);
+                return;
+            case READ_METADATA:
+                metadata(request);
+                return;
+            case LIST:
+                list(request);
+                return;
+            case DESTROY:
+                destroy(request);
+                return;
+            default:
+                error(exchange, 404, "no handler for route");
+        }
+    }
+
+    private void login(Request request) throws IOException {
+        JsonNode body = request.json();
+        if ((roleId != null && !roleId.equals(body.path("role_id").asText()))
+            || (secretId != null && !secretId.equals(body.path("secret_id").asText()))) {
+            error(request.exchange, 400, "invalid role or secret ID");
+            return;
+        }
+        String token = "s.fake-" + tokenIds.incrementAndGet();
+        tokens.add(token);
+        respond(request.exchange, 200, auth(token, tokenTtlSeconds));
+    }
+
+    private void renew(Request request, String token) throws IOException {
+        if (!tokenRenewable || ROOT_TOKEN.equals(token)) {
+            error(request.exchange, 400, "lease is not renewable");
+            return;
+        }
+        long lease = tokenTtlSeconds;
+        String increment = request.json().path("increment").asText("");
+        if (increment.endsWith("s")) {
+            lease = Math.min(lease, Long.parseLong(increment.substring(0, increment.length() - 1)));
+        }
+        respond(request.exchange, 200, auth(token, lease));
+    }
+
+    private ObjectNode auth(String token, long leaseSeconds) {
+        ObjectNode response = envelope();
+        response.putObject("auth")
+            .put("client_token", token)
+            .put("accessor", "fake-" + token.hashCode())
+            .put("lease_duration", leaseSeconds)
+            .put("renewable", tokenRenewable);
+        return response;
+    }
+
+    private void read(Request request) throws IOException {
+        Secret secret = secrets.get(request.key());
+        if (secret == null) {
+            error(request.exchange, 404, null);
+            return;
+        }
+        ObjectNode response = envelope();
+        int status;
+        synchronized (secret) {
+            int requested = request.queryInt("version", secret.currentVersion);
+            Version version = secret.versions.get(requested);
+            if (version == null) {
+                error(request.exchange, 404, null);
+                return;
+            }
+            ObjectNode data = response.putObject("data");
+            if (version.isReadable()) {
+                ObjectNode values = data.putObject("data");
+                version.data.forEach(values::put);
+                status = 200;
+            } else {
+                data.putNull("data");
+                status = 404;
+            }
+            data.set("metadata", version.metadata(requested));
+        }
+        respond(request.exchange, status, response);
+    }
+
+    private void write(Request request, boolean patch) throws IOException {
+        JsonNode body = request.json();
+        JsonNode cas = body.path("options").path("cas");
+        Secret secret = patch ? secrets.get(request.key()) : secret(request.key());
+        if (secret == null) {
+            error(request.exchange, 404, null);
+            return;
+        }
+        ObjectNode response = envelope();
+        synchronized (secret) {
+            if (!cas.isMissingNode() && !cas.isNull() && cas.asLong(-1) != secret.currentVersion) {
+                error(request.exchange, 400, "check-and-set parameter did not match the current version");
+                return;
+            }
+            Map<String, String> data = new LinkedHashMap<>();
+            if (patch) {
+                Version current = secret.versions.get(secret.currentVersion);
+                if (current == null || !current.isReadable()) {
+                    error(request.exchange, 404, null);
+                    return;
+                }
+                data.putAll(current.data);
+            }
+            Iterator<Map.Entry<String, JsonNode>> fields = body.path("data").fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                if (field.getValue().isNull()) {
+                    // merge patch semantics, a null removes the key
+                    data.remove(field.getKey());
+                } else {
+                    data.put(field.getKey(), field.getValue().asText());
+                }
+            }
+            long version = secret.write(data);
+            response.set("data", secret.versions.get((int) version).metadata((int) version));
+        }
+        if (consume(appliedResetsLeft)) {
+            request.exchange.close();
+            return;
+        }
+        if (consume(appliedFailuresLeft)) {
+            error(request.exchange, failureStatus, "injected failure after applying the write");
+            return;
+        }
+        respond(request.exchange, 200, response);
+    }
+
+    private void delete(Request request) throws IOException {
+        Secret secret = secrets.get(request.key());
+        if (secret != null) {
+            synchronized (secret) {
+                Version current = secret.versions.get(secret.currentVersion);
+                if (current != null && current.deletionTime.isEmpty()) {
+                    current.deletionTime = Instant.now().toString();
+                }
+            }
+        }
+        respond(request.exchange, 204, null);
+    }
+
+    private void metadata(Request request) throws IOException {
+        Secret secret = secrets.get(request.key());
+        if (secret == null) {
+            error(request.exchange, 404, null);
+            return;
+        }
+        ObjectNode response = envelope();
+        synchronized (secret) {
+            ObjectNode data = response.putObject("data")
+                .put("current_version", secret.currentVersion)
+                .put("oldest_version", secret.versions.isEmpty() ? 0 : secret.versions.firstKey())
+                .put("max_versions", 0)
+                .put("cas_required", false)
+                .put("created_time", secret.createdTime)
+                .put("updated_time", secret.updatedTime);
+            ObjectNode versions = data.putObject("versions");
+            secret.versions.forEach((number, version) -> versions.set(String.valueOf(number), version.metadata(number)));
+        }
+        respond(request.exchange, 200, response);
+    }
+
+    private void list(Request request) throws IOException {
+        String prefix = request.key();
+        Set<String> keys = new TreeSet<>();
+        for (Map.Entry<String, Secret> entry : secrets.entrySet()) {
+            String key = entry.getKey();
+            if (key.startsWith(prefix) && key.length() > prefix.length() && entry.getValue().exists()) {
+                String rest = key.substring(prefix.length());
+                int slash = rest.indexOf('/');
+                keys.add(slash < 0 ? rest : rest.substring(0, slash + 1));
+            }
+        }
+        if (keys.isEmpty()) {
+            error(request.exchange, 404, null);
+            return;
+        }
+        ObjectNode response = envelope();
+        ArrayNode array = response.putObject("data").putArray("keys");
+        keys.forEach(array::add);
+        respond(request.exchange, 200, response);
+    }
+
+    private void destroy(Request request) throws IOException {
+        Secret secret = secrets.get(request.key());
+        if (secret != null) {
+            synchronized (secret) {
+                for (JsonNode number : request.json().path("versions")) {
+                    Version version = secret.versions.get(number.asInt());
+                    if (version != null) {
+                        version.destroyed = true;
+                        version.data.clear();
+                    }
+                }
+            }
+        }
+        respond(request.exchange, 204, null);
+    }
+
+    private Secret secret(String engine, String name) {
+        return secret(engine + "/" + name);
+    }
+
+    private Secret secret(String key) {
+        return secrets.computeIfAbsent(key, k -> new Secret());
+    }
+
+    private static ObjectNode envelope() {
+        ObjectNode response = MAPPER.createObjectNode();
+        response.put("request_id", UUID.randomUUID().toString())
+            .put("lease_id", "")
+            .put("renewable", false)
+            .put("lease_duration", 0);
+        return response;
+    }
+
+    private static void error(HttpExchange exchange, int status, String message) throws IOException {
+        ObjectNode body = MAPPER.createObjectNode();
+        ArrayNode errors = body.putArray("errors");
+        if (message != null) {
+            errors.add(message);
+        }
+        respond(exchange, status, body);
+    }
+
+    private static void respond(HttpExchange exchange, int status, JsonNode body) throws IOException {
+        if (body == null || status == 204) {
+            exchange.sendResponseHeaders(status, -1);
+            exchange.close();
+            return;
+        }
+        byte[] bytes = MAPPER.writeValueAsBytes(body);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+        exchange.close();
+    }
+
+    private static boolean consume(AtomicInteger left) {
+        return left.get() > 0 && left.getAndDecrement() > 0;
+    }
+
+    private static boolean chance(double rate) {
+        return rate > 0 && ThreadLocalRandom.current().nextDouble() < rate;
+    }
+
+    private static ThreadFactory daemon(String name) {
+        AtomicInteger ids = new AtomicInteger();
+        return r -> {
+            Thread thread = new Thread(r, name + "-" + ids.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static final class Request {
+        private final HttpExchange exchange;
+        private final String query;
+        private final byte[] body;
+        private final Route route;
+        // <engine>/<name> for KV routes
+        private final String key;
+
+        private Request(HttpExchange exchange, String method, String path, String query, byte[] body) {
+            this.exchange = exchange;
+            this.query = query;
+            this.body = body;
+            String[] parts = path.substring("/v1/".length()).split("/", 3);
+            if (path.equals("/v1/sys/health")) {
+                route = Route.HEALTH;
+            } else if (path.equals("/v1/auth/approle/login")) {
+                route = Route.LOGIN;
+            } else if (path.equals("/v1/auth/token/renew-self")) {
+                route = Route.RENEW_TOKEN;
+            } else if (path.equals("/v1/auth/token/lookup-self")) {
+                route = Route.LOOKUP_TOKEN;
+            } else if (parts.length < 3 && !(parts.length == 2 && parts[1].equals("metadata"))) {
+                route = Route.UNKNOWN;
+            } else {
+                route = kvRoute(method, parts[1], "true".equals(queryValue(query, "list")));
+            }
+            key = route == Route.UNKNOWN || parts.length < 2 ? "" : parts[0] + "/" + (parts.length < 3 ? "" : parts[2]);
+        }
+
+        private static Route kvRoute(String method, String kind, boolean list) {
+            switch (kind) {
+                case "data":
+                    switch (method) {
+                        case "GET":
+                            return Route.READ;
+                        case "PUT":
+                        case "POST":
+                            return Route.WRITE;
+                        case "PATCH":
+                            return Route.PATCH;
+                        case "DELETE":
+                            return Route.DELETE;
+                        default:
+                            return Route.UNKNOWN;
+                    }
+                case "metadata":
+                    if ("LIST".equals(method) || ("GET".equals(method) && list)) {
+                        return Route.LIST;
+                    }
+                    return "GET".equals(method) ? Route.READ_METADATA : Route.UNKNOWN;
+                case "destroy":
+                    return "PUT".equals(method) || "POST".equals(method) ? Route.DESTROY : Route.UNKNOWN;
+                default:
+                    return Route.UNKNOWN;
+            }
+        }
+
+        String key() {
+            return key;
+        }
+
+        JsonNode json() throws IOException {
+            return body.length == 0 ? MAPPER.createObjectNode() : MAPPER.readTree(body);
+        }
+
+        int queryInt(String name, int defaultValue) {
+            String value = queryValue(query, name);
+            return value == null ? defaultValue : Integer.parseInt(value);
+        }
+
+        private static String queryValue(String query, String name) {
+            if (query == null) {
+                return null;
+            }
+            for (String pair : query.split("&")) {
+                int equals = pair.indexOf('=');
+                if (equals > 0 && pair.substring(0, equals).equals(name)) {
+                    return pair.substring(equals + 1);
+                }
+            }
+            return null;
+        }
+    }
+
+    // guarded by itself
+    private static final class Secret {
+        private final TreeMap<Integer, Version> versions = new TreeMap<>();
+        private final String createdTime = Instant.now().toString();
+        private String updatedTime = createdTime;
+        private int currentVersion;
+
+        synchronized long write(Map<String, String> data) {
+            currentVersion++;
+            Version version = new Version(data);
+            versions.put(currentVersion, version);
+            updatedTime = version.createdTime;
+            return currentVersion;
+        }
+
+        synchronized boolean exists() {
+            return currentVersion > 0;
+        }
+    }
+
+    private static final class Version {
+        private final Map<String, String> data;
+        private final String createdTime = Instant.now().toString();
+        private String deletionTime = "";
+        private boolean destroyed;
+
+        private Version(Map<String, String> data) {
+            this.data = data;
+        }
+
+        boolean isReadable() {
+            return !destroyed && deletionTime.isEmpty();
+        }
+
+        ObjectNode metadata(int number) {
+            return MAPPER.createObjectNode()
+                .put("created_time", createdTime)
+                .putNull("custom_metadata")
+                .put("deletion_time", deletionTime)
+                .put("destroyed", destroyed)
+                .put("version", number);
+        }
+    }
+}
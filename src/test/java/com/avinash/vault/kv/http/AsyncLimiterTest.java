@@ -0,0 +1,57 @@
+package com.avinash.vault.kv.http;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AsyncLimiterTest {
+
+    @Test
+    void callsBeyondTheLimitWaitForAFreeSlot() {
+        AsyncLimiter limiter = new AsyncLimiter(2);
+        List<CompletableFuture<Integer>> calls = new ArrayList<>();
+        List<CompletableFuture<Integer>> results = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            CompletableFuture<Integer> call = new CompletableFuture<>();
+            calls.add(call);
+            results.add(limiter.submit(() -> call));
+        }
+        assertEquals(2, limiter.inFlight());
+
+        for (int i = 0; i < 5; i++) {
+            calls.get(i).complete(i);
+            assertEquals(i, results.get(i).join());
+        }
+        assertEquals(0, limiter.inFlight());
+    }
+
+    @Test
+    void synchronouslyCompletingCallsDoNotRecurse() {
+        AsyncLimiter limiter = new AsyncLimiter(1);
+        AtomicInteger started = new AtomicInteger();
+        CompletableFuture<Integer> blocker = new CompletableFuture<>();
+        limiter.submit(() -> blocker);
+        List<CompletableFuture<Integer>> results = new ArrayList<>();
+        for (int i = 0; i < 100_000; i++) {
+            results.add(limiter.submit(() -> CompletableFuture.completedFuture(started.incrementAndGet())));
+        }
+        blocker.complete(0);
+        assertEquals(100_000, started.get());
+        assertTrue(results.stream().allMatch(CompletableFuture::isDone));
+    }
+
+    @Test
+    void failuresAreReportedAndReleaseTheSlot() {
+        AsyncLimiter limiter = new AsyncLimiter(1);
+        CompletableFuture<Object> failed = limiter.submit(() -> {
+            throw new IllegalStateException("boom");
+        });
+        assertTrue(failed.isCompletedExceptionally());
+        assertEquals("ok", limiter.submit(() -> CompletableFuture.completedFuture("ok")).join());
+    }
+}
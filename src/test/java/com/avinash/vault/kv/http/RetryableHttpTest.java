@@ -0,0 +1,152 @@
+package com.avinash.vault.kv.http;
+
+import com.avinash.vault.kv.Vault;
+import com.avinash.vault.kv.auth.TokenAuth;
+import com.avinash.vault.kv.fake.FakeVault;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RetryableHttpTest {
+
+    private HttpServer server;
+    private URI uri;
+    private final AtomicInteger calls = new AtomicInteger();
+    // the status codes answered in turn, 200 once they run out
+    private final Queue<Integer> statuses = new ConcurrentLinkedQueue<>();
+    private volatile String retryAfter;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            calls.incrementAndGet();
+            Integer status = statuses.poll();
+            if (retryAfter != null) {
+                exchange.getResponseHeaders().add("Retry-After", retryAfter);
+            }
+            exchange.sendResponseHeaders(status == null ? 200 : status, -1);
+            exchange.close();
+        });
+        server.start();
+        uri = URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/v1/kv/data/db");
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    void everyExecutorModeServesRequestsAndOnlyAnOwnedExecutorIsShutDown() {
+        assertEquals(HttpExecutorMode.VIRTUAL, HttpExecutorMode.of(" Virtual "));
+        assertThrows(IllegalArgumentException.class, () -> HttpExecutorMode.of("fork-join"));
+        try (FakeVault fake = new FakeVault()) {
+            fake.put("kv", "db", Map.of("username", "root"));
+            for (HttpExecutorMode mode : HttpExecutorMode.values()) {
+                RetryableHttp http = RetryableHttp.create(mode, 2);
+                Vault vault = Vault.builder().uri(fake.uri()).auth(new TokenAuth(FakeVault.ROOT_TOKEN)).namespace("ns").http(http).build();
+                assertEquals("root", vault.getSecret("/v1/kv/data/db").get("username"), mode.name());
+
+                // the clients derived from it share its executor, closing them is a no-op
+                http.withRetries(0).close();
+                assertFalse(http.isExecutorShutdown(), mode.name());
+                assertEquals("root", vault.getSecret("/v1/kv/data/db").get("username"), mode.name());
+
+                vault.close();
+                assertTrue(http.isExecutorShutdown(), mode.name());
+            }
+
+            // the process wide client is never shut down
+            RetryableHttp shared = RetryableHttp.httpClient();
+            Vault vault = Vault.builder().uri(fake.uri()).auth(new TokenAuth(FakeVault.ROOT_TOKEN)).namespace("ns").http(shared).build();
+            vault.close();
+            assertFalse(shared.isExecutorShutdown());
+            assertEquals(2 * HttpExecutorMode.values().length, fake.requests(FakeVault.Route.READ));
+        }
+    }
+
+    @Test
+    void retriesRetryableStatusesWithBackOff() throws Exception {
+        statuses.add(503);
+        statuses.add(500);
+        RetryableHttp http = RetryableHttp.httpClient().withPolicy(policy(3, RetryBudget.unlimited()));
+        HttpResponse<Void> response = http.send(HttpRequest.newBuilder(uri).GET().build(), HttpResponse.BodyHandlers.discarding());
+        assertEquals(200, response.statusCode());
+        assertEquals(3, calls.get());
+        assertEquals(2, http.getMetrics().getRetries());
+        assertEquals(1, http.getMetrics().getStatusCodes().get("503"));
+        assertEquals(0, http.getMetrics().getInFlight());
+    }
+
+    @Test
+    void returnsTheLastResponseWhenRetriesRunOut() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            statuses.add(429);
+        }
+        RetryableHttp http = RetryableHttp.httpClient().withPolicy(policy(2, RetryBudget.unlimited()));
+        HttpResponse<Void> response = http.send(HttpRequest.newBuilder(uri).GET().build(), HttpResponse.BodyHandlers.discarding());
+        assertEquals(429, response.statusCode());
+        assertEquals(3, calls.get());
+        assertEquals(1, http.getMetrics().getRetriesExhausted());
+    }
+
+    @Test
+    void doesNotRetryAFailedWrite() throws Exception {
+        statuses.add(500);
+        RetryableHttp http = RetryableHttp.httpClient().withPolicy(policy(3, RetryBudget.unlimited()));
+        HttpRequest request = HttpRequest.newBuilder(uri).POST(HttpRequest.BodyPublishers.ofString("{}")).build();
+        assertEquals(500, http.send(request, HttpResponse.BodyHandlers.discarding()).statusCode());
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void honoursRetryAfterWithinTheDeadline() throws Exception {
+        statuses.add(503);
+        retryAfter = "1";
+        RetryableHttp http = RetryableHttp.httpClient().withPolicy(policy(3, RetryBudget.unlimited()));
+        long start = System.nanoTime();
+        assertEquals(200, http.send(HttpRequest.newBuilder(uri).GET().build(), HttpResponse.BodyHandlers.discarding()).statusCode());
+        assertTrue(System.nanoTime() - start >= 1_000_000_000L);
+
+        // a Retry-After past the deadline is not waited for
+        calls.set(0);
+        statuses.add(503);
+        retryAfter = "60";
+        RetryPolicy shortDeadline = policy(3, RetryBudget.unlimited()).toBuilder().deadlineMs(1_000L).build();
+        HttpResponse<Void> response = http.withPolicy(shortDeadline)
+            .send(HttpRequest.newBuilder(uri).GET().build(), HttpResponse.BodyHandlers.discarding());
+        assertEquals(503, response.statusCode());
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void stopsRetryingWhenTheBudgetIsUsedUp() throws Exception {
+        RetryBudget budget = new RetryBudget(0, 1);
+        for (int i = 0; i < 4; i++) {
+            statuses.add(503);
+        }
+        RetryableHttp http = RetryableHttp.httpClient().withPolicy(policy(3, budget));
+        HttpResponse<Void> response = http.send(HttpRequest.newBuilder(uri).GET().build(), HttpResponse.BodyHandlers.discarding());
+        assertEquals(503, response.statusCode());
+        assertEquals(2, calls.get());
+        assertEquals(0, budget.available());
+    }
+
+    private static RetryPolicy policy(int maxRetries, RetryBudget budget) {
+        return RetryPolicy.builder().maxRetries(maxRetries).baseDelayMs(1L).maxDelayMs(10L).budget(budget).build();
+    }
+}
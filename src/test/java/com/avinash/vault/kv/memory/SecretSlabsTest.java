@@ -0,0 +1,76 @@
+package com.avinash.vault.kv.memory;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SecretSlabsTest {
+
+    @Test
+    void valuesAreReadOffHeapAndZeroedOnRelease() {
+        SecretSlabs slabs = new SecretSlabs(1024, 4096);
+        SecretChars password = slabs.allocate("s3cr3t-\u00e9");
+        assertEquals(8, password.length());
+        assertTrue(password.contentEquals("s3cr3t-\u00e9"));
+        assertEquals("s3cr3t-\u00e9", password.toString());
+        assertArrayEquals("s3cr3t-\u00e9".toCharArray(), password.toCharArray());
+        assertEquals(64, slabs.usedBytes());
+
+        CharSequence view = password.subSequence(0, 6);
+        assertEquals("s3cr3t", view.toString());
+        password.release();
+        password.release();
+        assertEquals('\0', view.charAt(0));
+        assertThrows(IllegalStateException.class, password::toString);
+        assertEquals(0, slabs.usedBytes());
+
+        // the region is reused by the next value of its size
+        assertEquals("other", slabs.allocate("other").toString());
+        assertEquals(1024, slabs.reservedBytes());
+    }
+
+    @Test
+    void allocationFailsOnceTheSlabsAreFull() {
+        SecretSlabs slabs = new SecretSlabs(1024, 2048);
+        String large = "x".repeat(300);
+        SecretChars first = slabs.allocate(large);
+        assertNotNull(first);
+        assertNotNull(slabs.allocate(large));
+        assertNull(slabs.allocate(large));
+        first.release();
+        assertNotNull(slabs.allocate(large));
+    }
+
+    @Test
+    void closingZeroesTheValuesLargerThanASlab() {
+        SecretSlabs slabs = new SecretSlabs(1024, 8192);
+        SecretChars large = slabs.allocate("x".repeat(1000));
+        SecretChars small = slabs.allocate("asd");
+        assertEquals(1024 + 2000, slabs.reservedBytes());
+        CharSequence largeView = large.subSequence(0, 1000);
+        CharSequence smallView = small.subSequence(0, 3);
+
+        slabs.close();
+        assertTrue(largeView.chars().allMatch(c -> c == 0));
+        assertTrue(smallView.chars().allMatch(c -> c == 0));
+        // releasing after the close is a no-op
+        large.release();
+        assertThrows(IllegalStateException.class, () -> slabs.allocate("other"));
+    }
+
+    @Test
+    void valuesOfASecretAreReleasedWithTheirLastReference() {
+        SecretSlabs slabs = new SecretSlabs(1024, 4096);
+        SecretValues values = SecretValues.copyOf(Map.of("username", "root", "password", "asd"), slabs);
+        assertTrue(values.retain());
+        values.release();
+        assertEquals("asd", values.get("password").toString());
+        assertNull(values.get("missing"));
+
+        values.release();
+        assertFalse(values.retain());
+        assertEquals(0, slabs.usedBytes());
+    }
+}
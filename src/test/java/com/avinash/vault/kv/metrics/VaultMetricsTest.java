@@ -0,0 +1,73 @@
+package com.avinash.vault.kv.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.TabularData;
+import java.lang.management.ManagementFactory;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class VaultMetricsTest {
+
+    @Test
+    void histogramApproximatesPercentilesByBucket() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 99; i++) {
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(800));
+        }
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(40));
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(1.0, histogram.getPercentileMillis(0.5));
+        assertEquals(1.0, histogram.getPercentileMillis(0.99));
+        assertEquals(50.0, histogram.getPercentileMillis(0.999));
+        assertEquals(40.0, histogram.getMaxMillis());
+        assertEquals(1.192, histogram.getMeanMillis(), 0.001);
+    }
+
+    @Test
+    void metricsAreExposedAsMBeans() throws Exception {
+        VaultMetrics metrics = new VaultMetrics();
+        // a client of its own in the same namespace
+        VaultMetrics other = new VaultMetrics();
+        metrics.register("metrics-test");
+        other.register("metrics-test");
+        try {
+            metrics.recordStatus(200);
+            metrics.recordStatus(200);
+            metrics.recordStatus(503);
+            metrics.recordRetry();
+            metrics.recordLatency(VaultOperation.LOGIN, System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(3));
+
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            Set<ObjectName> names = server.queryNames(
+                new ObjectName("com.avinash.vault.kv:type=VaultMetrics,name=\"metrics-test\",*"), null);
+            assertEquals(2, names.size());
+            ObjectName name = names.stream()
+                .filter(candidate -> Long.valueOf(1).equals(attribute(server, candidate, "Retries")))
+                .findFirst().orElseThrow();
+            TabularData statusCodes = (TabularData) server.getAttribute(name, "StatusCodes");
+            assertEquals(2L, statusCodes.get(new Object[]{"200"}).get("value"));
+            ObjectName login = new ObjectName("com.avinash.vault.kv:type=VaultLatency,name=\"metrics-test\",client="
+                + name.getKeyProperty("client") + ",operation=login");
+            assertEquals(1L, server.getAttribute(login, "Count"));
+        } finally {
+            metrics.close();
+            other.close();
+        }
+        assertTrue(ManagementFactory.getPlatformMBeanServer()
+            .queryNames(new ObjectName("com.avinash.vault.kv:name=\"metrics-test\",*"), null).isEmpty());
+    }
+
+    private static Object attribute(MBeanServer server, ObjectName name, String attribute) {
+        try {
+            return server.getAttribute(name, attribute);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}